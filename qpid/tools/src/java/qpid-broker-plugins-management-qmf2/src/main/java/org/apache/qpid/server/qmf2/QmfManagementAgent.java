@@ -81,6 +81,10 @@ public class QmfManagementAgent implements ConfigurationChangeListener, QmfEvent
     // Set heartbeat interval to 10 seconds. TODO Should probably be config driven, but I *think* that this is
     // different than "heartbeat.delay" and "heartbeat.timeoutFactor" currently present in the config?
     private static final int HEARTBEAT_INTERVAL = 10;
+
+    // Coalesce the publications of Management Objects over half a second, so that storms of childAdded() and
+    // childRemoved() calls (e.g. when many clients reconnect at once) don't flood Consoles with indications.
+    private static final long PUBLISH_WINDOW = 500;
     private Agent _agent = null;
 
     // The first Connection Object relates to the QmfManagementAgent, we use this flag to avoid mapping that Connection
@@ -141,6 +145,7 @@ public class QmfManagementAgent implements ConfigurationChangeListener, QmfEvent
                 // Vendor and Product are deliberately set to be the same as for the C++ broker.
                 _agent.setVendor("apache.org");
                 _agent.setProduct("qpidd");
+                _agent.setPublishWindow(PUBLISH_WINDOW);
                 _agent.setConnection(connection);
 
                 // Register the schema for the Management Objects. These don't have to be completely populated
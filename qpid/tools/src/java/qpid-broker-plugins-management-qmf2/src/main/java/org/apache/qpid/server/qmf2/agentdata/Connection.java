@@ -22,6 +22,7 @@
 package org.apache.qpid.server.qmf2.agentdata;
 
 // Misc Imports
+import java.util.Collection;
 import java.util.Map;
 
 // Simple Logging Facade 4 Java
@@ -176,17 +177,42 @@ public class Connection extends QmfAgentData
      */
     @Override
     public Map<String, Object> mapEncode()
+    {
+        return mapEncode(null);
+    }
+
+    /**
+     * This method behaves as mapEncode() but only retrieves the statistics that have been selected, so queries
+     * with a "_select" projection avoid the cost of retrieving statistics from the broker that they don't want.
+     *
+     * @param select the names of the properties to include, or null to include every property.
+     * @return the map encoding of this object including only the selected properties.
+     */
+    @Override
+    public Map<String, Object> mapEncode(final Collection<String> select)
     {
         // Statistics
         // closing Not implemented in Java Broker
         setValue("framesFromClient", 0); // framesFromClient Not implemented in Java Broker
         setValue("framesToClient", 0); // framesToClient Not implemented in Java Broker
-        setValue("bytesFromClient", _connection.getBytesIn());
-        setValue("bytesToClient", _connection.getBytesOut()); 
-        setValue("msgsFromClient", _connection.getMessagesIn());
-        setValue("msgsToClient", _connection.getMessagesOut());
+        if (isSelected(select, "bytesFromClient"))
+        {
+            setValue("bytesFromClient", _connection.getBytesIn());
+        }
+        if (isSelected(select, "bytesToClient"))
+        {
+            setValue("bytesToClient", _connection.getBytesOut());
+        }
+        if (isSelected(select, "msgsFromClient"))
+        {
+            setValue("msgsFromClient", _connection.getMessagesIn());
+        }
+        if (isSelected(select, "msgsToClient"))
+        {
+            setValue("msgsToClient", _connection.getMessagesOut());
+        }
 
         update(); // TODO only set update if statistics change.
-        return super.mapEncode();
+        return project(super.mapEncode(), select);
     }
 }
@@ -94,6 +94,7 @@ public class Exchange extends QmfAgentData
     {
         // Declare the schema for the QMF2 broker class.
         _schema = new SchemaObjectClass("org.apache.qpid.broker", "exchange");
+        _schema.setIndexNames("name"); // Allows the Agent to answer [eq, name, [quote, ...]] queries directly.
 
         // TODO
         //_schema.addProperty(new SchemaProperty("whatHappened", QmfType.TYPE_STRING));
@@ -22,6 +22,7 @@
 package org.apache.qpid.server.qmf2.agentdata;
 
 // Misc Imports
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 
@@ -99,6 +100,7 @@ public class Queue extends QmfAgentData
     {
         // Declare the schema for the QMF2 broker class.
         _schema = new SchemaObjectClass("org.apache.qpid.broker", "queue");
+        _schema.setIndexNames("name"); // Allows the Agent to answer [eq, name, [quote, ...]] queries directly.
 
         // TODO
         //_schema.addProperty(new SchemaProperty("whatHappened", QmfType.TYPE_STRING));
@@ -242,6 +244,19 @@ public class Queue extends QmfAgentData
      */
     @Override
     public Map<String, Object> mapEncode()
+    {
+        return mapEncode(null);
+    }
+
+    /**
+     * This method behaves as mapEncode() but only retrieves the statistics that have been selected, so queries
+     * with a "_select" projection avoid the cost of retrieving statistics from the broker that they don't want.
+     *
+     * @param select the names of the properties to include, or null to include every property.
+     * @return the map encoding of this object including only the selected properties.
+     */
+    @Override
+    public Map<String, Object> mapEncode(final Collection<String> select)
     {
         // Set the altExchange reference if an alternateExchange exists and hasn't already been set.
         // Not sure how to set this closer to the Constructor. At the moment the _alternateExchangeName gets set
@@ -258,20 +273,50 @@ public class Queue extends QmfAgentData
         }
 
         // Statistics
-        setValue("msgTotalEnqueues", _queue.getTotalEnqueuedMessages());
-        setValue("msgTotalDequeues", _queue.getTotalDequeuedMessages());
+        if (isSelected(select, "msgTotalEnqueues"))
+        {
+            setValue("msgTotalEnqueues", _queue.getTotalEnqueuedMessages());
+        }
+        if (isSelected(select, "msgTotalDequeues"))
+        {
+            setValue("msgTotalDequeues", _queue.getTotalDequeuedMessages());
+        }
         // msgTxnEnqueues not implemented in Java Broker
         // msgTxnDequeues not implemented in Java Broker
-        setValue("msgPersistEnqueues", _queue.getPersistentEnqueuedMessages());
-        setValue("msgPersistDequeues", _queue.getPersistentDequeuedMessages());
-        setValue("msgDepth", _queue.getQueueDepthMessages());
-        setValue("byteDepth", _queue.getQueueDepthBytes());
-        setValue("byteTotalEnqueues", _queue.getTotalEnqueuedBytes());
-        setValue("byteTotalDequeues", _queue.getTotalDequeuedBytes());
+        if (isSelected(select, "msgPersistEnqueues"))
+        {
+            setValue("msgPersistEnqueues", _queue.getPersistentEnqueuedMessages());
+        }
+        if (isSelected(select, "msgPersistDequeues"))
+        {
+            setValue("msgPersistDequeues", _queue.getPersistentDequeuedMessages());
+        }
+        if (isSelected(select, "msgDepth"))
+        {
+            setValue("msgDepth", _queue.getQueueDepthMessages());
+        }
+        if (isSelected(select, "byteDepth"))
+        {
+            setValue("byteDepth", _queue.getQueueDepthBytes());
+        }
+        if (isSelected(select, "byteTotalEnqueues"))
+        {
+            setValue("byteTotalEnqueues", _queue.getTotalEnqueuedBytes());
+        }
+        if (isSelected(select, "byteTotalDequeues"))
+        {
+            setValue("byteTotalDequeues", _queue.getTotalDequeuedBytes());
+        }
         // byteTxnEnqueues not implemented in Java Broker
         // byteTxnDequeues not implemented in Java Broker
-        setValue("bytePersistEnqueues", _queue.getPersistentEnqueuedBytes());
-        setValue("bytePersistDequeues", _queue.getPersistentDequeuedBytes());
+        if (isSelected(select, "bytePersistEnqueues"))
+        {
+            setValue("bytePersistEnqueues", _queue.getPersistentEnqueuedBytes());
+        }
+        if (isSelected(select, "bytePersistDequeues"))
+        {
+            setValue("bytePersistDequeues", _queue.getPersistentDequeuedBytes());
+        }
 
         // Flow-to-disk Statistics not implemented in Java Broker
         // releases & acquires not implemented in Java Broker
@@ -283,15 +328,24 @@ public class Queue extends QmfAgentData
         // discardsPurge not implemented in Java Broker
         // reroutes not implemented in Java Broker
 
-        setValue("consumerCount", _queue.getConsumerCount());
-        setValue("bindingCount", _queue.getBindingCount());
-        setValue("unackedMessages", _queue.getUnacknowledgedMessages());
+        if (isSelected(select, "consumerCount"))
+        {
+            setValue("consumerCount", _queue.getConsumerCount());
+        }
+        if (isSelected(select, "bindingCount"))
+        {
+            setValue("bindingCount", _queue.getBindingCount());
+        }
+        if (isSelected(select, "unackedMessages"))
+        {
+            setValue("unackedMessages", _queue.getUnacknowledgedMessages());
+        }
 
         setValue("messageLatency", "Not yet implemented");
         // flowStopped not implemented in Java Broker
         // flowStoppedCount not implemented in Java Broker
 
         update(); // TODO only update if statistics have actually changed.
-        return super.mapEncode();
+        return project(super.mapEncode(), select);
     }
 }
@@ -71,6 +71,7 @@ public class Session extends QmfAgentData
     {
         // Declare the schema for the QMF2 session class.
         _schema = new SchemaObjectClass("org.apache.qpid.broker", "session");
+        _schema.setIndexNames("name"); // Allows the Agent to answer [eq, name, [quote, ...]] queries directly.
 
         // TODO
         //_schema.addProperty(new SchemaProperty("whatHappened", QmfType.TYPE_STRING));
@@ -96,6 +96,7 @@ public class Subscription extends QmfAgentData
     {
         // Declare the schema for the QMF2 subscription class.
         _schema = new SchemaObjectClass("org.apache.qpid.broker", "subscription");
+        _schema.setIndexNames("name"); // Allows the Agent to answer [eq, name, [quote, ...]] queries directly.
 
         // TODO
         //_schema.addProperty(new SchemaProperty("whatHappened", QmfType.TYPE_STRING));
@@ -0,0 +1,105 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.benchmarks;
+
+// JMS Imports
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+
+// Misc Imports
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// JMH Imports
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Qpid Client Imports
+import org.apache.qpid.client.message.AMQMessageDelegateFactory;
+import org.apache.qpid.client.message.JMSBytesMessage;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.AMQPMessage;
+
+/**
+ * Benchmarks AMQPMessage amqp/list encoding and decoding of _query_response sized Lists of mapEncoded objects.
+ * <p>
+ * The Messages are created directly from the Qpid client's JMSBytesMessage so no broker connection is needed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AMQPMessageBenchmark
+{
+    @Param({"10", "1000", "10000"})
+    public int size;
+
+    private List<Map> _list;
+    private BytesMessage _encoded;
+
+    /**
+     * Create an empty amqp/list Message.
+     * @return an empty amqp/list Message.
+     */
+    private static BytesMessage createListMessage()
+    {
+        BytesMessage message = new JMSBytesMessage(AMQMessageDelegateFactory.FACTORY_0_10);
+        AMQPMessage.setContentType(message, "amqp/list");
+        return message;
+    }
+
+    @Setup
+    public void setup() throws JMSException
+    {
+        _list = BenchmarkData.createEncodedQueues(size);
+        _encoded = createListMessage();
+        AMQPMessage.setList(_encoded, _list);
+        _encoded.reset();
+    }
+
+    @Benchmark
+    public BytesMessage encode() throws JMSException
+    {
+        BytesMessage message = createListMessage();
+        AMQPMessage.setList(message, _list);
+        return message;
+    }
+
+    @Benchmark
+    public List<Map> decode() throws JMSException
+    {
+        _encoded.reset();
+        return AMQPMessage.getList(_encoded);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.benchmarks;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.agent.QmfAgentData;
+import org.apache.qpid.qmf2.common.ObjectId;
+import org.apache.qpid.qmf2.common.SchemaObjectClass;
+
+/**
+ * Builds the sample data used by the benchmarks. The objects are modelled on the broker ManagementAgent's queue
+ * objects, as large lists of queues are the most common source of large QMF payloads.
+ */
+final class BenchmarkData
+{
+    static final String AGENT_NAME = "apache.org:qpidd:benchmark";
+
+    static final SchemaObjectClass QUEUE_SCHEMA = new SchemaObjectClass("org.apache.qpid.broker", "queue");
+
+    /**
+     * Make constructor private as this class provides a set of static helper methods.
+     */
+    private BenchmarkData()
+    {
+    }
+
+    /**
+     * Create a queue-like QmfAgentData object with its ObjectId set.
+     *
+     * @param i the index of the queue, used to generate its name and statistics.
+     * @return a queue-like QmfAgentData object.
+     */
+    static QmfAgentData createQueue(final int i)
+    {
+        String name = "queue-" + i;
+        QmfAgentData queue = new QmfAgentData(QUEUE_SCHEMA);
+        queue.setValue("name", name);
+        queue.setValue("vhostRef", "default");
+        queue.setValue("durable", (i % 2) == 0);
+        queue.setValue("autoDelete", (i % 3) == 0);
+        queue.setValue("exclusive", false);
+        queue.setValue("msgDepth", (long)(i % 1000));
+        queue.setValue("byteDepth", (long)(i % 1000)*1024);
+        queue.setValue("msgTotalEnqueues", (long)i*10);
+        queue.setValue("msgTotalDequeues", (long)i*10 - (i % 1000));
+        queue.setValue("consumerCount", (long)(i % 5));
+        queue.setValue("bindingCount", 1l);
+        queue.setValue("unackedMessages", 0l);
+        queue.setObjectId(new ObjectId(AGENT_NAME, "org.apache.qpid.broker:queue:" + name, 1));
+        return queue;
+    }
+
+    /**
+     * Create a List of queue-like QmfAgentData objects.
+     *
+     * @param size the number of objects to create.
+     * @return a List of queue-like QmfAgentData objects.
+     */
+    static List<QmfAgentData> createQueues(final int size)
+    {
+        List<QmfAgentData> queues = new ArrayList<QmfAgentData>(size);
+        for (int i = 0; i < size; i++)
+        {
+            queues.add(createQueue(i));
+        }
+        return queues;
+    }
+
+    /**
+     * Create a List of mapEncoded queue-like objects, as sent in a _query_response.
+     *
+     * @param size the number of objects to create.
+     * @return a List of mapEncoded queue-like objects.
+     */
+    static List<Map> createEncodedQueues(final int size)
+    {
+        List<Map> encoded = new ArrayList<Map>(size);
+        for (QmfAgentData queue : createQueues(size))
+        {
+            encoded.add(queue.mapEncode());
+        }
+        return encoded;
+    }
+}
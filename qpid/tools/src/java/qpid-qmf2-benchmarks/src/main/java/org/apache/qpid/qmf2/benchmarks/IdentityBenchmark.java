@@ -0,0 +1,129 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.benchmarks;
+
+// Misc Imports
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// JMH Imports
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.ObjectId;
+import org.apache.qpid.qmf2.common.SchemaClassId;
+
+/**
+ * Benchmarks ObjectId and SchemaClassId hashing and equality, which underpin the Agent's object store and the
+ * Console's object and schema lookups. The lookup benchmarks use a freshly decoded ObjectId, as a Console or
+ * Agent would when handling a request, rather than the instance used as the key.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdentityBenchmark
+{
+    private static final int STORE_SIZE = 10000;
+
+    private ObjectId _objectId;
+    private ObjectId _equalObjectId;
+    private Map _encodedObjectId;
+    private Map<ObjectId, Object> _objectStore;
+
+    private SchemaClassId _classId;
+    private SchemaClassId _equalClassId;
+    private Map<SchemaClassId, Object> _schemaCache;
+
+    @Setup
+    public void setup()
+    {
+        _objectStore = new HashMap<ObjectId, Object>();
+        for (int i = 0; i < STORE_SIZE; i++)
+        {
+            ObjectId objectId = new ObjectId(BenchmarkData.AGENT_NAME, "org.apache.qpid.broker:queue:queue-" + i, 1);
+            _objectStore.put(objectId, objectId);
+        }
+
+        _objectId = new ObjectId(BenchmarkData.AGENT_NAME, "org.apache.qpid.broker:queue:queue-5000", 1);
+        _encodedObjectId = _objectId.mapEncode();
+        _equalObjectId = new ObjectId(_encodedObjectId);
+
+        _schemaCache = new HashMap<SchemaClassId, Object>();
+        String[] classes = {"broker", "connection", "session", "exchange", "queue", "binding", "subscription"};
+        for (String className : classes)
+        {
+            SchemaClassId classId = new SchemaClassId("org.apache.qpid.broker", className, "_data");
+            _schemaCache.put(classId, classId);
+        }
+
+        _classId = new SchemaClassId("org.apache.qpid.broker", "queue", "_data");
+        _equalClassId = new SchemaClassId(_classId.mapEncode());
+    }
+
+    @Benchmark
+    public int objectIdHashCode()
+    {
+        return _objectId.hashCode();
+    }
+
+    @Benchmark
+    public boolean objectIdEquals()
+    {
+        return _objectId.equals(_equalObjectId);
+    }
+
+    @Benchmark
+    public Object objectIdLookup()
+    {
+        return _objectStore.get(new ObjectId(_encodedObjectId));
+    }
+
+    @Benchmark
+    public int schemaClassIdHashCode()
+    {
+        return _classId.hashCode();
+    }
+
+    @Benchmark
+    public boolean schemaClassIdEquals()
+    {
+        return _classId.equals(_equalClassId);
+    }
+
+    @Benchmark
+    public Object schemaClassIdLookup()
+    {
+        return _schemaCache.get(_equalClassId);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.benchmarks;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// JMH Imports
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.agent.QmfAgentData;
+import org.apache.qpid.qmf2.console.QmfConsoleData;
+
+/**
+ * Benchmarks the two sides of a _query_response: QmfAgentData.mapEncode() on the Agent and QmfConsoleData
+ * construction from the decoded Maps on the Console.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QmfDataBenchmark
+{
+    @Param({"1000"})
+    public int size;
+
+    private List<QmfAgentData> _objects;
+    private List<Map> _encoded;
+
+    @Setup
+    public void setup()
+    {
+        _objects = BenchmarkData.createQueues(size);
+        _encoded = BenchmarkData.createEncodedQueues(size);
+    }
+
+    @Benchmark
+    public List<Map> mapEncode()
+    {
+        List<Map> results = new ArrayList<Map>(_objects.size());
+        for (QmfAgentData object : _objects)
+        {
+            results.add(object.mapEncode());
+        }
+        return results;
+    }
+
+    @Benchmark
+    public List<QmfConsoleData> createConsoleData()
+    {
+        List<QmfConsoleData> results = new ArrayList<QmfConsoleData>(_encoded.size());
+        for (Map m : _encoded)
+        {
+            results.add(new QmfConsoleData(m, null));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.benchmarks;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// JMH Imports
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.agent.QmfAgentData;
+import org.apache.qpid.qmf2.common.QmfException;
+import org.apache.qpid.qmf2.common.QmfQuery;
+
+/**
+ * Benchmarks QmfQuery.evaluate() over a store of queue-like objects for predicates of increasing complexity, from
+ * a single exists test to nested logical expressions combining equality, numeric comparison and regex matching.
+ * Each invocation evaluates the query against every object, as the Agent does when it scans its object store.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QmfQueryBenchmark
+{
+    @Param({"exists", "eq", "gt", "and", "or", "regex", "nested"})
+    public String predicate;
+
+    @Param({"1000"})
+    public int size;
+
+    private List<QmfAgentData> _objects;
+    private QmfQuery _query;
+
+    /**
+     * Helper to build the List encoded form of a predicate.
+     */
+    private static List list(final Object... items)
+    {
+        return new ArrayList<Object>(Arrays.asList(items));
+    }
+
+    /**
+     * Return the List encoded form of the named predicate shape.
+     */
+    private static List createPredicate(final String shape)
+    {
+        if (shape.equals("exists"))
+        {
+            return list("exists", "name");
+        }
+        else if (shape.equals("eq"))
+        {
+            return list("eq", "name", list("quote", "queue-500"));
+        }
+        else if (shape.equals("gt"))
+        {
+            return list("gt", "msgDepth", 500);
+        }
+        else if (shape.equals("and"))
+        {
+            return list("and", list("eq", "vhostRef", list("quote", "default")),
+                               list("gt", "msgDepth", 500),
+                               list("eq", "durable", true));
+        }
+        else if (shape.equals("or"))
+        {
+            return list("or", list("eq", "name", list("quote", "queue-10")),
+                              list("eq", "name", list("quote", "queue-20")),
+                              list("eq", "name", list("quote", "queue-30")));
+        }
+        else if (shape.equals("regex"))
+        {
+            return list("re_match", "name", list("quote", "^queue-5.*"));
+        }
+        else
+        {
+            return list("and", list("or", list("re_match", "name", list("quote", "^queue-1.*")),
+                                           list("ge", "consumerCount", 3)),
+                               list("not", list("eq", "autoDelete", true)),
+                               list("le", "msgDepth", 900),
+                               list("exists", "bindingCount"));
+        }
+    }
+
+    @Setup
+    public void setup() throws QmfException
+    {
+        _objects = BenchmarkData.createQueues(size);
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("_what", "OBJECT");
+        query.put("_where", createPredicate(predicate));
+        _query = new QmfQuery(query);
+    }
+
+    @Benchmark
+    public int evaluate()
+    {
+        int matches = 0;
+        for (QmfAgentData object : _objects)
+        {
+            if (_query.evaluate(object))
+            {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
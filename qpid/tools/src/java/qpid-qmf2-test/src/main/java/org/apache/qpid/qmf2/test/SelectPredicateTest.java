@@ -0,0 +1,230 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.test;
+
+import javax.jms.Connection;
+
+// Misc Imports
+import java.io.*;
+import java.util.Collections;
+import java.util.List;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.QmfEventListener;
+import org.apache.qpid.qmf2.common.QmfException;
+import org.apache.qpid.qmf2.common.QmfQuery;
+import org.apache.qpid.qmf2.common.QmfQueryTarget;
+import org.apache.qpid.qmf2.common.SchemaClassId;
+import org.apache.qpid.qmf2.common.WorkItem;
+import org.apache.qpid.qmf2.console.Agent;
+import org.apache.qpid.qmf2.console.AgentAddedWorkItem;
+import org.apache.qpid.qmf2.console.Console;
+import org.apache.qpid.qmf2.console.QmfConsoleData;
+import org.apache.qpid.qmf2.console.QueryResultIterator;
+import org.apache.qpid.qmf2.util.ConnectionHelper;
+import static org.apache.qpid.qmf2.common.WorkItem.WorkItemType.*;
+
+/**
+ * This class tests queries that combine a predicate with a "_select" projection of properties that the predicate
+ * doesn't refer to, e.g. "select name where msgDepth &gt;= 0". The objects returned should match the predicate and
+ * have only the selected properties, whether the Agent evaluates the predicate (as the Java Agent used by AgentTest
+ * does) or ignores it and leaves the Console to evaluate it (as the C++ broker ManagementAgent does).
+ *
+ * N.B. AgentTest needs to be running for this test to behave as expected.
+ */
+public final class SelectPredicateTest implements QmfEventListener
+{
+    private Console _console;
+    private Agent _gizmo;
+
+    public SelectPredicateTest(String url)
+    {
+        try
+        {
+            System.out.println("*** Starting SelectPredicateTest used to test predicates with a _select ***");
+
+            Connection connection = ConnectionHelper.createConnection(url, "{reconnect: true}");
+            _console = new Console(this);
+            _console.addConnection(connection);
+
+            // Wait until the gizmo Agent has been discovered
+            synchronized(this)
+            {
+                while (_gizmo == null)
+                {
+                    long startTime = System.currentTimeMillis();
+                    try
+                    {
+                        wait(10*1000);
+                    }
+                    catch (InterruptedException ie)
+                    {
+                        continue;
+                    }
+                    // Measure elapsed time to test against spurious wakeups and ensure we really have timed out
+                    long elapsedTime = (System.currentTimeMillis() - startTime)/1000;
+                    if (_gizmo == null && elapsedTime >= 10)
+                    {
+                        System.out.println("gizmo Agent not found, you probably need to run AgentTest");
+                        System.exit(1);
+                    }
+                }
+            }
+
+            SchemaClassId control = new SchemaClassId("com.profitron.gizmo", "control");
+
+            System.out.println("Testing select state where offset >= 0 on the gizmo Agent");
+            QmfQuery query = new QmfQuery(QmfQueryTarget.OBJECT, control, "['ge', 'offset', 0]");
+            query.setSelect("state");
+            check(query, _gizmo, 1, "state", "offset");
+
+            System.out.println("Testing select state where offset < 0 on the gizmo Agent");
+            query = new QmfQuery(QmfQueryTarget.OBJECT, control, "['lt', 'offset', 0]");
+            query.setSelect("state");
+            check(query, _gizmo, 0, "state", "offset");
+
+            Agent broker = _console.findAgent("broker");
+            if (broker == null)
+            {
+                System.out.println("broker Agent not found, skipping broker tests");
+            }
+            else
+            {
+                System.out.println("Testing select name where msgDepth >= 0 on the broker Agent");
+                query = new QmfQuery(QmfQueryTarget.OBJECT, new SchemaClassId("org.apache.qpid.broker", "queue"),
+                                     "['ge', 'msgDepth', 0]");
+                query.setSelect("name");
+                check(query, broker, -1, "name", "msgDepth");
+            }
+
+            System.out.println("SelectPredicateTest passed");
+        }
+        catch (QmfException qmfe)
+        {
+            System.err.println("QmfException " + qmfe.getMessage() + ": SelectPredicateTest failed");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Run a query using both getObjects() and streamObjects() and check the results.
+     *
+     * @param query the query to run.
+     * @param agent the Agent to query.
+     * @param expected the number of objects expected, or -1 if at least one object is expected.
+     * @param selected the property that the query selects, which every object should have.
+     * @param predicated the property that the predicate refers to, which no object should have.
+     */
+    private void check(QmfQuery query, Agent agent, int expected, String selected, String predicated)
+        throws QmfException
+    {
+        List<QmfConsoleData> objects = _console.getObjects(query, Collections.singletonList(agent));
+        checkCount("getObjects()", objects.size(), expected);
+        for (QmfConsoleData object : objects)
+        {
+            checkObject("getObjects()", object, selected, predicated);
+        }
+
+        int count = 0;
+        QueryResultIterator results = _console.streamObjects(agent, query);
+        try
+        {
+            while (results.hasNext())
+            {
+                checkObject("streamObjects()", results.next(), selected, predicated);
+                count++;
+            }
+
+            if (!results.isComplete())
+            {
+                System.out.println("streamObjects() results were cut short: SelectPredicateTest failed");
+                System.exit(1);
+            }
+        }
+        finally
+        {
+            results.close();
+        }
+        checkCount("streamObjects()", count, expected);
+    }
+
+    private void checkCount(String method, int count, int expected)
+    {
+        System.out.println(method + " returned " + count + " objects");
+        if ((expected < 0 && count == 0) || (expected >= 0 && count != expected))
+        {
+            System.out.println(method + " returned the wrong number of objects: SelectPredicateTest failed");
+            System.exit(1);
+        }
+    }
+
+    private void checkObject(String method, QmfConsoleData object, String selected, String predicated)
+    {
+        if (!object.hasValue(selected) || object.hasValue(predicated))
+        {
+            System.out.println(method + " returned an object with the wrong properties: SelectPredicateTest failed");
+            object.listValues();
+            System.exit(1);
+        }
+    }
+
+    public void onEvent(WorkItem wi)
+    {
+        if (wi.getType() == AGENT_ADDED)
+        {
+            AgentAddedWorkItem item = (AgentAddedWorkItem)wi;
+            Agent agent = item.getAgent();
+
+            // If this is the gizmo Agent we notify the main thread so processing can continue.
+            if (agent.getProduct().equals("gizmo"))
+            {
+                synchronized(this)
+                {
+                    _gizmo = agent;
+                    notify();
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        //System.out.println ("Setting log level to FATAL");
+        System.setProperty("amqj.logging.level", "FATAL");
+
+        String url = (args.length == 1) ? args[0] : "localhost";
+        SelectPredicateTest test = new SelectPredicateTest(url);
+
+        BufferedReader commandLine = new BufferedReader(new InputStreamReader(System.in));
+        try
+        { // Blocks here until return is pressed
+            System.out.println("Hit Return to exit");
+            String s = commandLine.readLine();
+            System.exit(0);
+        }
+        catch (IOException e)
+        {
+            System.out.println ("SelectPredicateTest main(): IOException: " + e.getMessage());
+        }
+
+        System.out.println("*** Ending SelectPredicateTest ***");
+    }
+}
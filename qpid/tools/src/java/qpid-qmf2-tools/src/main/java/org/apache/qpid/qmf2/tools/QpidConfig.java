@@ -1395,6 +1395,7 @@ for (Map.Entry<String, Object> entry  : args.entrySet()) {
             Connection connection = ConnectionHelper.createConnection(_host, "{reconnect: true}");        
             _console = new Console();
             _console.disableEvents(); // Optimisation, as we're only doing getObjects() calls.
+            _console.setLazyDecoding(true); // Optimisation, as we only look at a few properties of most objects.
             _console.addConnection(connection);
             List<QmfConsoleData> brokers = _console.getObjects("org.apache.qpid.broker", "broker");
             if (brokers.isEmpty())
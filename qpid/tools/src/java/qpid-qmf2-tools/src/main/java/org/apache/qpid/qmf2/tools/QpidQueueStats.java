@@ -28,6 +28,8 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -72,6 +74,12 @@ import org.apache.qpid.qmf2.util.GetOpt;
  *   -f &lt;filter&gt;, --filter=&lt;filter&gt;
  *                         a list of comma separated queue names (regex are
  *                         accepted) to show
+ *   -t &lt;N&gt;, --top=&lt;N&gt;   periodically show only the N queues that sort first,
+ *                         the ordering and limit are evaluated by the broker
+ *                         Agent where it supports them
+ *   -s &lt;property&gt;, --sort=&lt;property&gt;
+ *                         the queue property used to order the queues shown by
+ *                         --top, in descending order (default msgDepth)
  *   --sasl-mechanism=&lt;mech&gt;
  *                         SASL mechanism for authentication (e.g. EXTERNAL,
  *                         ANONYMOUS, PLAIN, CRAM-MD5, DIGEST-MD5, GSSAPI). SASL
@@ -123,6 +131,12 @@ public final class QpidQueueStats implements QmfEventListener
     "  -f <filter>, --filter=<filter>\n" +
     "                        a list of comma separated queue names (regex are\n" +
     "                        accepted) to show\n" +
+    "  -t <N>, --top=<N>     periodically show only the N queues that sort first,\n" +
+    "                        the ordering and limit are evaluated by the broker\n" +
+    "                        Agent where it supports them\n" +
+    "  -s <property>, --sort=<property>\n" +
+    "                        the queue property used to order the queues shown by\n" +
+    "                        --top, in descending order (default msgDepth)\n" +
     "  --sasl-mechanism=<mech>\n" +
     "                        SASL mechanism for authentication (e.g. EXTERNAL,\n" +
     "                        ANONYMOUS, PLAIN, CRAM-MD5, DIGEST-MD5, GSSAPI). SASL\n" +
@@ -131,6 +145,9 @@ public final class QpidQueueStats implements QmfEventListener
 
     private final String _url;
     private final List<Pattern> _filter;
+    private final int _top;
+    private final String _sort;
+    private QmfQuery _topQuery = null;
     private Agent _broker;
     private Console _console;
     private Map<ObjectId, Stats> _objects = new HashMap<ObjectId, Stats>();
@@ -145,6 +162,20 @@ public final class QpidQueueStats implements QmfEventListener
      * @param filter a list of regex Patterns used to choose the queues we wish to display.
      */
     public QpidQueueStats(final String url, final String connectionOptions, final List<Pattern> filter)
+    {
+        this(url, connectionOptions, filter, 0, null);
+    }
+
+    /**
+     * Constructor that optionally periodically shows only the top N queues ordered by a queue property.
+     * @param url the connection URL.
+     * @param connectionOptions the options String to pass to ConnectionHelper.
+     * @param filter a list of regex Patterns used to choose the queues we wish to display.
+     * @param top the number of queues to show, or zero to show statistics for every queue as they are pushed.
+     * @param sort the queue property used to order the queues shown when top is set, msgDepth if null.
+     */
+    public QpidQueueStats(final String url, final String connectionOptions, final List<Pattern> filter,
+                          final int top, final String sort)
     {
         System.out.println("Connecting to " + url);
         if (filter.size() > 0)
@@ -153,17 +184,27 @@ public final class QpidQueueStats implements QmfEventListener
         }
         _url = url;
         _filter = filter;
+        _top = top;
+        _sort = (sort == null) ? "msgDepth" : sort;
         try
         {
             Connection connection = ConnectionHelper.createConnection(url, connectionOptions);        
             _console = new Console(this);
+            _console.setLazyDecoding(true); // Optimisation, as we only look at a few properties of each queue.
             _console.addConnection(connection);
 
             // Wait until the broker Agent has been discovered
             _broker = _console.findAgent("broker");
             if (_broker != null)
             {
-                createQueueSubscription();
+                if (_top > 0)
+                {
+                    createTopQuery();
+                }
+                else
+                {
+                    createQueueSubscription();
+                }
             }
 
             System.out.println("Hit Return to exit");
@@ -178,6 +219,80 @@ public final class QpidQueueStats implements QmfEventListener
         }
     }
 
+    /**
+     * Create the query used to retrieve the top N queues. The filter is pushed down as a re_match predicate so that
+     * the limit is applied to the matching queues, and only the properties that get displayed are returned.
+     */
+    private void createTopQuery()
+    {
+        try
+        {
+            Map<String, Object> queryMap = new HashMap<String, Object>();
+            queryMap.put("_what", QmfQueryTarget.OBJECT.toString());
+            queryMap.put("_schema_id", new SchemaClassId("queue").mapEncode());
+            if (_filter.size() > 0)
+            {
+                List<Object> predicate = new ArrayList<Object>();
+                predicate.add("or");
+                for (Pattern x : _filter)
+                {
+                    predicate.add(Arrays.asList("re_match", "name", Arrays.asList("quote", x.pattern())));
+                }
+                queryMap.put("_where", predicate);
+            }
+
+            _topQuery = new QmfQuery(queryMap);
+            _topQuery.setSelect("name", "msgDepth", "msgTotalEnqueues", "msgTotalDequeues", _sort);
+            _topQuery.setOrderBy(_sort, true);
+            _topQuery.setLimit(_top);
+        }
+        catch (QmfException qmfe)
+        {
+            System.err.println ("QmfException " + qmfe.getMessage() + " caught in QpidQueueStats createTopQuery");
+        }
+    }
+
+    /**
+     * Retrieve the top N queues and display their statistics, rates are calculated against the previous sample of
+     * each queue, so a queue that has just entered the top N shows zero rates until its next sample.
+     */
+    private void showTop()
+    {
+        List<QmfConsoleData> queues = _console.getObjects(_topQuery, Collections.singletonList(_broker));
+        Map<ObjectId, Stats> samples = new HashMap<ObjectId, Stats>();
+        System.out.println();
+        System.out.println("Top " + _top + " queues by " + _sort + " at " + new Date());
+        for (QmfConsoleData record : queues)
+        {
+            ObjectId id = record.getObjectId();
+            String name = record.getStringValue("name");
+            Stats stats = _objects.get(id);
+
+            float deltaTime = 0.0f;
+            float enqueueRate = 0.0f;
+            float dequeueRate = 0.0f;
+            if (stats != null)
+            {
+                QmfConsoleData lastSample = stats.getData();
+                deltaTime = record.getUpdateTime() - lastSample.getUpdateTime();
+                if (deltaTime > 0.0f)
+                {
+                    float deltaEnqueues = record.getLongValue("msgTotalEnqueues") -
+                                          lastSample.getLongValue("msgTotalEnqueues");
+                    float deltaDequeues = record.getLongValue("msgTotalDequeues") -
+                                          lastSample.getLongValue("msgTotalDequeues");
+                    enqueueRate = deltaEnqueues/(deltaTime/1000000000.0f);
+                    dequeueRate = deltaDequeues/(deltaTime/1000000000.0f);
+                }
+            }
+            samples.put(id, new Stats(name, record));
+
+            System.out.printf("%-46s%10.2f%11d%13.2f%13.2f\n",
+                              name, deltaTime/1000000000, record.getLongValue("msgDepth"), enqueueRate, dequeueRate);
+        }
+        _objects = samples; // Only retain the samples for the current top N so the Map doesn't grow unbounded.
+    }
+
     /**
      * Create a Subscription to query for all queue objects
      */
@@ -205,11 +320,22 @@ public final class QpidQueueStats implements QmfEventListener
      * queue Management Object data from the broker.
      * <p>
      * When the AgentRestartedWorkItem is received we clear the state to remove any stale queue Management Objects.
+     * <p>
+     * If only the top N queues are being shown the broker's AgentHeartbeatWorkItem is instead used to periodically
+     * query for them.
      * @param wi a QMF2 WorkItem object
      */
     public void onEvent(final WorkItem wi)
     {
-        if (wi instanceof AgentHeartbeatWorkItem && _subscriptionId != null)
+        if (wi instanceof AgentHeartbeatWorkItem && _topQuery != null)
+        {
+            Agent agent = ((AgentHeartbeatWorkItem)wi).getAgent();
+            if (agent.getName().equals(_broker.getName()))
+            {
+                showTop();
+            }
+        }
+        else if (wi instanceof AgentHeartbeatWorkItem && _subscriptionId != null)
         {
             long elapsed = (long)Math.round((System.currentTimeMillis() - _startTime)/1000.0f);    
             if (elapsed > _subscriptionDuration)
@@ -279,7 +405,7 @@ public final class QpidQueueStats implements QmfEventListener
                                     float enqueueRate = deltaEnqueues/(deltaTime/1000000000.0f);
                                     float dequeueRate = deltaDequeues/(deltaTime/1000000000.0f);
 
-                                    System.out.printf("%-46s%10.2f%11d%13.2f%13.2f\n", 
+                                    System.out.printf("%-46s%10.2f%11d%13.2f%13.2f\n",
                                                       name, deltaTime/1000000000, msgDepth, enqueueRate, dequeueRate);
                                 }
                             }
@@ -315,13 +441,15 @@ public final class QpidQueueStats implements QmfEventListener
         logLevel = (logLevel == null) ? "FATAL" : logLevel; // Set default log level to FATAL rather than DEBUG.
         System.setProperty("amqj.logging.level", logLevel);
 
-        String[] longOpts = {"help", "broker-address=", "filter=", "sasl-mechanism="};
+        String[] longOpts = {"help", "broker-address=", "filter=", "top=", "sort=", "sasl-mechanism="};
         try
         {
             String host = "localhost";
             String connectionOptions = "{reconnect: true}";
             List<Pattern> filter = new ArrayList<Pattern>();
-            GetOpt getopt = new GetOpt(args, "ha:f:", longOpts);
+            int top = 0;
+            String sort = null;
+            GetOpt getopt = new GetOpt(args, "ha:f:t:s:", longOpts);
             List<String[]> optList = getopt.getOptList();
 
             for (String[] opt : optList)
@@ -345,13 +473,28 @@ public final class QpidQueueStats implements QmfEventListener
                         filter.add(p);
                     }
                 }
+                else if (opt[0].equals("-t") || opt[0].equals("--top"))
+                {
+                    try
+                    {
+                        top = Integer.parseInt(opt[1]);
+                    }
+                    catch (NumberFormatException nfe)
+                    {
+                        throw new IllegalArgumentException("--top requires a number of queues");
+                    }
+                }
+                else if (opt[0].equals("-s") || opt[0].equals("--sort"))
+                {
+                    sort = opt[1];
+                }
                 else if (opt[0].equals("--sasl-mechanism"))
                 {
                     connectionOptions = "{reconnect: true, sasl_mechs: " + opt[1] + "}";
                 }
             }
 
-            QpidQueueStats queueStats = new QpidQueueStats(host, connectionOptions, filter);
+            QpidQueueStats queueStats = new QpidQueueStats(host, connectionOptions, filter, top, sort);
         }
         catch (IllegalArgumentException e)
         {
@@ -27,7 +27,6 @@ import javax.jms.JMSException;
 import javax.jms.MapMessage;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
-import javax.jms.MessageProducer;
 import javax.jms.MessageListener;
 import javax.jms.Session;
 
@@ -37,18 +36,19 @@ import org.slf4j.LoggerFactory;
 
 // Misc Imports
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
 // QMF2 Imports
 import org.apache.qpid.qmf2.common.AMQPMessage;
+import org.apache.qpid.qmf2.common.Aggregate;
+import org.apache.qpid.qmf2.common.Aggregator;
 import org.apache.qpid.qmf2.common.Handle;
 import org.apache.qpid.qmf2.common.Notifier;
 import org.apache.qpid.qmf2.common.NotifierWrapper;
@@ -65,6 +65,7 @@ import org.apache.qpid.qmf2.common.SchemaClass;
 import org.apache.qpid.qmf2.common.SchemaClassId;
 import org.apache.qpid.qmf2.common.SchemaEventClass;
 import org.apache.qpid.qmf2.common.SchemaObjectClass;
+import org.apache.qpid.qmf2.common.TopN;
 import org.apache.qpid.qmf2.common.WorkItem;
 import org.apache.qpid.qmf2.common.WorkQueue;
 
@@ -174,10 +175,22 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
 {
     private static final Logger _log = LoggerFactory.getLogger(Agent.class);
 
+    /**
+     * The default maximum number of objects sent in each query response or subscription indication message.
+     */
+    public static final int DEFAULT_MAX_RESPONSE_OBJECTS = 1000;
+
+    /**
+     * The default maximum estimated encoded size of the objects sent in each query response or subscription
+     * indication message.
+     */
+    public static final int DEFAULT_MAX_RESPONSE_BYTES = 1024*1024;
+
     /** 
-     * This TimerTask causes the Agent to sent a Hearbeat when it gets scheduled
+     * This task causes the Agent to sent a Hearbeat when it gets scheduled, it runs on the AgentScheduler's
+     * heartbeat lane so that it isn't held up by slow Subscriptions.
      */
-    private final class Heartbeat extends TimerTask
+    private final class Heartbeat implements Runnable
     {
         public void run()
         {
@@ -186,27 +199,44 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
                 String vendorKey = _vendor.replace(".", "_");
                 String productKey = _product.replace(".", "_");
                 String instanceKey = _instance.replace(".", "_");
-                String subject = "agent.ind.heartbeat." + vendorKey + "." + productKey + "." + instanceKey;
+                final String subject = "agent.ind.heartbeat." + vendorKey + "." + productKey + "." + instanceKey;
+
+                SessionPool.MessageBuilder heartbeat = new SessionPool.MessageBuilder()
+                {
+                    public Message build(final Session session) throws JMSException
+                    {
+                        MapMessage response = session.createMapMessage();
+                        response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+                        response.setStringProperty("method", "indication");
+                        response.setStringProperty("qmf.opcode", "_agent_heartbeat_indication");
+                        response.setStringProperty("qmf.agent", _name);
+                        response.setStringProperty("qpid.subject", subject);
+                        setValue("_timestamp", System.currentTimeMillis()*1000000l);
+                        response.setObject("_values", mapEncode());
+                        return response;
+                    }
+                };
 
-                MapMessage response = _syncSession.createMapMessage();
-                response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
-                response.setStringProperty("method", "indication");
-                response.setStringProperty("qmf.opcode", "_agent_heartbeat_indication");
-                response.setStringProperty("qmf.agent", _name);
-                response.setStringProperty("qpid.subject", subject);
-                setValue("_timestamp", System.currentTimeMillis()*1000000l);
-                response.setObject("_values", mapEncode());
-            
                 // Send heartbeat messages with a Time To Live (in msecs) set to two times the _heartbeatInterval
                 // to prevent stale heartbeats from getting to the consoles.
-                _producer.send(_topicAddress, response, Message.DEFAULT_DELIVERY_MODE,
-                               Message.DEFAULT_PRIORITY, _heartbeatInterval*2000);
+                _sessionPool.send(_topicAddress, heartbeat, Message.DEFAULT_DELIVERY_MODE,
+                                  Message.DEFAULT_PRIORITY, _heartbeatInterval*2000);
             }
             catch (JMSException jmse)
             {
                 _log.info("JMSException {} caught in sendHeartbeat()", jmse.getMessage());
             }
+        }
+    }
 
+    /** 
+     * This task reaps QmfAgentData Objects that have been marked as Deleted, it runs on the AgentScheduler's
+     * subscription lane every heartbeat interval.
+     */
+    private final class Reaper implements Runnable
+    {
+        public void run()
+        {
             // Reap any QmfAgentData Objects that have been marked as Deleted
             // Use the iterator approach rather than foreach as we may want to call iterator.remove() to zap an entry
             Iterator<QmfAgentData> i = _objectIndex.values().iterator();
@@ -217,6 +247,8 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
                 {
                     _log.debug("Removing deleted QmfAgentData Object from store");
                     i.remove();
+                    _secondaryIndex.remove(object);
+                    _updateIndex.remove(object);
                 }
             }
         }
@@ -244,11 +276,33 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
      */
     private Map<ObjectId, QmfAgentData> _objectIndex = new ConcurrentHashMap<ObjectId, QmfAgentData>(100);
 
+    /**
+     * _secondaryIndex holds the class and property indexes over _objectIndex used to plan OBJECT queries.
+     */
+    private final SecondaryIndex _secondaryIndex = new SecondaryIndex();
+
+    /**
+     * _updateIndex orders the objects in _objectIndex by update timestamp, it is used to plan "_since" queries.
+     */
+    private final UpdateIndex _updateIndex = new UpdateIndex();
+
     /**
      * This Map is used to look up Subscriptions by SubscriptionId
      */
     private Map<String, Subscription> _subscriptions = new ConcurrentHashMap<String, Subscription>();
 
+    /**
+     * Indexes the OBJECT Subscriptions by the ObjectId or class that they select, so that objects being added or
+     * updated need only be evaluated against the Subscriptions that could possibly match them.
+     */
+    private final SubscriptionIndex _subscriptionIndex = new SubscriptionIndex();
+
+    /**
+     * The SubscriptionGroups sharing the evaluation of identical Subscriptions, keyed by SubscriptionGroup.getKey().
+     * Groups are only ever created, joined and left holding the lock on this Map.
+     */
+    private final Map<String, SubscriptionGroup> _subscriptionGroups = new HashMap<String, SubscriptionGroup>();
+
     /**
      * Used to implement a thread safe queue of WorkItem objects used to implement the Notifier API
      */
@@ -297,9 +351,40 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     private String _domain;
 
     /**
-     * This timer is used to schedule periodic events such as sending Heartbeats and subscription updates
+     * This scheduler is used to schedule periodic events such as sending Heartbeats and subscription updates
+     */
+    private AgentScheduler _scheduler;
+
+    /**
+     * The number of threads that the AgentScheduler uses to evaluate Subscriptions
+     */
+    private int _subscriptionThreads = AgentScheduler.DEFAULT_SUBSCRIPTION_THREADS;
+
+    /**
+     * Runs the handling of Console requests off the JMS MessageListener thread.
+     */
+    private RequestExecutor _requestExecutor;
+    private int _queryThreads = RequestExecutor.DEFAULT_QUERY_THREADS;
+
+    /**
+     * The maximum number of objects and the maximum estimated encoded bytes sent in each query response or
+     * subscription indication message, larger results are split into a sequence of partial messages.
+     */
+    private volatile int _maxResponseObjects = DEFAULT_MAX_RESPONSE_OBJECTS;
+    private volatile int _maxResponseBytes = DEFAULT_MAX_RESPONSE_BYTES;
+
+    /**
+     * The time in milliseconds over which QmfAgentData.publish() calls are coalesced, zero to publish immediately.
+     */
+    private volatile long _publishWindow = 0;
+
+    /**
+     * The Agent's threads all send by leasing a Session and MessageProducer from _sessionPool, as JMS Sessions and
+     * MessageProducers aren't intended to be used concurrently, and each Message is created on the Session that
+     * sends it. _syncSession is only used to create Destinations.
      */
-    private Timer _timer;
+    private int _sendSessions = SessionPool.DEFAULT_SESSIONS;
+    private SessionPool _sessionPool;
 
     /**
      * Various JMS related fields
@@ -312,8 +397,6 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     // _aliasConsumer is used for the alias address if the Agent is a broker Agent (used in Java Broker QMF plugin)
     private MessageConsumer _aliasConsumer;
 
-    private MessageProducer _producer;
-
     private String _quotedDirectBase;
     private Destination _directAddress;
 
@@ -333,9 +416,10 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
      * as the core address and sets the Message "qpid.subject" property with an
      * appropriate Routing Key.
      * @param handle the reply handle that contains the replyTo Address.
-     * @param message the JMS Message to be sent.
+     * @param builder the MessageBuilder that creates the JMS Message to be sent.
      */
-    private final void sendResponse(final Handle handle, final Message message) throws JMSException
+    private final void sendResponse(final Handle handle, final SessionPool.MessageBuilder builder)
+        throws JMSException
     {
         // Just in case the replyTo issues still exist check if the replyTo starts
         // with qmf.default.topic or qmf.default.direct and if so send to the
@@ -344,15 +428,15 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
         String replyTo = handle.getReplyTo().toString();
         if (replyTo.startsWith(_quotedTopicBase))
         {
-            _producer.send(_topicAddress, message);
+            _sessionPool.send(_topicAddress, builder);
         }
         else if (replyTo.startsWith(_quotedDirectBase))
         {
-            _producer.send(_directAddress, message);
+            _sessionPool.send(_directAddress, builder);
         }
         else
         {
-            _producer.send(handle.getReplyTo(), message);
+            _sessionPool.send(handle.getReplyTo(), builder);
         }
     }
 
@@ -364,15 +448,21 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     {
         try
         {
-            MapMessage response = _syncSession.createMapMessage();
-            response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
-            response.setStringProperty("method", "indication");
-            response.setStringProperty("qmf.opcode", "_agent_locate_response");
-            response.setStringProperty("qmf.agent", _name);
-            response.setStringProperty("qpid.subject", handle.getRoutingKey());
-            setValue("_timestamp", System.currentTimeMillis()*1000000l);
-            response.setObject("_values", mapEncode());
-            sendResponse(handle, response);
+            sendResponse(handle, new SessionPool.MessageBuilder()
+            {
+                public Message build(final Session session) throws JMSException
+                {
+                    MapMessage response = session.createMapMessage();
+                    response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+                    response.setStringProperty("method", "indication");
+                    response.setStringProperty("qmf.opcode", "_agent_locate_response");
+                    response.setStringProperty("qmf.agent", _name);
+                    response.setStringProperty("qpid.subject", handle.getRoutingKey());
+                    setValue("_timestamp", System.currentTimeMillis()*1000000l);
+                    response.setObject("_values", mapEncode());
+                    return response;
+                }
+            });
         }
         catch (JMSException jmse)
         {
@@ -433,74 +523,61 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
             else
             { // If not implementing the AgentExternal model we handle the Query ourself.
                 //qmfContentType = "_data";
-                if (query.getObjectId() != null)
+                if (query.getAggregate() != null)
+                {
+                    queryResponse(handle, aggregate(query), "_data"); // Send the response back to the Console.
+                }
+                else if (query.getObjectId() != null)
                 {
                     List<Map> results = new ArrayList<Map>(1);
                     // Look up a QmfAgentData object by the ObjectId obtained from the query
                     ObjectId objectId = query.getObjectId();
                     QmfAgentData object = _objectIndex.get(objectId);
-                    if (object != null && !object.isDeleted())
+                    if (object != null && isCurrent(query, object))
                     {
-                        results.add(object.mapEncode());
+                        results.add(object.encode(query.getSelect()));
                     }
                     queryResponse(handle, results, "_data"); // Send the response back to the Console.
                 }
+                else if (query.getOrderBy() != null || query.getLimit() > 0)
+                {
+                    queryResponse(handle, orderAndLimit(query), "_data"); // Send the response back to the Console.
+                }
                 else
                 {
-                    // Look up QmfAgentData objects by the SchemaClassId obtained from the query
-                    // This is implemented by a linear search and allows searches with only the className specified.
-                    // Linear searches clearly don't scale brilliantly, but the number of QmfAgentData objects managed
-                    // by an Agent is generally fairly small, so it should be OK. Note that this is the same approach
-                    // taken by the C++ broker ManagementAgent, so if it's a problem here........
-
-                    // N.B. the results list declared here is a generic List of Objects. We *must* only pass a List of
-                    // Map to queryResponse(), but conversely if the response items are sortable we need to sort them
-                    // before doing mapEncode(). Unfortunately we don't know if the items are sortable a priori so
-                    // we either add a Map or we add a QmfAgentData, then sort then mapEncode() each item. I'm not
-                    // sure of a more elegant way to do this without creating two lists, which might not be so bad
-                    // but we don't know the size of the list a priori either.
-                    List results = new ArrayList(_objectIndex.size());
-                    // It's unlikely that evaluating this query will return a mixture of sortable and notSortable 
-                    // QmfAgentData objects, but it's best to check if that has occurred as accidentally passing a
-                    // List of QmfAgentData instead of a List of Map to queryResponse() will break things.
-                    boolean sortable = false;
-                    boolean notSortable = false;
-                    for (QmfAgentData object : _objectIndex.values())
+                    // Look up QmfAgentData objects by the SchemaClassId or predicate obtained from the query.
+                    // Linear searches don't scale brilliantly for Agents managing large numbers of objects, so the
+                    // candidates are taken from the SecondaryIndex where the query allows, e.g. class ID queries or
+                    // eq/exists predicates on indexed properties, otherwise every object is evaluated.
+
+                    // The response is streamed to the Console via a ResponseWriter, so the Agent only ever holds a
+                    // bounded number of encoded objects. If the matching QmfAgentData are marked sortable they need
+                    // to be sorted before they are encoded, so references to them are collected, sorted and then
+                    // encoded once all of the candidates have been evaluated.
+                    Collection<QmfAgentData> candidates = getCandidates(query);
+                    List<QmfAgentData> sortable = new ArrayList<QmfAgentData>();
+                    ResponseWriter writer = createResponseWriter(handle, "response", "_query_response", "_data");
+                    for (QmfAgentData object : candidates)
                     {
-                        if (!object.isDeleted() && query.evaluate(object))
+                        if (isCurrent(query, object) && query.evaluate(object))
                         {
                             if (object.isSortable())
-                            { // If QmfAgentData is marked sortable we add the QmfAgentData object to the List
-                              // so we can sort first before mapEncoding.
-                                results.add(object);
-                                sortable = true;
+                            {
+                                sortable.add(object);
                             }
                             else
-                            { // If QmfAgentData is not marked sortable we mapEncode immediately and add the Map to List.
-                                results.add(object.mapEncode());
-                                notSortable = true;
+                            {
+                                writer.write(object.encode(query.getSelect()));
                             }
                         }
                     }
 
-                    // If both flags have been set something has gone a bit weird, so we log an error and clear the
-                    // results List to avoid sending unconvertable data. Hopefully this condition should never occur.
-                    if (sortable && notSortable)
-                    {
-                        _log.info("Query resulted in inconsistent mixture of sortable and non-sortable data.");
-                        results.clear();
-                    }
-                    else if (sortable)
+                    Collections.sort(sortable);
+                    for (QmfAgentData object : sortable)
                     {
-                        Collections.sort(results);
-                        int length = results.size();
-                        for (int i = 0; i < length; i++)
-                        {
-                            QmfAgentData object = (QmfAgentData)results.get(i);
-                            results.set(i, object.mapEncode());
-                        }
+                        writer.write(object.encode(query.getSelect()));
                     }
-                    queryResponse(handle, results, "_data"); // Send the response back to the Console.
+                    writer.close(); // Send the last part of the response back to the Console.
                 }
             }
         }
@@ -538,18 +615,24 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     {
         try
         {
-            MapMessage response = _syncSession.createMapMessage();
-            response.setJMSCorrelationID(handle.getCorrelationId());
-            response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
-            response.setStringProperty("method", "response");
-            response.setStringProperty("qmf.opcode", "_exception");
-            response.setStringProperty("qmf.agent", _name);
-            response.setStringProperty("qpid.subject", handle.getRoutingKey());
-
-            QmfData exception = new QmfData();
-            exception.setValue("error_text", message);
-            response.setObject("_values", exception.mapEncode());
-            sendResponse(handle, response);
+            sendResponse(handle, new SessionPool.MessageBuilder()
+            {
+                public Message build(final Session session) throws JMSException
+                {
+                    MapMessage response = session.createMapMessage();
+                    response.setJMSCorrelationID(handle.getCorrelationId());
+                    response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+                    response.setStringProperty("method", "response");
+                    response.setStringProperty("qmf.opcode", "_exception");
+                    response.setStringProperty("qmf.agent", _name);
+                    response.setStringProperty("qpid.subject", handle.getRoutingKey());
+
+                    QmfData exception = new QmfData();
+                    exception.setValue("error_text", message);
+                    response.setObject("_values", exception.mapEncode());
+                    return response;
+                }
+            });
         }
         catch (JMSException jmse)
         {
@@ -561,30 +644,92 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     // ********************************************************************************************************
 
     /**
-     * Send a list of updated subscribed data to the Console.
+     * Send a list of updated subscribed data to the Console, split into partial indications if it is large.
      *
      * @param handle the console reply handle.
      * @param results a list of subscribed data in Map encoded form.
      */
     public final void sendSubscriptionIndicate(final Handle handle, final List<Map> results)
     {
-        try
+        ResponseWriter writer = createResponseWriter(handle, "indication", "_data_indication", "_data");
+        writer.writeAll(results);
+        writer.close();
+    }
+
+    /**
+     * Evaluate an aggregate QmfQuery in a single pass over the matching objects. Only the properties used by the
+     * Aggregate are encoded, which allows QmfAgentData subclasses that retrieve their values when encoded to
+     * retrieve just those values, see QmfAgentData.mapEncode(select).
+     *
+     * @param query the QmfQuery carrying the Aggregate.
+     * @return the aggregated results, each in the map encoded form of a QmfData.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Map> aggregate(final QmfQuery query)
+    {
+        Aggregate aggregate = query.getAggregate();
+        Aggregator aggregator = new Aggregator(aggregate);
+        Collection<String> properties = aggregate.getProperties();
+        for (QmfAgentData object : evaluateQuery(query))
         {
-            Message response = AMQPMessage.createListMessage(_syncSession);
-            response.setJMSCorrelationID(handle.getCorrelationId());
-            response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
-            response.setStringProperty("method", "indication");
-            response.setStringProperty("qmf.opcode", "_data_indication");
-            response.setStringProperty("qmf.content", "_data");
-            response.setStringProperty("qmf.agent", _name);
-            response.setStringProperty("qpid.subject", handle.getRoutingKey());
-            AMQPMessage.setList(response, results);
-            sendResponse(handle, response);
+            Map<String, Object> encoded = object.encode(properties);
+            aggregator.add((Map<String, Object>)encoded.get("_values"));
         }
-        catch (JMSException jmse)
+
+        List<Map<String, Object>> groups = aggregator.getResults();
+        List<Map> results = new ArrayList<Map>(groups.size());
+        for (Map<String, Object> group : groups)
+        {
+            Map<String, Object> result = new HashMap<String, Object>(1);
+            result.put("_values", group);
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Evaluate a QmfQuery that has an ordering and/or a limit. The first "_limit" matching objects are retained in
+     * a bounded TopN as the candidates are evaluated, so the work is O(n log k) and only the k retained objects are
+     * fully encoded. To obtain each object's sort value only the ordering property is encoded, which allows
+     * QmfAgentData subclasses that retrieve their values when encoded to retrieve just that value.
+     *
+     * @param query the QmfQuery carrying the ordering and/or limit.
+     * @return the retained objects in order, each in map encoded form.
+     */
+    private List<Map> orderAndLimit(final QmfQuery query)
+    {
+        String orderBy = query.getOrderBy();
+        int limit = query.getLimit();
+        Collection<String> orderProperty = (orderBy == null) ? null : Collections.singletonList(orderBy);
+        TopN<QmfAgentData> top = new TopN<QmfAgentData>(limit, query.isDescending());
+        int count = 0;
+        for (QmfAgentData object : getCandidates(query))
+        {
+            if (isCurrent(query, object) && query.evaluate(object))
+            {
+                if (orderBy == null)
+                { // With no ordering any limit matching objects will do, so stop as soon as we have them.
+                    top.add(null, object);
+                    if (++count == limit)
+                    {
+                        break;
+                    }
+                }
+                else
+                {
+                    Map values = (Map)object.encode(orderProperty).get("_values");
+                    top.add((values == null) ? null : values.get(orderBy), object);
+                }
+            }
+        }
+
+        List<QmfAgentData> objects = top.getResults();
+        List<Map> results = new ArrayList<Map>(objects.size());
+        for (QmfAgentData object : objects)
         {
-            _log.info("JMSException {} caught in sendSubscriptionIndicate()", jmse.getMessage());
+            results.add(object.encode(query.getSelect()));
         }
+        return results;
     }
 
     /**
@@ -595,7 +740,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
      */
     public final List<QmfAgentData> evaluateQuery(final QmfQuery query)
     {
-        List<QmfAgentData> results = new ArrayList<QmfAgentData>(_objectIndex.size());
+        List<QmfAgentData> results = new ArrayList<QmfAgentData>();
         if (query.getTarget() == QmfQueryTarget.OBJECT)
         { // Note that we don't include objects marked as deleted in the results here, because if an object gets
           // destroyed we asynchronously publish its new state to subscribers, see QmfAgentData.destroy() method.
@@ -612,7 +757,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
             else
             {
                 // Look up QmfAgentData objects evaluating the query
-                for (QmfAgentData object : _objectIndex.values())
+                for (QmfAgentData object : getCandidates(query))
                 {
                     if (!object.isDeleted() && query.evaluate(object))
                     {
@@ -624,6 +769,83 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
         return results;
     }
 
+    /**
+     * Return the QmfAgentData objects that an OBJECT query could possibly match, using the SecondaryIndex where
+     * possible and falling back to every object in the store. The query must still be evaluated against each one.
+     *
+     * @param query the OBJECT QmfQuery being evaluated.
+     * @return the candidate QmfAgentData objects.
+     */
+    private Collection<QmfAgentData> getCandidates(final QmfQuery query)
+    {
+        if (query.getSince() > 0)
+        { // Incremental queries are generally only interested in a few recently updated objects.
+            return _updateIndex.getUpdatedSince(query.getSince());
+        }
+        Collection<QmfAgentData> candidates = _secondaryIndex.getCandidates(query);
+        return (candidates == null) ? _objectIndex.values() : candidates;
+    }
+
+    /**
+     * Return true if an object should be considered by a query response. Deleted objects are normally excluded,
+     * but a query with a "_since" clause returns the objects updated after that time, deleted or not, so that
+     * the Console learns of deletions.
+     *
+     * @param query the OBJECT QmfQuery being evaluated.
+     * @param object the candidate QmfAgentData.
+     * @return true if the object should be evaluated against the query.
+     */
+    private static boolean isCurrent(final QmfQuery query, final QmfAgentData object)
+    {
+        long since = query.getSince();
+        return (since > 0) ? object.getUpdateTime() > since : !object.isDeleted();
+    }
+
+    /**
+     * Called by QmfAgentData.update() and QmfAgentData.destroy() for objects held in the object store. The object
+     * is moved to its new update time in the UpdateIndex. Objects that are already referenced by a Subscription
+     * record their own changes, so this only needs to check whether the updated object has come to match the
+     * predicate of any change driven Subscription that it isn't yet referenced by, and the SubscriptionIndex limits
+     * that check to the Subscriptions that select the object's class or that may select objects of any class.
+     * <p>
+     * An update() called from mapEncode() whilst the object is being encoded is a refresh of the object for
+     * serialisation rather than a change of its state, so neither the UpdateIndex nor Subscription membership is
+     * re-evaluated for it.
+     *
+     * @param object the QmfAgentData that has been updated.
+     */
+    final void objectUpdated(final QmfAgentData object)
+    {
+        if (object.isEncoding())
+        {
+            return;
+        }
+
+        if (_objectIndex.get(object.getObjectId()) == object)
+        { // Guards against re-indexing an object that has already been reaped or replaced.
+            _updateIndex.update(object);
+        }
+
+        if (object.isDeleted())
+        {
+            return;
+        }
+
+        for (Subscription subscription : _subscriptionIndex.getCandidates(object))
+        {
+            String subscriptionId = subscription.getSubscriptionId();
+            QmfQuery query = subscription.getQuery();
+            if (subscription.isChangeDriven() && !subscription.isFollower() &&
+                query.getTarget() == QmfQueryTarget.OBJECT &&
+                query.getPredicate() != null && object.getSubscription(subscriptionId) == null &&
+                query.evaluate(object))
+            {
+                object.addSubscription(subscriptionId, subscription);
+                subscription.markChanged(object);
+            }
+        }
+    }
+
     /**
      * This method is called by the Subscription to tell the SubscribableAgent that the Subscription has been cancelled.
      *
@@ -632,6 +854,44 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     public final void removeSubscription(final Subscription subscription)
     {
         _subscriptions.remove(subscription.getSubscriptionId());
+        _subscriptionIndex.remove(subscription);
+        SubscriptionGroup group = subscription.getGroup();
+        if (group != null)
+        {
+            synchronized(_subscriptionGroups)
+            {
+                if (group.leave(subscription))
+                {
+                    _subscriptionGroups.remove(group.getKey());
+                }
+            }
+            subscription.setGroup(null);
+        }
+    }
+
+    /**
+     * Add a Subscription to the SubscriptionGroup for its query and interval, creating the group if necessary.
+     *
+     * @param subscription the new Subscription.
+     * @return the group's primary if the Subscription has joined an existing group as a follower, otherwise null.
+     */
+    private Subscription addToGroup(final Subscription subscription)
+    {
+        String key = SubscriptionGroup.getKey(subscription.getQuery(), subscription.getInterval());
+        synchronized(_subscriptionGroups)
+        {
+            SubscriptionGroup group = _subscriptionGroups.get(key);
+            if (group == null)
+            {
+                group = new SubscriptionGroup(key, subscription);
+                _subscriptionGroups.put(key, group);
+                subscription.setGroup(group);
+                return null;
+            }
+            group.join(subscription);
+            subscription.setGroup(group);
+            return group.getPrimary();
+        }
     }
 
     //                                          MessageListener
@@ -639,10 +899,100 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
 
     /**
      * MessageListener for QMF2 Console requests.
+     * <p>
+     * Requests are handed off to the RequestExecutor so that the MessageListener thread is never held up by an
+     * expensive request. Query requests are decoded here so that those that scan the object store may be run on
+     * the query lane, method requests are run on the method lane and everything else on the control lane.
      *
      * @param message the JMS Message passed to the listener.
      */
     public final void onMessage(final Message message)
+    {
+        RequestExecutor executor = _requestExecutor;
+        if (executor == null)
+        {
+            handleRequest(message);
+            return;
+        }
+
+        try
+        {
+            String opcode = QmfData.getString(message.getObjectProperty("qmf.opcode"));
+            if ("_query_request".equals(opcode) && AMQPMessage.isAMQPMap(message))
+            {
+                final QmfQuery query = createQuery(message);
+                if (query != null)
+                {
+                    final Handle handle = new Handle(message.getJMSCorrelationID(), message.getJMSReplyTo());
+                    executor.execute(isScan(query) ? RequestExecutor.Lane.QUERY : RequestExecutor.Lane.CONTROL,
+                                     new Runnable()
+                    {
+                        public void run()
+                        {
+                            handleQueryRequest(handle, query);
+                        }
+                    });
+                    return;
+                }
+            }
+
+            executor.execute("_method_request".equals(opcode) ? RequestExecutor.Lane.METHOD :
+                                                                RequestExecutor.Lane.CONTROL, new Runnable()
+            {
+                public void run()
+                {
+                    handleRequest(message);
+                }
+            });
+        }
+        catch (JMSException jmse)
+        {
+            _log.info("JMSException {} caught in onMessage()", jmse.getMessage());
+        }
+    }
+
+    /**
+     * Decode the QmfQuery carried by a query request.
+     *
+     * @param message the query request Message.
+     * @return the QmfQuery, or null if the query is invalid, in which case handleRequest() raises the exception.
+     */
+    private QmfQuery createQuery(final Message message) throws JMSException
+    {
+        try
+        {
+            return new QmfQuery(AMQPMessage.getMap(message));
+        }
+        catch (QmfException qmfe)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Return true if handling a query requires a scan of the object store, as opposed to a lookup by ObjectId or a
+     * query that is passed on to an AgentExternal application.
+     *
+     * @param query the QmfQuery from the query request.
+     * @return true if the query should be run on the query lane.
+     */
+    private boolean isScan(final QmfQuery query)
+    {
+        if (this instanceof AgentExternal)
+        {
+            return false;
+        }
+        QmfQueryTarget target = query.getTarget();
+        return target == QmfQueryTarget.OBJECT_ID ||
+               (target == QmfQueryTarget.OBJECT && query.getObjectId() == null);
+    }
+
+    /**
+     * Handle a QMF2 Console request, called on one of the RequestExecutor's lanes.
+     *
+     * @param message the JMS Message passed to the listener.
+     */
+    private void handleRequest(final Message message)
     {
         try
         {
@@ -713,11 +1063,22 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
                         else
                         {
                             Subscription subscription = new Subscription(this, subscriptionParams);
+                            subscription.setChangeDriven(true);
+                            subscription.setDelta(subscriptionParams.isDelta());
+                            // Delta mode Subscriptions track what each Console has seen, so they can't be shared.
+                            Subscription primary = subscription.isDelta() ? null : addToGroup(subscription);
                             String subscriptionId = subscription.getSubscriptionId();
                             _subscriptions.put(subscriptionId, subscription);
-                            _timer.schedule(subscription, 0, subscriptionParams.getPublishInterval());
+                            _subscriptionIndex.add(subscription);
+                            subscription.setScheduledFuture(_scheduler.scheduleSubscription(subscription, 0,
+                                                                                            subscription.getInterval()));
                             subscriptionResponse(handle, subscription.getConsoleHandle(), subscriptionId, 
-                                                 subscription.getDuration(), subscription.getInterval(), null);
+                                                 subscription.getDuration(), subscription.getInterval(), null,
+                                                 subscription.isDelta());
+                            if (primary != null)
+                            {
+                                primary.scheduleSnapshot(subscription, _scheduler);
+                            }
                         }
                     }
                     catch (QmfException qmfe)
@@ -748,7 +1109,8 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
                             subscription.refresh(resubscribeParams);
                             subscriptionResponse(handle,
                                                  subscription.getConsoleHandle(), subscription.getSubscriptionId(), 
-                                                 subscription.getDuration(), subscription.getInterval(), null);
+                                                 subscription.getDuration(), subscription.getInterval(), null,
+                                                 subscription.isDelta());
                         }
                     }
                 }
@@ -784,9 +1146,9 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
         }
         catch (JMSException jmse)
         {
-            _log.info("JMSException {} caught in onMessage()", jmse.getMessage());
+            _log.info("JMSException {} caught in handleRequest()", jmse.getMessage());
         }
-    } // end of onMessage()
+    } // end of handleRequest()
 
     //                                          QMF API Methods
     // ********************************************************************************************************
@@ -1035,8 +1397,11 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
             _quotedTopicBase = "'" + topicBase + "'";
             _topicAddress = _syncSession.createQueue(topicBase);
 
-            // Create an unidentified MessageProducer for sending to various destinations.
-            _producer = _syncSession.createProducer(null);
+            // Create the pool of Sessions and unidentified MessageProducers for sending to various destinations.
+            _sessionPool = new SessionPool(_connection, _sendSessions);
+
+            // Create the RequestExecutor before any MessageListeners are set, so no request is handled inline.
+            _requestExecutor = new RequestExecutor(_name, _queryThreads);
 
             // TODO it should be possible to bind _locateConsumer, _mainConsumer and _aliasConsumer to the
             // same queue if I can figure out the correct AddressString to use, probably not a big deal though.
@@ -1069,9 +1434,11 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
 
             _connection.start();
 
-            // Schedule a Heartbeat every _heartbeatInterval seconds sending the first one immediately
-            _timer = new Timer(true);
-            _timer.schedule(new Heartbeat(), 0, _heartbeatInterval*1000);
+            // Schedule a Heartbeat every _heartbeatInterval seconds sending the first one immediately and reap
+            // deleted objects at the same interval.
+            _scheduler = new AgentScheduler(_name, _subscriptionThreads);
+            _scheduler.scheduleHeartbeat(new Heartbeat(), _heartbeatInterval*1000);
+            _scheduler.scheduleSubscription(new Reaper(), _heartbeatInterval*1000, _heartbeatInterval*1000);
         }
         catch (JMSException jmse)
         {
@@ -1081,6 +1448,136 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
         }
     } // end of setConnection()
 
+    /**
+     * Set the maximum number of JMS Sessions used to send messages concurrently, this must be called before
+     * setConnection() to have any effect. The default is SessionPool.DEFAULT_SESSIONS.
+     *
+     * @param sessions the maximum number of Sessions used to send messages.
+     */
+    public final void setSendSessions(final int sessions)
+    {
+        _sendSessions = (sessions < 1) ? 1 : sessions;
+    }
+
+    /**
+     * Return the SessionPool used to send the Agent's messages, which may be used to retrieve send metrics.
+     * @return the SessionPool, or null if setConnection() hasn't been called.
+     */
+    public final SessionPool getSessionPool()
+    {
+        return _sessionPool;
+    }
+
+    /**
+     * Set the number of threads used to handle queries that scan the object store in parallel, this must be called
+     * before setConnection() to have any effect. The default is RequestExecutor.DEFAULT_QUERY_THREADS.
+     *
+     * @param threads the number of threads used to handle queries.
+     */
+    public final void setQueryThreads(final int threads)
+    {
+        _queryThreads = (threads < 1) ? 1 : threads;
+    }
+
+    /**
+     * Return the RequestExecutor used to handle Console requests, which may be used to retrieve the queue depth
+     * metrics of its lanes.
+     * @return the RequestExecutor, or null if setConnection() hasn't been called.
+     */
+    public final RequestExecutor getRequestExecutor()
+    {
+        return _requestExecutor;
+    }
+
+    /**
+     * Set the number of threads used to evaluate Subscriptions in parallel, this must be called before
+     * setConnection() to have any effect. The default is AgentScheduler.DEFAULT_SUBSCRIPTION_THREADS.
+     *
+     * @param threads the number of threads used to evaluate Subscriptions.
+     */
+    public final void setSubscriptionThreads(final int threads)
+    {
+        _subscriptionThreads = (threads < 1) ? 1 : threads;
+    }
+
+    /**
+     * Set the maximum number of objects sent in each query response or subscription indication message, larger
+     * results are sent as a sequence of partial messages. The default is DEFAULT_MAX_RESPONSE_OBJECTS.
+     *
+     * @param maxObjects the maximum number of objects per message, zero or less for no limit.
+     */
+    public final void setMaxResponseObjects(final int maxObjects)
+    {
+        _maxResponseObjects = maxObjects;
+    }
+
+    /**
+     * Return the maximum number of objects sent in each query response or subscription indication message.
+     * @return the maximum number of objects per message, zero or less if there is no limit.
+     */
+    public final int getMaxResponseObjects()
+    {
+        return _maxResponseObjects;
+    }
+
+    /**
+     * Set the maximum estimated encoded size of the objects sent in each query response or subscription indication
+     * message, larger results are sent as a sequence of partial messages. The default is DEFAULT_MAX_RESPONSE_BYTES.
+     *
+     * @param maxBytes the maximum number of bytes per message, zero or less for no limit.
+     */
+    public final void setMaxResponseBytes(final int maxBytes)
+    {
+        _maxResponseBytes = maxBytes;
+    }
+
+    /**
+     * Return the maximum estimated encoded size of the objects sent in each query response or subscription
+     * indication message.
+     * @return the maximum number of bytes per message, zero or less if there is no limit.
+     */
+    public final int getMaxResponseBytes()
+    {
+        return _maxResponseBytes;
+    }
+
+    /**
+     * Set the publish window. By default QmfAgentData.publish() immediately sends a subscription indication for
+     * the object to each of its Subscriptions, so a burst of changes (for example thousands of queues being created
+     * or deleted after a client reconnect storm) produces a message per object per Subscription. With a publish
+     * window the objects published by each Subscription are instead collected and sent as a single batched
+     * indication once the window has elapsed, each object appearing only once with its latest state, so each
+     * Subscription sends at most one such indication per window however fast objects change.
+     * <p>
+     * The window only applies to objects held in this Agent's object store and takes effect once setConnection()
+     * has been called.
+     *
+     * @param window the publish window in milliseconds, zero or less to publish immediately.
+     */
+    public final void setPublishWindow(final long window)
+    {
+        _publishWindow = (window < 0) ? 0 : window;
+    }
+
+    /**
+     * Return the publish window in milliseconds.
+     * @return the publish window in milliseconds, zero if objects are published immediately.
+     */
+    public final long getPublishWindow()
+    {
+        return _publishWindow;
+    }
+
+    /**
+     * Return the AgentScheduler used to run the Agent's Heartbeats and Subscriptions, which may be used to
+     * retrieve scheduling metrics.
+     * @return the AgentScheduler, or null if setConnection() hasn't been called.
+     */
+    public final AgentScheduler getScheduler()
+    {
+        return _scheduler;
+    }
+
     /**
      * Remove the AMQP connection from the Agent. Un-does the setConnection() operation.
      *
@@ -1095,7 +1592,8 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
 
         try
         {
-            _timer.cancel();
+            _scheduler.shutdown();
+            _requestExecutor.shutdown();
             _connection.close();
         }
         catch (JMSException jmse)
@@ -1109,6 +1607,8 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
      * Register a schema for an object class with the Agent.
      * <p>
      * The Agent must have a registered schema for an object class before it can handle objects of that class.
+     * <p>
+     * If the schema declares index names the Agent will maintain secondary indexes on those properties.
      *
      * @param schema the SchemaObjectClass to be registered
      */
@@ -1116,6 +1616,7 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     {
         SchemaClassId classId = schema.getClassId();
         _schemaCache.put(classId, schema);
+        _secondaryIndex.addIndexes(schema.getIndexNames(), _objectIndex.values());
     }
 
     /**
@@ -1147,21 +1648,27 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
             String productKey = _product.replace(".", "_");
             String instanceKey = _instance.replace(".", "_");
 
-            String subject = "agent.ind.event." + packageKey + "." + nameKey + "." + severity + "." + vendorKey + "." + 
-                              productKey + "." + instanceKey;
-
-            Message response = AMQPMessage.createListMessage(_syncSession);
-            response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
-            response.setStringProperty("method", "indication");
-            response.setStringProperty("qmf.opcode", "_data_indication");
-            response.setStringProperty("qmf.content", "_event");
-            response.setStringProperty("qmf.agent", _name);
-            response.setStringProperty("qpid.subject", subject);
-
-            List<Map> results = new ArrayList<Map>();
-            results.add(event.mapEncode());
-            AMQPMessage.setList(response, results);
-            _producer.send(_topicAddress, response);
+            final String subject = "agent.ind.event." + packageKey + "." + nameKey + "." + severity + "." +
+                                   vendorKey + "." + productKey + "." + instanceKey;
+
+            _sessionPool.send(_topicAddress, new SessionPool.MessageBuilder()
+            {
+                public Message build(final Session session) throws JMSException
+                {
+                    Message response = AMQPMessage.createListMessage(session);
+                    response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+                    response.setStringProperty("method", "indication");
+                    response.setStringProperty("qmf.opcode", "_data_indication");
+                    response.setStringProperty("qmf.content", "_event");
+                    response.setStringProperty("qmf.agent", _name);
+                    response.setStringProperty("qpid.subject", subject);
+
+                    List<Map> results = new ArrayList<Map>();
+                    results.add(event.mapEncode());
+                    AMQPMessage.setList(response, results);
+                    return response;
+                }
+            });
         }
         catch (JMSException jmse)
         {
@@ -1232,25 +1739,41 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
         }
 
         _objectIndex.put(addr, object);
-
-        // Does the new object match any Subscriptions? If so add a reference to the matching Subscription and publish.
-        for (Subscription subscription : _subscriptions.values())
+        if (foundObject != null)
         {
-            QmfQuery query = subscription.getQuery();
-            if (query.getObjectId() != null)
-            {
-                if (query.getObjectId().equals(addr))
-                {
-                    object.addSubscription(subscription.getSubscriptionId(), subscription);
-                    object.publish();
-                }
+            _secondaryIndex.remove(foundObject);
+            _updateIndex.remove(foundObject);
+        }
+        _secondaryIndex.add(object);
+        _updateIndex.update(object);
+
+        // Does the new object match any Subscriptions? If so add a reference to the matching Subscription. Only the
+        // Subscriptions that select the object's ObjectId or class, or that may select objects of any class, are
+        // candidates. The object is published once all of the matching Subscriptions have been added, as publish()
+        // publishes to every Subscription that references the object.
+        boolean matched = false;
+        for (Subscription subscription : _subscriptionIndex.getCandidates(object))
+        {
+            if (subscription.isFollower())
+            { // The group's primary publishes the object to the followers.
+                continue;
             }
-            else if (query.evaluate(object))
+
+            QmfQuery query = subscription.getQuery();
+            if (query.getObjectId() != null ? query.getObjectId().equals(addr) : query.evaluate(object))
             {
                 object.addSubscription(subscription.getSubscriptionId(), subscription);
-                object.publish();
+                matched = true;
             }
         }
+
+        if (matched)
+        {
+            object.publish();
+        }
+
+        // Set after the Subscriptions above have been checked so publish() doesn't needlessly re-evaluate them.
+        object.setAgent(this);
     } // end of addObject()
 
     /**
@@ -1348,34 +1871,40 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     {
         try
         {
-            MapMessage response = _syncSession.createMapMessage();
-            response.setJMSCorrelationID(handle.getCorrelationId());
-            response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
-            response.setStringProperty("method", "response");
-            response.setStringProperty("qmf.opcode", "_method_response");
-            response.setStringProperty("qmf.agent", _name);
-            response.setStringProperty("qpid.subject", handle.getRoutingKey());
-
-            if (error == null)
+            sendResponse(handle, new SessionPool.MessageBuilder()
             {
-                if (outArgs != null)
+                public Message build(final Session session) throws JMSException
                 {
-                    response.setObject("_arguments", outArgs.mapEncode());
-                    if (outArgs.getSubtypes() != null)
+                    MapMessage response = session.createMapMessage();
+                    response.setJMSCorrelationID(handle.getCorrelationId());
+                    response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+                    response.setStringProperty("method", "response");
+                    response.setStringProperty("qmf.opcode", "_method_response");
+                    response.setStringProperty("qmf.agent", _name);
+                    response.setStringProperty("qpid.subject", handle.getRoutingKey());
+
+                    if (error == null)
                     {
-                        response.setObject("_subtypes", outArgs.getSubtypes());
+                        if (outArgs != null)
+                        {
+                            response.setObject("_arguments", outArgs.mapEncode());
+                            if (outArgs.getSubtypes() != null)
+                            {
+                                response.setObject("_subtypes", outArgs.getSubtypes());
+                            }
+                        }
                     }
+                    else
+                    {
+                        Map<String, Object> errorMap = error.mapEncode();
+                        for (Map.Entry<String, Object> entry : errorMap.entrySet())
+                        {
+                            response.setObject(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    return response;
                 }
-            }
-            else
-            {
-                Map<String, Object> errorMap = error.mapEncode();
-                for (Map.Entry<String, Object> entry : errorMap.entrySet())
-                {
-                    response.setObject(entry.getKey(), entry.getValue());
-                }
-            }
-            sendResponse(handle, response);
+            });
         }
         catch (JMSException jmse)
         {
@@ -1384,30 +1913,65 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
     }
 
     /**
-     * Send the query response back to the Console.
+     * Send the query response back to the Console, split into partial responses if the results are large.
      * @param handle the reply handle that contains the replyTo Address.
      * @param results the list of mapEncoded query results.
      * @param qmfContentType the value to be passed to the qmf.content Header.
      */
     protected final void queryResponse(final Handle handle, List<Map> results, final String qmfContentType)
     {
-        try
-        {
-            Message response = AMQPMessage.createListMessage(_syncSession);
-            response.setJMSCorrelationID(handle.getCorrelationId());
-            response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
-            response.setStringProperty("method", "response");
-            response.setStringProperty("qmf.opcode", "_query_response");
-            response.setStringProperty("qmf.agent", _name);
-            response.setStringProperty("qmf.content", qmfContentType);
-            response.setStringProperty("qpid.subject", handle.getRoutingKey());
-            AMQPMessage.setList(response, results);
-            sendResponse(handle, response);
-        }
-        catch (JMSException jmse)
+        ResponseWriter writer = createResponseWriter(handle, "response", "_query_response", qmfContentType);
+        writer.writeAll(results);
+        writer.close();
+    }
+
+    /**
+     * Create a ResponseWriter that splits its results into messages bounded by the Agent's maximum response size.
+     * @param handle the reply handle that contains the replyTo Address.
+     * @param method the value to be passed to the method Header.
+     * @param opcode the value to be passed to the qmf.opcode Header.
+     * @param qmfContentType the value to be passed to the qmf.content Header.
+     * @return the ResponseWriter.
+     */
+    private ResponseWriter createResponseWriter(final Handle handle, final String method, final String opcode,
+                                                final String qmfContentType)
+    {
+        return new ResponseWriter(this, handle, method, opcode, qmfContentType,
+                                  _maxResponseObjects, _maxResponseBytes);
+    }
+
+    /**
+     * Send a single amqp/list message of a query response or subscription indication, called by ResponseWriter.
+     * @param handle the reply handle that contains the replyTo Address.
+     * @param method the value to be passed to the method Header.
+     * @param opcode the value to be passed to the qmf.opcode Header.
+     * @param qmfContentType the value to be passed to the qmf.content Header.
+     * @param results the list of mapEncoded results to send in this message.
+     * @param partial true if more results are to follow, which sets the partial Header.
+     */
+    final void sendList(final Handle handle, final String method, final String opcode, final String qmfContentType,
+                        final List<Map> results, final boolean partial) throws JMSException
+    {
+        sendResponse(handle, new SessionPool.MessageBuilder()
         {
-            _log.info("JMSException {} caught in queryResponse()", jmse.getMessage());
-        }
+            public Message build(final Session session) throws JMSException
+            {
+                Message response = AMQPMessage.createListMessage(session);
+                response.setJMSCorrelationID(handle.getCorrelationId());
+                response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+                response.setStringProperty("method", method);
+                response.setStringProperty("qmf.opcode", opcode);
+                response.setStringProperty("qmf.agent", _name);
+                response.setStringProperty("qmf.content", qmfContentType);
+                response.setStringProperty("qpid.subject", handle.getRoutingKey());
+                if (partial)
+                {
+                    response.setBooleanProperty("partial", true);
+                }
+                AMQPMessage.setList(response, results);
+                return response;
+            }
+        });
     }
 
     /**
@@ -1430,32 +1994,62 @@ public class Agent extends QmfData implements MessageListener, SubscribableAgent
      */
     public final void subscriptionResponse(final Handle handle, final Handle consoleHandle, final String subscriptionId, 
                                            final long lifetime, final long publishInterval, final QmfData error)
+    {
+        subscriptionResponse(handle, consoleHandle, subscriptionId, lifetime, publishInterval, error, false);
+    }
+
+    /**
+     * Send a subscription request or cancel response back to the Console, setting "_delta" in a successful response
+     * if the Subscription has been granted delta mode so that the Console knows to merge the indications it receives.
+     *
+     * @param handle the handle from the WorkItem.
+     * @param consoleHandle the console reply handle.
+     * @param subscriptionId a unique handle for the subscription supplied by the Agent.
+     * @param lifetime should be set to the duration of the subscription in seconds.
+     * @param publishInterval should be set to the time interval in seconds between successive publications
+     *          on this subscription.
+     * @param error an application-specific QmfData instance that describes the error.
+     * @param delta true if the Subscription is in delta mode.
+     */
+    private void subscriptionResponse(final Handle handle, final Handle consoleHandle, final String subscriptionId,
+                                      final long lifetime, final long publishInterval, final QmfData error,
+                                      final boolean delta)
     {
         try
         {
-            MapMessage response = _syncSession.createMapMessage();
-            response.setJMSCorrelationID(handle.getCorrelationId());
-            response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
-            response.setStringProperty("method", "response");
-            response.setStringProperty("qmf.opcode", "_subscribe_response");
-            response.setStringProperty("qmf.agent", _name);
-            response.setStringProperty("qpid.subject", handle.getRoutingKey());
-    
-            if (error == null)
-            {
-                response.setObject("_subscription_id", subscriptionId);
-                response.setObject("_duration", lifetime);
-                response.setObject("_interval", publishInterval);
-            }
-            else
+            sendResponse(handle, new SessionPool.MessageBuilder()
             {
-                Map<String, Object> errorMap = error.mapEncode();
-                for (Map.Entry<String, Object> entry : errorMap.entrySet())
+                public Message build(final Session session) throws JMSException
                 {
-                    response.setObject(entry.getKey(), entry.getValue());
+                    MapMessage response = session.createMapMessage();
+                    response.setJMSCorrelationID(handle.getCorrelationId());
+                    response.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+                    response.setStringProperty("method", "response");
+                    response.setStringProperty("qmf.opcode", "_subscribe_response");
+                    response.setStringProperty("qmf.agent", _name);
+                    response.setStringProperty("qpid.subject", handle.getRoutingKey());
+
+                    if (error == null)
+                    {
+                        response.setObject("_subscription_id", subscriptionId);
+                        response.setObject("_duration", lifetime);
+                        response.setObject("_interval", publishInterval);
+                        if (delta)
+                        {
+                            response.setObject("_delta", Boolean.TRUE);
+                        }
+                    }
+                    else
+                    {
+                        Map<String, Object> errorMap = error.mapEncode();
+                        for (Map.Entry<String, Object> entry : errorMap.entrySet())
+                        {
+                            response.setObject(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    return response;
                 }
-            }
-            sendResponse(handle, response);
+            });
         }
         catch (JMSException jmse)
         {
@@ -0,0 +1,347 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.agent;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The AgentScheduler runs the Agent's periodic work: the Heartbeat, the deleted object reaper and every
+ * Subscription. The work is split into two lanes, so that a slow Subscription evaluation can't delay the Heartbeat
+ * and cause Consoles to think the Agent has gone away:
+ * <pre>
+ * * The heartbeat lane is a single high priority thread that does nothing but send Heartbeats.
+ * * The subscription lane is a bounded pool of worker threads that evaluate Subscriptions in parallel, the
+ *   deleted object reaper also runs on this lane.
+ * </pre>
+ * Tasks are scheduled with a fixed delay, which is the same behaviour as java.util.Timer.schedule(), and a given
+ * task never runs concurrently with itself.
+ * <p>
+ * Each lane records how late its tasks start relative to when they were due, which captures the time spent
+ * queueing for a free thread, so an overloaded subscription lane may be spotted (and the number of threads tuned
+ * via Agent.setSubscriptionThreads()) before it starts to affect Consoles.
+ */
+public final class AgentScheduler
+{
+    private static final Logger _log = LoggerFactory.getLogger(AgentScheduler.class);
+
+    /**
+     * The default number of subscription lane threads.
+     */
+    public static final int DEFAULT_SUBSCRIPTION_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Lateness and throughput metrics for one of the AgentScheduler's lanes.
+     */
+    public static final class LaneMetrics
+    {
+        private final AtomicLong _runCount = new AtomicLong();
+        private final AtomicLong _totalLateness = new AtomicLong();
+        private final AtomicLong _maxLateness = new AtomicLong();
+        private final AtomicLong _lastLateness = new AtomicLong();
+        private final AtomicLong _totalRunTime = new AtomicLong();
+
+        /**
+         * Record a task run.
+         * @param lateness the time in nanoseconds between the task being due and it starting.
+         * @param runTime the time in nanoseconds that the task took to run.
+         */
+        private void record(final long lateness, final long runTime)
+        {
+            long late = (lateness < 0) ? 0 : lateness;
+            _runCount.incrementAndGet();
+            _totalLateness.addAndGet(late);
+            _lastLateness.set(late);
+            _totalRunTime.addAndGet(runTime);
+
+            long max = _maxLateness.get();
+            while (late > max && !_maxLateness.compareAndSet(max, late))
+            {
+                max = _maxLateness.get();
+            }
+        }
+
+        /**
+         * Return the number of task runs on this lane.
+         * @return the number of task runs on this lane.
+         */
+        public long getRunCount()
+        {
+            return _runCount.get();
+        }
+
+        /**
+         * Return the mean time in milliseconds that tasks started after they were due.
+         * @return the mean time in milliseconds that tasks started after they were due.
+         */
+        public double getMeanLatenessMillis()
+        {
+            long count = _runCount.get();
+            return (count == 0) ? 0.0d : _totalLateness.get()/(count*1000000.0d);
+        }
+
+        /**
+         * Return the maximum time in milliseconds that a task started after it was due.
+         * @return the maximum time in milliseconds that a task started after it was due.
+         */
+        public double getMaxLatenessMillis()
+        {
+            return _maxLateness.get()/1000000.0d;
+        }
+
+        /**
+         * Return the time in milliseconds that the most recent task started after it was due.
+         * @return the time in milliseconds that the most recent task started after it was due.
+         */
+        public double getLastLatenessMillis()
+        {
+            return _lastLateness.get()/1000000.0d;
+        }
+
+        /**
+         * Return the mean time in milliseconds that tasks took to run.
+         * @return the mean time in milliseconds that tasks took to run.
+         */
+        public double getMeanRunTimeMillis()
+        {
+            long count = _runCount.get();
+            return (count == 0) ? 0.0d : _totalRunTime.get()/(count*1000000.0d);
+        }
+    }
+
+    /**
+     * Wraps a periodic task to record its lateness. Fixed delay scheduling means that the next run is due the
+     * delay after the previous run completed, so the due time is recalculated after each run. The scheduler
+     * never runs the same periodic task concurrently so _due needs no synchronisation beyond visibility.
+     */
+    private static final class MeasuredTask implements Runnable
+    {
+        private final Runnable _task;
+        private final LaneMetrics _metrics;
+        private final long _delay;
+        private volatile long _due;
+
+        MeasuredTask(final Runnable task, final LaneMetrics metrics, final long initialDelay, final long delay)
+        {
+            _task = task;
+            _metrics = metrics;
+            _delay = delay;
+            _due = System.nanoTime() + initialDelay;
+        }
+
+        public void run()
+        {
+            long start = System.nanoTime();
+            try
+            {
+                _task.run();
+            }
+            catch (RuntimeException re)
+            { // An uncaught exception would silently suppress all subsequent runs of the task.
+                _log.info("RuntimeException {} caught in AgentScheduler task", re.getMessage());
+            }
+            finally
+            {
+                long end = System.nanoTime();
+                _metrics.record(start - _due, end - start);
+                _due = end + _delay;
+            }
+        }
+    }
+
+    /**
+     * Creates named daemon threads of the given priority, also used by the RequestExecutor's lanes.
+     */
+    static final class LaneThreadFactory implements ThreadFactory
+    {
+        private final String _prefix;
+        private final int _priority;
+        private final AtomicInteger _count = new AtomicInteger();
+
+        LaneThreadFactory(final String prefix, final int priority)
+        {
+            _prefix = prefix;
+            _priority = priority;
+        }
+
+        public Thread newThread(final Runnable r)
+        {
+            Thread thread = new Thread(r, _prefix + _count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(_priority);
+            return thread;
+        }
+    }
+
+    private final ScheduledThreadPoolExecutor _heartbeatLane;
+    private final ScheduledThreadPoolExecutor _subscriptionLane;
+    private final LaneMetrics _heartbeatMetrics = new LaneMetrics();
+    private final LaneMetrics _subscriptionMetrics = new LaneMetrics();
+
+    /**
+     * Construct an AgentScheduler.
+     *
+     * @param name the Agent name, used to name the scheduler threads.
+     * @param subscriptionThreads the number of subscription lane threads.
+     */
+    AgentScheduler(final String name, final int subscriptionThreads)
+    {
+        _heartbeatLane = new ScheduledThreadPoolExecutor(1,
+            new LaneThreadFactory("QMF2 Agent " + name + " heartbeat-", Thread.MAX_PRIORITY));
+        _subscriptionLane = new ScheduledThreadPoolExecutor((subscriptionThreads < 1) ? 1 : subscriptionThreads,
+            new LaneThreadFactory("QMF2 Agent " + name + " subscription-", Thread.NORM_PRIORITY));
+        _heartbeatLane.setRemoveOnCancelPolicy(true);
+        _subscriptionLane.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Schedule a task to run periodically on the given lane.
+     */
+    private static ScheduledFuture<?> schedule(final ScheduledThreadPoolExecutor lane, final LaneMetrics metrics,
+                                               final Runnable task, final long delay, final long period)
+    {
+        long initialDelay = TimeUnit.MILLISECONDS.toNanos(delay);
+        long periodNanos = TimeUnit.MILLISECONDS.toNanos(period);
+        return lane.scheduleWithFixedDelay(new MeasuredTask(task, metrics, initialDelay, periodNanos),
+                                           initialDelay, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Schedule a task to run periodically on the heartbeat lane.
+     *
+     * @param task the task to run.
+     * @param period the time in milliseconds between the end of one run and the start of the next.
+     * @return a ScheduledFuture that may be used to cancel the task.
+     */
+    ScheduledFuture<?> scheduleHeartbeat(final Runnable task, final long period)
+    {
+        return schedule(_heartbeatLane, _heartbeatMetrics, task, 0, period);
+    }
+
+    /**
+     * Schedule a task to run periodically on the subscription lane.
+     *
+     * @param task the task to run.
+     * @param delay the time in milliseconds before the first run.
+     * @param period the time in milliseconds between the end of one run and the start of the next.
+     * @return a ScheduledFuture that may be used to cancel the task.
+     */
+    ScheduledFuture<?> scheduleSubscription(final Runnable task, final long delay, final long period)
+    {
+        return schedule(_subscriptionLane, _subscriptionMetrics, task, delay, period);
+    }
+
+    /**
+     * Schedule a task to run once on the subscription lane.
+     *
+     * @param task the task to run.
+     * @param delay the time in milliseconds before the task runs.
+     * @return a ScheduledFuture that may be used to cancel the task.
+     */
+    ScheduledFuture<?> scheduleOnce(final Runnable task, final long delay)
+    {
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(delay);
+        return _subscriptionLane.schedule(new MeasuredTask(task, _subscriptionMetrics, delayNanos, 0),
+                                          delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop both lanes, cancelling any scheduled tasks.
+     */
+    void shutdown()
+    {
+        _heartbeatLane.shutdownNow();
+        _subscriptionLane.shutdownNow();
+    }
+
+    /**
+     * Return the metrics for the heartbeat lane.
+     * @return the metrics for the heartbeat lane.
+     */
+    public LaneMetrics getHeartbeatMetrics()
+    {
+        return _heartbeatMetrics;
+    }
+
+    /**
+     * Return the metrics for the subscription lane.
+     * @return the metrics for the subscription lane.
+     */
+    public LaneMetrics getSubscriptionMetrics()
+    {
+        return _subscriptionMetrics;
+    }
+
+    /**
+     * Return the number of subscription lane threads.
+     * @return the number of subscription lane threads.
+     */
+    public int getSubscriptionThreads()
+    {
+        return _subscriptionLane.getCorePoolSize();
+    }
+
+    /**
+     * Return the number of subscription lane threads that are currently running tasks.
+     * @return the number of subscription lane threads that are currently running tasks.
+     */
+    public int getActiveSubscriptionThreads()
+    {
+        return _subscriptionLane.getActiveCount();
+    }
+
+    /**
+     * Return the number of tasks scheduled on the subscription lane.
+     * @return the number of tasks scheduled on the subscription lane.
+     */
+    public int getScheduledSubscriptionTasks()
+    {
+        return _subscriptionLane.getQueue().size();
+    }
+
+    /**
+     * Return the number of subscription lane tasks that are due to run but are queued waiting for a free thread.
+     * If this is persistently non zero the subscription lane needs more threads.
+     * @return the number of subscription lane tasks that are due to run but are waiting for a free thread.
+     */
+    public int getQueuedSubscriptionTasks()
+    {
+        int queued = 0;
+        for (Runnable task : _subscriptionLane.getQueue())
+        {
+            if (task instanceof Delayed && ((Delayed)task).getDelay(TimeUnit.NANOSECONDS) <= 0)
+            {
+                queued++;
+            }
+        }
+        return queued;
+    }
+}
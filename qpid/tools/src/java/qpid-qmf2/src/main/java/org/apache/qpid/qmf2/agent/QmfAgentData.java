@@ -22,6 +22,7 @@ package org.apache.qpid.qmf2.agent;
 
 // Misc Imports
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -79,6 +80,19 @@ public class QmfAgentData extends QmfManaged implements Comparable<QmfAgentData>
      */
     private Map<String, Subscription> _subscriptions = new ConcurrentHashMap<String, Subscription>();
 
+    /**
+     * The Agent whose object store this object has been added to, or null if it hasn't been added to one.
+     */
+    private volatile Agent _agent = null;
+
+    /**
+     * The object that is being encoded for publication on the current thread, see encode(). Subclasses, such as those
+     * in the broker plugin, may call update() from mapEncode() to timestamp the values that they have retrieved. That
+     * is a refresh of the object for serialisation rather than a change of its state, so it mustn't mark the object
+     * as changed, which would otherwise cause it to be published again.
+     */
+    private static final ThreadLocal<QmfAgentData> _encoding = new ThreadLocal<QmfAgentData>();
+
     /**
      * Construct a QmfAgentData object of the type described by the given SchemaObjectClass.
      *
@@ -142,7 +156,17 @@ public class QmfAgentData extends QmfManaged implements Comparable<QmfAgentData>
         _deleteTimestamp = System.currentTimeMillis()*1000000l;
         _updateTimestamp = System.currentTimeMillis()*1000000l;
         publish();
+        for (Subscription subscription : _subscriptions.values())
+        {
+            subscription.removeMember(this);
+        }
         _subscriptions.clear();
+
+        Agent agent = _agent;
+        if (agent != null)
+        { // Let the Agent record the deletion time so that "_since" queries report the deletion.
+            agent.objectUpdated(this);
+        }
     }
 
     /**
@@ -217,6 +241,7 @@ public class QmfAgentData extends QmfManaged implements Comparable<QmfAgentData>
     public final void addSubscription(final String subscriptionId, final Subscription subscription)
     {
         _subscriptions.put(subscriptionId, subscription);
+        subscription.addMember(this);
     }
 
     /**
@@ -225,9 +250,21 @@ public class QmfAgentData extends QmfManaged implements Comparable<QmfAgentData>
      */
     public final void removeSubscription(final String subscriptionId)
     {
-        _subscriptions.remove(subscriptionId);
+        Subscription subscription = _subscriptions.remove(subscriptionId);
+        if (subscription != null)
+        {
+            subscription.removeMember(this);
+        }
     }
 
+    /**
+     * Set the Agent whose object store this object has been added to, called by Agent.addObject().
+     * @param agent the Agent whose object store this object has been added to.
+     */
+    final void setAgent(final Agent agent)
+    {
+        _agent = agent;
+    }
 
     /**
      * Set the _updateTimestamp to indicate (particularly to subscriptions) that the managed object has changed.
@@ -241,10 +278,29 @@ public class QmfAgentData extends QmfManaged implements Comparable<QmfAgentData>
      * is possible that an update indication could get sent part way through setting an object's overall state.
      * Similarly calling the publish() method directly from setValue() would force an update indication on partial
      * changes of state, which is generally not the desired behaviour.
+     * <p>
+     * The object is also recorded as changed by any change driven Subscriptions that it belongs to, and if it is
+     * held in an Agent's object store the Agent checks whether it has come to match any other Subscriptions. When
+     * update() is called from mapEncode() whilst the object is being encoded for publication only the timestamp is set.
      */
     public final void update()
     {
         _updateTimestamp = System.currentTimeMillis()*1000000l;
+        if (isEncoding())
+        { // Called from mapEncode() whilst this object is being published, so there's no change to record.
+            return;
+        }
+
+        for (Subscription subscription : _subscriptions.values())
+        {
+            subscription.markChanged(this);
+        }
+
+        Agent agent = _agent;
+        if (agent != null)
+        {
+            agent.objectUpdated(this);
+        }
     }
 
     /**
@@ -259,6 +315,9 @@ public class QmfAgentData extends QmfManaged implements Comparable<QmfAgentData>
      * is possible that an update indication could get sent part way through setting an object's overall state.
      * Similarly calling the publish() method directly from setValue() would force an update indication on partial
      * changes of state, which is generally not the desired behaviour.
+     * <p>
+     * If the object is held in an Agent's object store and the Agent has a publish window set then the publication
+     * is deferred until the end of the window, so that it may be batched with other publications.
      */
     public final void publish()
     {
@@ -268,12 +327,38 @@ public class QmfAgentData extends QmfManaged implements Comparable<QmfAgentData>
             return;
         }
 
-        List<Map> results = new ArrayList<Map>();
-        results.add(mapEncode());
+        Agent agent = _agent;
+        AgentScheduler scheduler = (agent == null) ? null : agent.getScheduler();
+        long window = (agent == null) ? 0 : agent.getPublishWindow();
+        if (window > 0 && scheduler != null)
+        { // Coalesce with any other publications in the Agent's publish window.
+            for (Subscription subscription : _subscriptions.values())
+            {
+                subscription.publishLater(this, scheduler, window);
+            }
+            return;
+        }
+
+        Map<String, Object> encoded = encode(null);
+        List<Map> results = new ArrayList<Map>(1);
+        results.add(encoded);
         for (Map.Entry<String, Subscription> entry : _subscriptions.entrySet())
         {
             Subscription subscription = entry.getValue();
-            subscription.publish(results);
+            subscription.clearChanged(this);
+            List<String> select = subscription.getQuery().getSelect();
+            Map<String, Object> published = subscription.encode(this, (select == null) ? encoded :
+                                                                                         project(encoded, select));
+            if (published == encoded)
+            {
+                subscription.publish(results);
+            }
+            else if (published != null)
+            { // Projected, or only the changed properties of a delta mode Subscription.
+                List<Map> projected = new ArrayList<Map>(1);
+                projected.add(published);
+                subscription.publish(projected);
+            }
         }
     }
 
@@ -305,6 +390,118 @@ public class QmfAgentData extends QmfManaged implements Comparable<QmfAgentData>
         return map;
     }
 
+    /**
+     * Return the map encoding of this object including only the selected properties, this is used to answer
+     * QmfQuery requests that carry a "_select" projection.
+     * <p>
+     * By default this simply projects the result of mapEncode(). Subclasses whose mapEncode() does significant
+     * work, such as retrieving statistics, may override this to only do the work for the selected properties by
+     * using isSelected() then returning project(super.mapEncode(), select).
+     *
+     * @param select the names of the properties to include, or null to include every property.
+     * @return the map encoding of this object including only the selected properties.
+     */
+    public Map<String, Object> mapEncode(final Collection<String> select)
+    {
+        return project(mapEncode(), select);
+    }
+
+    /**
+     * Return the map encoding of this object including only the selected properties, as mapEncode(select) does,
+     * whilst recording that the object is being encoded on the current thread so that any update() made by
+     * mapEncode() doesn't mark the object as changed. Used by the Agent and its Subscriptions to encode objects.
+     *
+     * @param select the names of the properties to include, or null to include every property.
+     * @return the map encoding of this object including only the selected properties.
+     */
+    final Map<String, Object> encode(final Collection<String> select)
+    {
+        QmfAgentData previous = _encoding.get();
+        _encoding.set(this);
+        try
+        {
+            return mapEncode(select);
+        }
+        finally
+        {
+            if (previous == null)
+            {
+                _encoding.remove();
+            }
+            else
+            {
+                _encoding.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Return true if this object is being encoded on the current thread, see encode().
+     *
+     * @return true if this object is being encoded on the current thread.
+     */
+    final boolean isEncoding()
+    {
+        return _encoding.get() == this;
+    }
+
+    /**
+     * Return true if the named property is included in the projection.
+     *
+     * @param select the names of the selected properties, or null if every property is selected.
+     * @param name the name of the property to check.
+     * @return true if the named property is included in the projection.
+     */
+    protected static boolean isSelected(final Collection<String> select, final String name)
+    {
+        return select == null || select.contains(name);
+    }
+
+    /**
+     * Project a map encoded object so that its _values and _subtypes only include the selected properties. The
+     * encoded object isn't modified, as its _values is generally the object's own underlying Map.
+     *
+     * @param encoded the map encoded object as returned by mapEncode().
+     * @param select the names of the properties to include, or null to include every property.
+     * @return the projected map encoded object, or encoded itself if select is null.
+     */
+    @SuppressWarnings("unchecked")
+    protected static Map<String, Object> project(final Map<String, Object> encoded, final Collection<String> select)
+    {
+        if (select == null)
+        {
+            return encoded;
+        }
+
+        Map<String, Object> map = new HashMap<String, Object>(encoded);
+        map.put("_values", projectMap((Map<String, Object>)encoded.get("_values"), select));
+        if (encoded.containsKey("_subtypes"))
+        {
+            map.put("_subtypes", projectMap((Map<String, Object>)encoded.get("_subtypes"), select));
+        }
+        return map;
+    }
+
+    /**
+     * Return a new Map containing only the selected entries of the source Map.
+     */
+    private static Map<String, Object> projectMap(final Map<String, Object> source, final Collection<String> select)
+    {
+        Map<String, Object> projected = new HashMap<String, Object>();
+        if (source != null)
+        {
+            for (String name : select)
+            {
+                Object value = source.get(name);
+                if (value != null)
+                {
+                    projected.put(name, value);
+                }
+            }
+        }
+        return projected;
+    }
+
     /**
      * Helper/debug method to list the QMF Object properties and their type.
      */
@@ -0,0 +1,231 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.agent;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The RequestExecutor runs the Agent's handling of Console requests off the JMS MessageListener thread, so that a
+ * single expensive query (a full scan and encode of a large object store) can't hold up every other request,
+ * including the Agent locate requests that Consoles use for discovery.
+ * <p>
+ * Requests are handed off to one of three lanes:
+ * <pre>
+ * * The control lane is a single thread that handles cheap requests: agent locates, subscribe, refresh and cancel
+ *   requests, ObjectId lookups, schema queries and query requests passed on to an AgentExternal application. As
+ *   there is a single thread the requests for a given Subscription are handled in the order they arrive.
+ * * The method lane is a single thread that passes method requests on to the application, so a slow application
+ *   can't hold up the control lane and method requests are still delivered in the order they arrive.
+ * * The query lane is a pool of threads that handle queries that scan the object store, so expensive queries
+ *   run in parallel with each other and never delay the control lane.
+ * </pre>
+ * Each lane records how many requests it has run, how many are queued and the largest queue depth seen, so an
+ * overloaded query lane may be spotted (and the number of threads tuned via Agent.setQueryThreads()).
+ */
+public final class RequestExecutor
+{
+    private static final Logger _log = LoggerFactory.getLogger(RequestExecutor.class);
+
+    /**
+     * The default number of query lane threads.
+     */
+    public static final int DEFAULT_QUERY_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The lanes that requests may be run on.
+     */
+    public enum Lane {CONTROL, METHOD, QUERY}
+
+    /**
+     * Queue depth and throughput metrics for one of the RequestExecutor's lanes.
+     */
+    public static final class LaneMetrics
+    {
+        private final ThreadPoolExecutor _executor;
+        private final AtomicLong _maxQueueDepth = new AtomicLong();
+
+        /**
+         * Construct the metrics for a lane.
+         * @param executor the ThreadPoolExecutor running the lane.
+         */
+        private LaneMetrics(final ThreadPoolExecutor executor)
+        {
+            _executor = executor;
+        }
+
+        /**
+         * Record the queue depth after a request has been queued.
+         */
+        private void recordQueueDepth()
+        {
+            long depth = _executor.getQueue().size();
+            long max = _maxQueueDepth.get();
+            while (depth > max && !_maxQueueDepth.compareAndSet(max, depth))
+            {
+                max = _maxQueueDepth.get();
+            }
+        }
+
+        /**
+         * Return the number of requests waiting for a free thread on this lane.
+         * @return the number of requests waiting for a free thread on this lane.
+         */
+        public int getQueueDepth()
+        {
+            return _executor.getQueue().size();
+        }
+
+        /**
+         * Return the largest number of requests that have been waiting for a free thread on this lane.
+         * @return the largest number of requests that have been waiting for a free thread on this lane.
+         */
+        public long getMaxQueueDepth()
+        {
+            return _maxQueueDepth.get();
+        }
+
+        /**
+         * Return the number of this lane's threads that are currently running requests.
+         * @return the number of this lane's threads that are currently running requests.
+         */
+        public int getActiveCount()
+        {
+            return _executor.getActiveCount();
+        }
+
+        /**
+         * Return the number of requests that this lane has run.
+         * @return the number of requests that this lane has run.
+         */
+        public long getCompletedCount()
+        {
+            return _executor.getCompletedTaskCount();
+        }
+
+        /**
+         * Return the number of threads on this lane.
+         * @return the number of threads on this lane.
+         */
+        public int getThreads()
+        {
+            return _executor.getCorePoolSize();
+        }
+    }
+
+    /**
+     * Guards a request so that an uncaught exception is logged rather than silently killing the lane's thread.
+     */
+    private static final class GuardedRequest implements Runnable
+    {
+        private final Runnable _request;
+
+        GuardedRequest(final Runnable request)
+        {
+            _request = request;
+        }
+
+        public void run()
+        {
+            try
+            {
+                _request.run();
+            }
+            catch (RuntimeException re)
+            {
+                _log.info("RuntimeException {} caught in RequestExecutor request", re.getMessage());
+            }
+        }
+    }
+
+    private final Map<Lane, ThreadPoolExecutor> _lanes = new EnumMap<Lane, ThreadPoolExecutor>(Lane.class);
+    private final Map<Lane, LaneMetrics> _metrics = new EnumMap<Lane, LaneMetrics>(Lane.class);
+
+    /**
+     * Construct a RequestExecutor.
+     *
+     * @param name the Agent name, used to name the lane threads.
+     * @param queryThreads the number of query lane threads.
+     */
+    RequestExecutor(final String name, final int queryThreads)
+    {
+        for (Lane lane : Lane.values())
+        {
+            int threads = (lane == Lane.QUERY) ? ((queryThreads < 1) ? 1 : queryThreads) : 1;
+            String prefix = "QMF2 Agent " + name + " " + lane.name().toLowerCase() + "-";
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new AgentScheduler.LaneThreadFactory(prefix, Thread.NORM_PRIORITY));
+            _lanes.put(lane, executor);
+            _metrics.put(lane, new LaneMetrics(executor));
+        }
+    }
+
+    /**
+     * Run a request on the given lane.
+     *
+     * @param lane the lane to run the request on.
+     * @param request the request to run.
+     */
+    void execute(final Lane lane, final Runnable request)
+    {
+        try
+        {
+            _lanes.get(lane).execute(new GuardedRequest(request));
+            _metrics.get(lane).recordQueueDepth();
+        }
+        catch (RejectedExecutionException ree)
+        { // The Agent's connection has been removed so there's nowhere to send a response.
+            _log.debug("Request rejected by RequestExecutor {} lane", lane);
+        }
+    }
+
+    /**
+     * Stop all of the lanes, discarding any queued requests.
+     */
+    void shutdown()
+    {
+        for (ThreadPoolExecutor executor : _lanes.values())
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Return the metrics for a lane.
+     * @param lane the lane whose metrics are required.
+     * @return the metrics for the lane.
+     */
+    public LaneMetrics getMetrics(final Lane lane)
+    {
+        return _metrics.get(lane);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.agent;
+
+// JMS Imports
+import javax.jms.JMSException;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.AMQPMessage;
+import org.apache.qpid.qmf2.common.Handle;
+
+/**
+ * A ResponseWriter streams a query response or subscription indication to a Console as a sequence of bounded
+ * size amqp/list messages, rather than as a single message holding every result.
+ * <p>
+ * Results are written one at a time as they are encoded and a message is filled until it holds the Agent's
+ * maximum number of objects or maximum number of encoded bytes. A full message is held back until the next result
+ * is written, at which point it is sent with the "partial" property, which the Console uses to tell that more
+ * results are to follow. Encoding the remaining results therefore overlaps with the Console receiving and decoding
+ * the earlier ones and the Agent never holds more than two messages' worth of encoded results however large the
+ * result set is.
+ * <p>
+ * The last message is sent by close(), which must always be called. This is the last message holding results, so
+ * an empty message is only sent if there were no results at all. A ResponseWriter isn't thread safe.
+ */
+final class ResponseWriter
+{
+    private static final Logger _log = LoggerFactory.getLogger(ResponseWriter.class);
+
+    private final Agent _agent;
+    private final Handle _handle;
+    private final String _method;
+    private final String _opcode;
+    private final String _content;
+    private final int _maxObjects;
+    private final long _maxBytes;
+
+    private List<Map> _batch = new ArrayList<Map>();
+    private long _batchBytes = 0;
+    private List<Map> _full = null;
+    private boolean _failed = false;
+
+    /**
+     * Construct a ResponseWriter.
+     *
+     * @param agent the Agent sending the response.
+     * @param handle the reply handle that contains the replyTo Address.
+     * @param method the value of the method property, "response" or "indication".
+     * @param opcode the value of the qmf.opcode property, e.g. "_query_response" or "_data_indication".
+     * @param content the value of the qmf.content property, e.g. "_data".
+     * @param maxObjects the maximum number of results per message, zero or less for no limit.
+     * @param maxBytes the maximum estimated encoded size in bytes of the results per message, zero or less for no
+     *        limit. A single result larger than this is still sent, in a message of its own.
+     */
+    ResponseWriter(final Agent agent, final Handle handle, final String method, final String opcode,
+                   final String content, final int maxObjects, final long maxBytes)
+    {
+        _agent = agent;
+        _handle = handle;
+        _method = method;
+        _opcode = opcode;
+        _content = content;
+        _maxObjects = maxObjects;
+        _maxBytes = maxBytes;
+    }
+
+    /**
+     * Write a result, first sending any full message as a partial message as more results now follow it.
+     * @param result the result in Map encoded form.
+     */
+    void write(final Map result)
+    {
+        if (_full != null)
+        {
+            send(_full, true);
+            _full = null;
+        }
+
+        _batch.add(result);
+        if (_maxBytes > 0)
+        { // Estimating the size walks the result, so only do it if there's a byte limit.
+            _batchBytes += 1 + AMQPMessage.estimateSize(result);
+        }
+        if ((_maxObjects > 0 && _batch.size() >= _maxObjects) || (_maxBytes > 0 && _batchBytes >= _maxBytes))
+        { // Held back until it is known whether any more results follow.
+            _full = _batch;
+            _batch = new ArrayList<Map>();
+            _batchBytes = 0;
+        }
+    }
+
+    /**
+     * Write a List of results, sending partial messages as each fills.
+     * @param results the results in Map encoded form.
+     */
+    void writeAll(final List<Map> results)
+    {
+        for (Map result : results)
+        {
+            write(result);
+        }
+    }
+
+    /**
+     * Send the last message, which completes the response. If the last result filled a message then the current
+     * message is empty, so the full message is sent as the last one.
+     */
+    void close()
+    {
+        if (_full != null)
+        {
+            send(_full, false);
+            _full = null;
+        }
+        else
+        {
+            send(_batch, false);
+        }
+        _batch = new ArrayList<Map>();
+        _batchBytes = 0;
+    }
+
+    /**
+     * Send a message. If a send fails the remaining results are discarded, as the Console can't make sense of a
+     * response with a gap in it.
+     *
+     * @param results the results to send in the message.
+     * @param partial true if more results are to follow.
+     */
+    private void send(final List<Map> results, final boolean partial)
+    {
+        if (!_failed)
+        {
+            try
+            {
+                _agent.sendList(_handle, _method, _opcode, _content, results, partial);
+            }
+            catch (JMSException jmse)
+            {
+                _failed = true;
+                _log.info("JMSException {} caught in ResponseWriter.send()", jmse.getMessage());
+            }
+        }
+    }
+}
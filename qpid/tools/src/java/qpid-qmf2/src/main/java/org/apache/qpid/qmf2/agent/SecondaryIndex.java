@@ -0,0 +1,336 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.agent;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.QmfData;
+import org.apache.qpid.qmf2.common.QmfQuery;
+import org.apache.qpid.qmf2.common.SchemaClassId;
+
+/**
+ * The SecondaryIndex maintains secondary indexes over the QmfAgentData objects held in the Agent's object store
+ * and acts as a simple query planner, returning the subset of objects that a QmfQuery could possibly match.
+ * <p>
+ * Two kinds of index are maintained:
+ * <pre>
+ * * Class buckets, which group objects by class name and by package name and are always maintained.
+ * * Property indexes, which hash objects by the value of a property, these are maintained for the properties
+ *   named by SchemaObjectClass.setIndexNames().
+ * </pre>
+ * Property indexes are keyed by the String form of the property value, which is the same form that the "eq"
+ * predicate uses when comparing values. Once any registered SchemaObjectClass declares an index on a property all
+ * objects with that property are indexed, whatever their class, because a predicate query isn't restricted to a
+ * particular class so the index can only be used if it covers every object that might match.
+ * <p>
+ * The planner is deliberately conservative: getCandidates() returns null (meaning "scan everything") whenever the
+ * query can't be answered from an index, and the candidates it does return are a superset of the matching objects,
+ * so the caller must still evaluate the query against each candidate.
+ * <p>
+ * Objects are added and removed far less frequently than queries are made, so mutations are serialised whilst
+ * queries read the concurrent buckets without locking.
+ */
+final class SecondaryIndex
+{
+    private final Map<String, Set<QmfAgentData>> _classIndex = new ConcurrentHashMap<String, Set<QmfAgentData>>();
+    private final Map<String, Set<QmfAgentData>> _packageIndex = new ConcurrentHashMap<String, Set<QmfAgentData>>();
+
+    /**
+     * The property indexes keyed by property name, each mapping the String form of a value to the objects with it.
+     */
+    private final Map<String, Map<String, Set<QmfAgentData>>> _propertyIndexes =
+        new ConcurrentHashMap<String, Map<String, Set<QmfAgentData>>>();
+
+    /**
+     * Create a new concurrent bucket, QmfAgentData doesn't override equals() so buckets hold object references.
+     * @return a new concurrent bucket.
+     */
+    private static Set<QmfAgentData> createBucket()
+    {
+        return Collections.newSetFromMap(new ConcurrentHashMap<QmfAgentData, Boolean>());
+    }
+
+    /**
+     * Add an object to the bucket with the given key, creating the bucket if necessary. Must be called holding the lock.
+     */
+    private static void addToBucket(final Map<String, Set<QmfAgentData>> index, final String key,
+                                    final QmfAgentData object)
+    {
+        Set<QmfAgentData> bucket = index.get(key);
+        if (bucket == null)
+        {
+            bucket = createBucket();
+            index.put(key, bucket);
+        }
+        bucket.add(object);
+    }
+
+    /**
+     * Remove an object from the bucket with the given key, removing the bucket once it is empty so that churning
+     * objects with unique property values (e.g. temporary queues) don't leave empty buckets behind. Must be called
+     * holding the lock.
+     */
+    private static void removeFromBucket(final Map<String, Set<QmfAgentData>> index, final String key,
+                                         final QmfAgentData object)
+    {
+        Set<QmfAgentData> bucket = index.get(key);
+        if (bucket != null && bucket.remove(object) && bucket.isEmpty())
+        {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Create property indexes for any of the named properties that aren't already indexed, populating them from
+     * the objects currently in the store.
+     *
+     * @param indexNames the names of the properties to index.
+     * @param objects the objects currently in the Agent's object store.
+     */
+    synchronized void addIndexes(final String[] indexNames, final Collection<QmfAgentData> objects)
+    {
+        for (String property : indexNames)
+        {
+            // Properties beginning with "_" may be resolved from object metadata by the predicate, so aren't indexed.
+            if (property == null || property.startsWith("_") || _propertyIndexes.containsKey(property))
+            {
+                continue;
+            }
+
+            Map<String, Set<QmfAgentData>> index = new ConcurrentHashMap<String, Set<QmfAgentData>>();
+            for (QmfAgentData object : objects)
+            {
+                if (object.hasValue(property))
+                {
+                    addToBucket(index, QmfData.getString(object.getValue(property)), object);
+                }
+            }
+            _propertyIndexes.put(property, index);
+        }
+    }
+
+    /**
+     * Add an object to the indexes.
+     * @param object the QmfAgentData being added to the Agent's object store.
+     */
+    synchronized void add(final QmfAgentData object)
+    {
+        SchemaClassId classId = object.getSchemaClassId();
+        if (classId != null)
+        {
+            addToBucket(_classIndex, classId.getClassName(), object);
+            addToBucket(_packageIndex, classId.getPackageName(), object);
+        }
+
+        for (Map.Entry<String, Map<String, Set<QmfAgentData>>> entry : _propertyIndexes.entrySet())
+        {
+            String property = entry.getKey();
+            if (object.hasValue(property))
+            {
+                addToBucket(entry.getValue(), QmfData.getString(object.getValue(property)), object);
+            }
+        }
+    }
+
+    /**
+     * Remove an object from the indexes.
+     * @param object the QmfAgentData being removed from the Agent's object store.
+     */
+    synchronized void remove(final QmfAgentData object)
+    {
+        SchemaClassId classId = object.getSchemaClassId();
+        if (classId != null)
+        {
+            removeFromBucket(_classIndex, classId.getClassName(), object);
+            removeFromBucket(_packageIndex, classId.getPackageName(), object);
+        }
+
+        for (Map.Entry<String, Map<String, Set<QmfAgentData>>> entry : _propertyIndexes.entrySet())
+        {
+            String property = entry.getKey();
+            if (object.hasValue(property))
+            {
+                removeFromBucket(entry.getValue(), QmfData.getString(object.getValue(property)), object);
+            }
+        }
+    }
+
+    /**
+     * Return the objects that the query could possibly match, or null if the query can't be answered from the
+     * indexes and every object needs to be evaluated. The caller must still evaluate the query and check
+     * isDeleted() for each candidate.
+     *
+     * @param query the OBJECT QmfQuery to plan.
+     * @return the candidate objects or null if every object needs to be evaluated.
+     */
+    Collection<QmfAgentData> getCandidates(final QmfQuery query)
+    {
+        List predicate = query.getPredicate();
+        if (predicate != null)
+        { // If the predicate can't be planned fall back to the class ID, which predicate queries may also have.
+            Collection<QmfAgentData> candidates = plan(predicate);
+            if (candidates != null)
+            {
+                return candidates;
+            }
+        }
+
+        SchemaClassId classId = query.getSchemaClassId();
+        if (classId == null)
+        {
+            return null;
+        }
+
+        String className = classId.getClassName();
+        String packageName = classId.getPackageName();
+        if (className != null && className.length() > 0)
+        { // The package name, if present, gets checked when the candidates are evaluated.
+            return getBucket(_classIndex, className);
+        }
+        else if (packageName != null && packageName.length() > 0)
+        {
+            return getBucket(_packageIndex, packageName);
+        }
+        return null;
+    }
+
+    /**
+     * Return the bucket with the given key or an empty Set if there's no such bucket.
+     */
+    private static Collection<QmfAgentData> getBucket(final Map<String, Set<QmfAgentData>> index, final String key)
+    {
+        Set<QmfAgentData> bucket = index.get(key);
+        return (bucket == null) ? Collections.<QmfAgentData>emptySet() : bucket;
+    }
+
+    /**
+     * Plan a predicate expression.
+     * <p>
+     * "eq" with a key and a literal uses the property index for the key, "exists" uses all of the property index
+     * buckets, "and" uses the most selective of its indexable sub-expressions and "or" uses the union of its
+     * sub-expressions if all of them are indexable. Anything else requires a scan.
+     *
+     * @param predicate the List encoded predicate expression.
+     * @return the candidate objects or null if every object needs to be evaluated.
+     */
+    private Collection<QmfAgentData> plan(final List predicate)
+    {
+        if (predicate.size() == 0 || !(predicate.get(0) instanceof String))
+        {
+            return null;
+        }
+
+        String op = (String)predicate.get(0);
+        if (op.equals("eq") && predicate.size() == 3)
+        {
+            Object l = predicate.get(1);
+            Object r = predicate.get(2);
+            if (l instanceof String && !(r instanceof String))
+            {
+                return planEq((String)l, r);
+            }
+            else if (r instanceof String && !(l instanceof String))
+            {
+                return planEq((String)r, l);
+            }
+        }
+        else if (op.equals("exists") && predicate.size() == 2 && predicate.get(1) instanceof String)
+        {
+            Map<String, Set<QmfAgentData>> index = _propertyIndexes.get((String)predicate.get(1));
+            if (index != null)
+            {
+                List<QmfAgentData> candidates = new ArrayList<QmfAgentData>();
+                for (Set<QmfAgentData> bucket : index.values())
+                {
+                    candidates.addAll(bucket);
+                }
+                return candidates;
+            }
+        }
+        else if (op.equals("and"))
+        {
+            Collection<QmfAgentData> best = null;
+            for (int i = 1; i < predicate.size(); i++)
+            {
+                Object sub = predicate.get(i);
+                Collection<QmfAgentData> candidates = (sub instanceof List) ? plan((List)sub) : null;
+                if (candidates != null && (best == null || candidates.size() < best.size()))
+                {
+                    best = candidates;
+                }
+            }
+            return best;
+        }
+        else if (op.equals("or") && predicate.size() > 1)
+        {
+            Set<QmfAgentData> union = Collections.newSetFromMap(new IdentityHashMap<QmfAgentData, Boolean>());
+            for (int i = 1; i < predicate.size(); i++)
+            {
+                Object sub = predicate.get(i);
+                Collection<QmfAgentData> candidates = (sub instanceof List) ? plan((List)sub) : null;
+                if (candidates == null)
+                {
+                    return null;
+                }
+                union.addAll(candidates);
+            }
+            return union;
+        }
+        return null;
+    }
+
+    /**
+     * Plan an "eq" expression between a key and a literal.
+     *
+     * @param key the property name.
+     * @param literal the literal, either a ["quote", value] List or a non-String value.
+     * @return the candidate objects or null if the key isn't indexed.
+     */
+    private Collection<QmfAgentData> planEq(final String key, final Object literal)
+    {
+        Map<String, Set<QmfAgentData>> index = _propertyIndexes.get(key);
+        if (index == null)
+        {
+            return null;
+        }
+
+        Object value = literal;
+        if (literal instanceof List)
+        { // A quoted literal, which must take the form ["quote", value] to be a valid expression.
+            List quoted = (List)literal;
+            if (quoted.size() != 2 || !"quote".equals(quoted.get(0)) || quoted.get(1) == null)
+            {
+                return null;
+            }
+            value = quoted.get(1);
+        }
+        return getBucket(index, value.toString());
+    }
+}
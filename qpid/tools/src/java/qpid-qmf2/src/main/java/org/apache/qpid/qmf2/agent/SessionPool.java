@@ -0,0 +1,282 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.agent;
+
+// JMS Imports
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The SessionPool holds the JMS Sessions and MessageProducers that the Agent sends its messages with.
+ * <p>
+ * The Agent sends from many threads: query and method responses from the RequestExecutor's lanes, subscription
+ * indications from the AgentScheduler's threads and Heartbeats and Events raised by application (e.g. broker I/O)
+ * threads. JMS Sessions and MessageProducers aren't intended to be used concurrently, so each send leases a Session
+ * and MessageProducer from the pool, sends, and returns it to the pool, which allows as many sends to proceed
+ * concurrently as the pool has Sessions.
+ * <p>
+ * Sessions are created lazily up to the maximum size of the pool, once every Session is leased further senders wait
+ * for one to be returned. Senders pass a MessageBuilder rather than a Message, so that each Message is created on
+ * the Session that sends it. A Session whose send fails is closed and discarded rather than returned, so that a
+ * broken Session doesn't keep failing sends, and is replaced on demand.
+ * <p>
+ * The number of times that a sender had to wait for a Session is recorded, if this grows steadily the pool should
+ * be made larger via Agent.setSendSessions().
+ */
+public final class SessionPool
+{
+    private static final Logger _log = LoggerFactory.getLogger(SessionPool.class);
+
+    /**
+     * The default maximum number of Sessions in the pool.
+     */
+    public static final int DEFAULT_SESSIONS = 4;
+
+    /**
+     * The time in milliseconds that a sender waits for a Session to be returned before checking the pool again.
+     */
+    private static final long WAIT_INTERVAL = 100;
+
+    /**
+     * Builds a Message to be sent, called with the leased Session that will send it.
+     */
+    interface MessageBuilder
+    {
+        /**
+         * Create and populate the Message to send.
+         * @param session the leased Session to create the Message with.
+         * @return the Message to send.
+         */
+        Message build(Session session) throws JMSException;
+    }
+
+    /**
+     * A pooled Session along with the unidentified MessageProducer created from it.
+     */
+    private static final class Sender
+    {
+        private final Session _session;
+        private final MessageProducer _producer;
+
+        Sender(final Session session, final MessageProducer producer)
+        {
+            _session = session;
+            _producer = producer;
+        }
+    }
+
+    private final Connection _connection;
+    private final int _maxSize;
+    private final BlockingQueue<Sender> _idle = new LinkedBlockingQueue<Sender>();
+    private final AtomicInteger _size = new AtomicInteger();
+    private final AtomicLong _sendCount = new AtomicLong();
+    private final AtomicLong _waitCount = new AtomicLong();
+
+    /**
+     * Construct a SessionPool.
+     *
+     * @param connection the JMS Connection used to create the Sessions.
+     * @param maxSize the maximum number of Sessions in the pool.
+     */
+    SessionPool(final Connection connection, final int maxSize)
+    {
+        _connection = connection;
+        _maxSize = (maxSize < 1) ? 1 : maxSize;
+    }
+
+    /**
+     * Lease a Sender from the pool, creating one if none are idle and the pool isn't full, otherwise waiting for
+     * one to be returned.
+     *
+     * @return the leased Sender, which must be returned to the idle queue or discarded once the send completes.
+     */
+    private Sender lease() throws JMSException
+    {
+        boolean waited = false;
+        while (true)
+        {
+            Sender sender = _idle.poll();
+            if (sender != null)
+            {
+                return sender;
+            }
+
+            if (_size.incrementAndGet() <= _maxSize)
+            {
+                try
+                {
+                    Session session = _connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                    return new Sender(session, session.createProducer(null));
+                }
+                catch (JMSException jmse)
+                {
+                    _size.decrementAndGet();
+                    throw jmse;
+                }
+            }
+            _size.decrementAndGet();
+
+            if (!waited)
+            {
+                waited = true;
+                _waitCount.incrementAndGet();
+            }
+
+            try
+            { // Wait with a timeout, as a discarded Sender leaves room for a new one rather than being returned.
+                sender = _idle.poll(WAIT_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                throw new JMSException("Interrupted whilst waiting for a pooled Session");
+            }
+
+            if (sender != null)
+            {
+                return sender;
+            }
+        }
+    }
+
+    /**
+     * Close a Sender whose send failed, so that it is replaced on demand by a new Sender.
+     */
+    private void discard(final Sender sender)
+    {
+        _size.decrementAndGet();
+        try
+        {
+            sender._session.close();
+        }
+        catch (JMSException jmse)
+        {
+            _log.debug("JMSException {} caught in SessionPool.discard()", jmse.getMessage());
+        }
+    }
+
+    /**
+     * Build and send a Message with the default delivery mode, priority and time to live.
+     *
+     * @param destination the Destination to send the Message to.
+     * @param builder the MessageBuilder that creates the Message to send.
+     */
+    void send(final Destination destination, final MessageBuilder builder) throws JMSException
+    {
+        send(destination, builder, Message.DEFAULT_DELIVERY_MODE, Message.DEFAULT_PRIORITY,
+             Message.DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Build and send a Message using a leased Session and MessageProducer. The Message is created on the leased
+     * Session, so no Session is ever used by more than one thread at a time.
+     *
+     * @param destination the Destination to send the Message to.
+     * @param builder the MessageBuilder that creates the Message to send.
+     * @param deliveryMode the delivery mode to use.
+     * @param priority the priority of the Message.
+     * @param timeToLive the Message's lifetime in milliseconds.
+     */
+    void send(final Destination destination, final MessageBuilder builder, final int deliveryMode,
+              final int priority, final long timeToLive) throws JMSException
+    {
+        Sender sender = lease();
+        boolean sent = false;
+        try
+        {
+            Message message = builder.build(sender._session);
+            sender._producer.send(destination, message, deliveryMode, priority, timeToLive);
+            sent = true;
+        }
+        finally
+        {
+            if (sent)
+            {
+                _sendCount.incrementAndGet();
+                _idle.offer(sender);
+            }
+            else
+            {
+                discard(sender);
+            }
+        }
+    }
+
+    /**
+     * Return the maximum number of Sessions in the pool.
+     * @return the maximum number of Sessions in the pool.
+     */
+    public int getMaxSize()
+    {
+        return _maxSize;
+    }
+
+    /**
+     * Return the number of Sessions currently in the pool.
+     * @return the number of Sessions currently in the pool.
+     */
+    public int getSize()
+    {
+        return _size.get();
+    }
+
+    /**
+     * Return the number of Sessions in the pool that aren't currently leased.
+     * @return the number of Sessions in the pool that aren't currently leased.
+     */
+    public int getIdleCount()
+    {
+        return _idle.size();
+    }
+
+    /**
+     * Return the number of Messages sent.
+     * @return the number of Messages sent.
+     */
+    public long getSendCount()
+    {
+        return _sendCount.get();
+    }
+
+    /**
+     * Return the number of sends that had to wait for a Session because all of them were leased.
+     * @return the number of sends that had to wait for a Session.
+     */
+    public long getWaitCount()
+    {
+        return _waitCount.get();
+    }
+}
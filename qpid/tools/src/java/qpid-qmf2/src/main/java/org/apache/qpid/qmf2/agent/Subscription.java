@@ -25,10 +25,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 // QMF2 Imports
 import org.apache.qpid.qmf2.common.Handle;
@@ -41,11 +50,30 @@ import org.apache.qpid.qmf2.common.QmfQueryTarget;
  * <p>
  * The main reason we have Subscriptions as TimerTasks is to enable proper cleanup of the references stored in
  * the _subscriptions Map when the Subscription expires. The timer also causes QmfAgenData that have been updated
- * since the last interval to be published.
+ * since the last interval to be published. Subscriptions created by the Agent itself are run by its AgentScheduler,
+ * which evaluates Subscriptions in parallel, though an AgentExternal may still schedule them using a Timer.
  * <p>
  * The following diagram illustrates the Subscription relationships with the Agent and QmfAgentData.
  * <p>
  * <img alt="" src="doc-files/Subscriptions.png">
+ * <p>
+ * By default each interval re-evaluates the Subscription's query over all of the Agent's data and publishes the
+ * objects that have been updated since the previous interval, so the cost of every interval grows with the size of
+ * the Agent's object store. A Subscription may instead be made change driven via setChangeDriven(), in which case
+ * the query is only evaluated over the whole store on the first interval. Thereafter QmfAgentData.update() records
+ * the object in the change set of each Subscription it belongs to and each interval only encodes the changed
+ * objects. The Agent's own object store uses change driven Subscriptions, as it is able to tell them about new
+ * objects and about updated objects that come to match a Subscription's predicate.
+ * <p>
+ * A Subscription may also be put in delta mode via setDelta(), which the Agent does when the Console requests it
+ * by setting "_delta" in the subscribe request. In delta mode the Subscription remembers the property values it
+ * last published for each object and subsequently publishes only the properties whose values have changed, along
+ * with the ObjectId, the update timestamp and a "_delta" flag, which the Console merges into its copy of the object.
+ * Objects whose properties haven't changed aren't published at all. The first publication of an object, and its
+ * publication on deletion, always carry its full state.
+ * <p>
+ * The Agent places change driven Subscriptions with identical queries and intervals in a SubscriptionGroup, where
+ * only the group's primary evaluates and encodes the query and its publications are fanned out to the others.
  * @author Fraser Adams
  */
 public final class Subscription extends TimerTask
@@ -70,18 +98,247 @@ public final class Subscription extends TimerTask
     private long _duration = 0;
     private long _interval = 0;
 
+    /**
+     * The QmfAgentData objects currently referencing this Subscription and, for change driven Subscriptions, those
+     * that have been updated since the last interval. QmfAgentData doesn't override equals() so these hold references.
+     */
+    private final Set<QmfAgentData> _members = Collections.newSetFromMap(new ConcurrentHashMap<QmfAgentData, Boolean>());
+    private final Set<QmfAgentData> _changes = Collections.newSetFromMap(new ConcurrentHashMap<QmfAgentData, Boolean>());
+    private volatile boolean _changeDriven = false;
+
+    /**
+     * In delta mode the property values last published for each member, keyed by QmfAgentData reference.
+     */
+    private volatile boolean _delta = false;
+    private final Map<QmfAgentData, Map<String, Object>> _published =
+        new ConcurrentHashMap<QmfAgentData, Map<String, Object>>();
+
+    private boolean _initialised = false;
+
+    /**
+     * The SubscriptionGroup sharing the evaluation of this Subscription's query, null if it isn't grouped.
+     */
+    private volatile SubscriptionGroup _group = null;
+
+    /**
+     * The objects whose publication is deferred until the end of the Agent's publish window.
+     */
+    private final Set<QmfAgentData> _pending = Collections.newSetFromMap(new ConcurrentHashMap<QmfAgentData, Boolean>());
+    private final AtomicBoolean _flushScheduled = new AtomicBoolean(false);
+    private final Runnable _flush = new Runnable()
+    {
+        public void run()
+        {
+            publishPending();
+        }
+    };
+
+    /**
+     * Set if the Subscription has been scheduled by the Agent's AgentScheduler rather than by a java.util.Timer
+     */
+    private volatile Future<?> _scheduledFuture = null;
+
     /**
      * Tells the SubscribableAgent to send the results to the Console via a subscription indicate message.
+     * <p>
+     * Synchronized with publishSnapshot() so that a follower's snapshot and its indications are sent in order.
      *
      * @param results the list of mapEncoded QmfAgentData that currently match the query associated with this
      * Subscription.
      */
-    protected void publish(List<Map> results)
+    protected synchronized void publish(List<Map> results)
     {
         _agent.sendSubscriptionIndicate(_consoleHandle, results);
+        SubscriptionGroup group = _group;
+        if (group != null && group.getPrimary() == this)
+        { // Fan the same encoded results out to the other subscribers in the group.
+            for (Subscription follower : group.getFollowers())
+            {
+                _agent.sendSubscriptionIndicate(follower.getConsoleHandle(), results);
+            }
+        }
         _lastUpdate = System.currentTimeMillis()*1000000l;
     }
 
+    /**
+     * Record that a QmfAgentData object now references this Subscription, called by QmfAgentData.addSubscription().
+     * @param object the QmfAgentData that now references this Subscription.
+     */
+    void addMember(final QmfAgentData object)
+    {
+        _members.add(object);
+    }
+
+    /**
+     * Record that a QmfAgentData object no longer references this Subscription, called by
+     * QmfAgentData.removeSubscription() and QmfAgentData.destroy().
+     * @param object the QmfAgentData that no longer references this Subscription.
+     */
+    void removeMember(final QmfAgentData object)
+    {
+        _members.remove(object);
+        _changes.remove(object);
+        if (!object.isDeleted())
+        { // Deleted objects are removed once their deferred publication has been sent.
+            _published.remove(object);
+            _pending.remove(object);
+        }
+    }
+
+    /**
+     * Return the encoding of an object that should be published by this Subscription. Unless the Subscription is
+     * in delta mode this is simply the object's encoding, otherwise it holds just the properties that have changed
+     * since the object was last published, or is null if none of them have.
+     *
+     * @param object the QmfAgentData being published.
+     * @param encoded the map encoded form of the object, projected by the Subscription's query.
+     * @return the encoding to publish, or null if there's nothing to publish.
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, Object> encode(final QmfAgentData object, final Map<String, Object> encoded)
+    {
+        if (!_delta)
+        {
+            return encoded;
+        }
+
+        Map<String, Object> values = (Map<String, Object>)encoded.get("_values");
+        if (values == null)
+        {
+            return encoded;
+        }
+
+        // The values Map may be the object's own live Map, so a copy is retained. Synchronized as publish() may
+        // be called on an object whilst the Subscription is running.
+        Map<String, Object> previous;
+        synchronized(_published)
+        {
+            previous = object.isDeleted() ? _published.remove(object) :
+                                             _published.put(object, new HashMap<String, Object>(values));
+        }
+        if (previous == null || object.isDeleted())
+        {
+            return encoded;
+        }
+
+        Map<String, Object> changed = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> entry : values.entrySet())
+        {
+            String name = entry.getKey();
+            Object value = entry.getValue();
+            if (!previous.containsKey(name) || !valueEquals(value, previous.get(name)))
+            {
+                changed.put(name, value);
+            }
+        }
+
+        if (changed.isEmpty())
+        {
+            return null;
+        }
+
+        Map<String, Object> delta = new HashMap<String, Object>();
+        delta.put("_values", changed);
+        delta.put("_object_id", encoded.get("_object_id"));
+        delta.put("_update_ts", encoded.get("_update_ts"));
+        delta.put("_delta", Boolean.TRUE);
+        return delta;
+    }
+
+    /**
+     * Compare two property values, byte[] values are compared by content.
+     */
+    private static boolean valueEquals(final Object lhs, final Object rhs)
+    {
+        if (lhs instanceof byte[] && rhs instanceof byte[])
+        {
+            return Arrays.equals((byte[])lhs, (byte[])rhs);
+        }
+        return (lhs == null) ? rhs == null : lhs.equals(rhs);
+    }
+
+    /**
+     * Record that a QmfAgentData object has been updated so it gets published on the next interval. This has no
+     * effect unless the Subscription is change driven.
+     * @param object the QmfAgentData that has been updated.
+     */
+    void markChanged(final QmfAgentData object)
+    {
+        if (_changeDriven)
+        {
+            _changes.add(object);
+        }
+    }
+
+    /**
+     * Clear the changed state of a QmfAgentData object, called when its state has been published immediately.
+     * @param object the QmfAgentData that has been published.
+     */
+    void clearChanged(final QmfAgentData object)
+    {
+        _changes.remove(object);
+    }
+
+    /**
+     * Defer the publication of a QmfAgentData object until the end of the publish window, called by
+     * QmfAgentData.publish(). The first object deferred in each window schedules the publication, which publishes
+     * every object deferred during the window in a single batch.
+     *
+     * @param object the QmfAgentData being published.
+     * @param scheduler the AgentScheduler used to schedule the publication.
+     * @param window the publish window in milliseconds.
+     */
+    void publishLater(final QmfAgentData object, final AgentScheduler scheduler, final long window)
+    {
+        _changes.remove(object);
+        _pending.add(object);
+        if (_flushScheduled.compareAndSet(false, true))
+        {
+            try
+            {
+                scheduler.scheduleOnce(_flush, window);
+            }
+            catch (RejectedExecutionException ree)
+            { // The Agent has been stopped so there's nothing to publish to.
+                _flushScheduled.set(false);
+                _pending.clear();
+            }
+        }
+    }
+
+    /**
+     * Publish the objects whose publication was deferred during the publish window. Objects deferred whilst this is
+     * running are published by the next window, as the flag is cleared before the pending objects are drained.
+     */
+    private void publishPending()
+    {
+        _flushScheduled.set(false);
+        synchronized(this)
+        { // Encoded and sent holding the lock so that they can't be overtaken by an older snapshot.
+            List<Map> results = new ArrayList<Map>(_pending.size());
+            Iterator<QmfAgentData> i = _pending.iterator();
+            while (i.hasNext())
+            {
+                QmfAgentData object = i.next();
+                i.remove();
+                if (object.isDeleted())
+                {
+                    addResult(results, object);
+                    _published.remove(object);
+                }
+                else if (_members.contains(object))
+                { // Objects that have left the Subscription since they were published are no longer of interest.
+                    addResult(results, object);
+                }
+            }
+
+            if (results.size() > 0)
+            {
+                publish(results);
+            }
+        }
+    }
+
     /**
      * Construct a new Subscription.
      * @param agent the SubscribableAgent to which this Subscription is associated.
@@ -105,7 +362,8 @@ public final class Subscription extends TimerTask
      * First a check is made to see if the Subscription has expired, if it has then it is cancelled.
      * <p>
      * If the Subscription isn't cancelled the Query gets evaluated against all registered objects and any that match
-     * which are new to the Subscription or have changed since the last update get published.
+     * which are new to the Subscription or have changed since the last update get published. If the Subscription is
+     * change driven only the objects that have changed since the last update are published.
      */
     public void run()
     {
@@ -116,6 +374,14 @@ public final class Subscription extends TimerTask
             // The Subscription has expired so cancel it
             cancel();
         }
+        else if (isFollower())
+        { // The group's primary evaluates the query and publishes to this Subscription's Console.
+            return;
+        }
+        else if (_changeDriven)
+        {
+            publishChanges();
+        }
         else
         {
             List<QmfAgentData> objects = _agent.evaluateQuery(_query);
@@ -126,7 +392,7 @@ public final class Subscription extends TimerTask
                 {
                     // The object is new to this Subscription so publish it
                     object.addSubscription(_subscriptionId, this);
-                    results.add(object.mapEncode());
+                    addResult(results, object);
                 }
                 else
                 {
@@ -136,7 +402,7 @@ public final class Subscription extends TimerTask
                     // the Console.
                     if (object.getUpdateTime() > _lastUpdate)
                     {
-                        results.add(object.mapEncode());
+                        addResult(results, object);
                     }
                 }
             }
@@ -148,6 +414,156 @@ public final class Subscription extends TimerTask
         }
     }
 
+    /**
+     * Encode an object, add it to the results to be published if there's anything to publish.
+     */
+    private void addResult(final List<Map> results, final QmfAgentData object)
+    {
+        Map<String, Object> encoded = encode(object, object.encode(_query.getSelect()));
+        if (encoded != null)
+        {
+            results.add(encoded);
+        }
+    }
+
+    /**
+     * Publish the objects that have changed since the last update. On the first interval the Query is evaluated
+     * against all registered objects to find the Subscription's initial members, all of which are published.
+     * <p>
+     * Synchronized with publishSnapshot() so that a follower can't join part way through initialisation and the
+     * changes are encoded and sent without a snapshot being sent in between.
+     */
+    private synchronized void publishChanges()
+    {
+        if (!_initialised)
+        {
+            _initialised = true;
+            for (QmfAgentData object : _agent.evaluateQuery(_query))
+            {
+                object.addSubscription(_subscriptionId, this);
+                _changes.add(object);
+            }
+        }
+
+        // Take the current changes before encoding any of them, so that objects changed whilst this interval's
+        // changes are being encoded are published on the next interval rather than extending this one.
+        List<QmfAgentData> changes = new ArrayList<QmfAgentData>(_changes.size());
+        Iterator<QmfAgentData> i = _changes.iterator();
+        while (i.hasNext())
+        {
+            changes.add(i.next());
+            i.remove();
+        }
+
+        boolean isPredicate = _query.getPredicate() != null;
+        List<Map> results = new ArrayList<Map>(changes.size());
+        for (QmfAgentData object : changes)
+        {
+            if (object.isDeleted())
+            { // Deleted objects are published by QmfAgentData.destroy()
+                continue;
+            }
+
+            if (isPredicate && !_query.evaluate(object))
+            { // The object has changed such that it no longer matches the Query so stop tracking it.
+                object.removeSubscription(_subscriptionId);
+                continue;
+            }
+            addResult(results, object);
+        }
+
+        if (results.size() > 0)
+        {
+            publish(results);
+        }
+    }
+
+    /**
+     * Schedule the sending of a snapshot of this Subscription's members to a follower that has just joined its
+     * group. The snapshot is encoded and sent on the subscription lane rather than by the thread handling the
+     * subscribe request, as encoding every member may take a while.
+     *
+     * @param follower the Subscription that has joined this Subscription's group.
+     * @param scheduler the AgentScheduler used to schedule the snapshot.
+     */
+    void scheduleSnapshot(final Subscription follower, final AgentScheduler scheduler)
+    {
+        try
+        {
+            scheduler.scheduleOnce(new Runnable()
+            {
+                public void run()
+                {
+                    publishSnapshot(follower);
+                }
+            }, 0);
+        }
+        catch (RejectedExecutionException ree)
+        { // The Agent has been stopped so there's nothing to publish to.
+        }
+    }
+
+    /**
+     * Send the current state of this Subscription's members to a follower that has joined its group. If this
+     * Subscription hasn't yet been initialised the follower will receive the members on its first interval.
+     * <p>
+     * The snapshot is encoded and sent holding the same lock as publish(), so every indication that the follower
+     * receives after the snapshot is at least as recent as it.
+     *
+     * @param follower the Subscription that has joined this Subscription's group.
+     */
+    private synchronized void publishSnapshot(final Subscription follower)
+    {
+        SubscriptionGroup group = follower.getGroup();
+        if (!_initialised || group == null || group.getPrimary() != this || !group.getFollowers().contains(follower))
+        { // The follower has left, or this Subscription is no longer its primary.
+            return;
+        }
+
+        List<Map> results = new ArrayList<Map>();
+        for (QmfAgentData object : _members)
+        {
+            if (!object.isDeleted())
+            {
+                results.add(object.encode(_query.getSelect()));
+            }
+        }
+
+        if (results.size() > 0)
+        {
+            _agent.sendSubscriptionIndicate(follower.getConsoleHandle(), results);
+        }
+    }
+
+    /**
+     * Set the SubscriptionGroup sharing the evaluation of this Subscription's query.
+     * @param group the SubscriptionGroup, null if this Subscription isn't grouped.
+     */
+    void setGroup(final SubscriptionGroup group)
+    {
+        _group = group;
+    }
+
+    /**
+     * Return the SubscriptionGroup sharing the evaluation of this Subscription's query.
+     * @return the SubscriptionGroup, null if this Subscription isn't grouped.
+     */
+    SubscriptionGroup getGroup()
+    {
+        return _group;
+    }
+
+    /**
+     * Return true if this Subscription is a follower in a SubscriptionGroup, in which case the group's primary
+     * evaluates the query and publishes to this Subscription's Console.
+     * @return true if this Subscription is a follower in a SubscriptionGroup.
+     */
+    boolean isFollower()
+    {
+        SubscriptionGroup group = _group;
+        return group != null && group.getPrimary() != this;
+    }
+
     /**
      * Refresh the subscription by zeroing its elapsed time.
      *
@@ -169,16 +585,35 @@ public final class Subscription extends TimerTask
     {
         _log.debug("Cancelling Subscription {}", _subscriptionId);
         // This Subscription is about to be deleted, remove it from any Objects that may be referencing it.
-        List<QmfAgentData> objects = _agent.evaluateQuery(_query);
-        for (QmfAgentData object : objects)
+        for (QmfAgentData object : _members)
         {
             object.removeSubscription(_subscriptionId);
         }
+        _changes.clear();
+        _published.clear();
+        _pending.clear();
 
         _agent.removeSubscription(this);
+
+        Future<?> scheduledFuture = _scheduledFuture;
+        if (scheduledFuture != null)
+        {
+            scheduledFuture.cancel(false);
+        }
         return super.cancel(); // Cancel the TimerTask
     }
 
+    /**
+     * Set the Future returned when this Subscription was scheduled by the Agent's AgentScheduler, so that
+     * cancel() may stop the Subscription being run.
+     *
+     * @param scheduledFuture the Future returned by the AgentScheduler.
+     */
+    void setScheduledFuture(final Future<?> scheduledFuture)
+    {
+        _scheduledFuture = scheduledFuture;
+    }
+
     /**
      * Return the SubscriptionId of this subscription.
      * @return the SubscriptionId of this subscription.
@@ -268,6 +703,48 @@ public final class Subscription extends TimerTask
         return _interval;
     }
 
+    /**
+     * Set whether this Subscription is change driven. A SubscribableAgent should only make a Subscription change
+     * driven if it adds the Subscription to new objects that match its query and to updated objects that come to
+     * match its query, as these won't otherwise be found once the first interval has run.
+     *
+     * @param changeDriven true if only objects changed since the last interval should be published.
+     */
+    public void setChangeDriven(final boolean changeDriven)
+    {
+        _changeDriven = changeDriven;
+    }
+
+    /**
+     * Set whether this Subscription is in delta mode, publishing only the properties that have changed. A
+     * SubscribableAgent should only do this if the Console requested it and the subscribe response tells the
+     * Console that it has been granted, as the Console must merge the deltas into its copy of each object.
+     *
+     * @param delta true if the Subscription should publish only changed properties.
+     */
+    public void setDelta(final boolean delta)
+    {
+        _delta = delta;
+    }
+
+    /**
+     * Return true if this Subscription is in delta mode.
+     * @return true if this Subscription is in delta mode.
+     */
+    public boolean isDelta()
+    {
+        return _delta;
+    }
+
+    /**
+     * Return true if this Subscription is change driven.
+     * @return true if this Subscription is change driven.
+     */
+    public boolean isChangeDriven()
+    {
+        return _changeDriven;
+    }
+
     /**
      * Return The Subscription's QmfQuery.
      * @return The Subscription's QmfQuery.
@@ -0,0 +1,187 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.agent;
+
+// Misc Imports
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.QmfQuery;
+
+/**
+ * A SubscriptionGroup shares the evaluation of identical Subscriptions between the Consoles that made them.
+ * <p>
+ * It is common for many Consoles to subscribe with the same query, for example every instance of QpidQueueStats
+ * subscribes to org.apache.qpid.broker:queue. Subscriptions whose queries have the same canonical form and which
+ * have the same publish interval are placed in the same SubscriptionGroup. The first of these is the primary, which
+ * tracks the matching objects and their changes and evaluates and encodes them once per interval exactly as an
+ * ungrouped Subscription does. The others are followers, which do nothing but track their own lifetime: each time
+ * the primary publishes, the same encoded results are sent to the followers' reply handles too. The Agent's cost
+ * therefore grows with the number of distinct queries rather than with the number of subscribers.
+ * <p>
+ * A follower that joins after the primary's first interval is sent a snapshot of the primary's current members.
+ * If the primary is cancelled or expires the first follower is promoted to primary, it evaluates its query afresh
+ * on its next interval and so republishes all of the matching objects to the remaining subscribers.
+ * <p>
+ * Groups are created and changed by the Agent holding its group lock, whereas the primary reads the followers
+ * without locking each time it publishes, so the followers are held in a copy-on-write List.
+ */
+final class SubscriptionGroup
+{
+    private final String _key;
+    private volatile Subscription _primary;
+    private final List<Subscription> _followers = new CopyOnWriteArrayList<Subscription>();
+
+    /**
+     * Construct a SubscriptionGroup.
+     *
+     * @param key the key identifying the group, as returned by getKey().
+     * @param primary the Subscription that evaluates the query on behalf of the group.
+     */
+    SubscriptionGroup(final String key, final Subscription primary)
+    {
+        _key = key;
+        _primary = primary;
+    }
+
+    /**
+     * Return the key identifying the Subscriptions that may share a group, which combines the canonical form of the
+     * query with the publish interval.
+     *
+     * @param query the Subscription's QmfQuery.
+     * @param interval the Subscription's publish interval.
+     * @return the group key.
+     */
+    static String getKey(final QmfQuery query, final long interval)
+    {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(interval).append('/');
+        canonicalise(buffer, query.mapEncode());
+        return buffer.toString();
+    }
+
+    /**
+     * Append the canonical form of a Map encoded query value. Maps are rendered in key order, so that queries that
+     * differ only in the order in which they were built are identical, and byte[] values are rendered by content.
+     */
+    private static void canonicalise(final StringBuilder buffer, final Object value)
+    {
+        if (value instanceof Map)
+        {
+            buffer.append('{');
+            Map<?, ?> map = (Map<?, ?>)value;
+            Map<String, Object> sorted = new TreeMap<String, Object>();
+            for (Map.Entry<?, ?> entry : map.entrySet())
+            {
+                sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            for (Map.Entry<String, Object> entry : sorted.entrySet())
+            {
+                buffer.append(entry.getKey()).append(':');
+                canonicalise(buffer, entry.getValue());
+                buffer.append(',');
+            }
+            buffer.append('}');
+        }
+        else if (value instanceof List)
+        {
+            buffer.append('[');
+            for (Object item : (List<?>)value)
+            {
+                canonicalise(buffer, item);
+                buffer.append(',');
+            }
+            buffer.append(']');
+        }
+        else if (value instanceof byte[])
+        {
+            buffer.append(Arrays.toString((byte[])value));
+        }
+        else if (value instanceof String)
+        { // Quoted so that Strings can't be confused with numbers or booleans of the same text.
+            buffer.append('"').append(value).append('"');
+        }
+        else
+        {
+            buffer.append(value);
+        }
+    }
+
+    /**
+     * Return the group key.
+     * @return the group key.
+     */
+    String getKey()
+    {
+        return _key;
+    }
+
+    /**
+     * Return the primary Subscription, which evaluates the query on behalf of the group.
+     * @return the primary Subscription, or null once every Subscription has left the group.
+     */
+    Subscription getPrimary()
+    {
+        return _primary;
+    }
+
+    /**
+     * Return the followers, which receive the primary's publications.
+     * @return the followers.
+     */
+    List<Subscription> getFollowers()
+    {
+        return _followers;
+    }
+
+    /**
+     * Add a follower to the group. Must be called holding the Agent's group lock.
+     * @param subscription the Subscription joining the group.
+     */
+    void join(final Subscription subscription)
+    {
+        _followers.add(subscription);
+    }
+
+    /**
+     * Remove a Subscription from the group, promoting the first follower if the primary is leaving. Must be called
+     * holding the Agent's group lock.
+     *
+     * @param subscription the Subscription leaving the group.
+     * @return true if the group is now empty and should be discarded.
+     */
+    boolean leave(final Subscription subscription)
+    {
+        if (subscription == _primary)
+        {
+            _primary = _followers.isEmpty() ? null : _followers.remove(0);
+        }
+        else
+        {
+            _followers.remove(subscription);
+        }
+        return _primary == null;
+    }
+}
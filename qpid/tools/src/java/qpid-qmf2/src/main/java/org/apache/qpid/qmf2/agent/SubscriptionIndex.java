@@ -0,0 +1,182 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.agent;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.ObjectId;
+import org.apache.qpid.qmf2.common.QmfQuery;
+import org.apache.qpid.qmf2.common.QmfQueryTarget;
+import org.apache.qpid.qmf2.common.SchemaClassId;
+
+/**
+ * The SubscriptionIndex groups the Agent's OBJECT Subscriptions by the ObjectId or schema class that their query
+ * selects, so that when an object is added to or updated in the object store only the Subscriptions that could
+ * possibly match it need to evaluate their query against it, rather than every Subscription evaluating every
+ * object. This matters most when a broker with existing Console Subscriptions registers all of its queues,
+ * exchanges, bindings etc. on startup or when it recovers a large virtual host.
+ * <p>
+ * Subscriptions are held against the first of these that applies to their query:
+ * <pre>
+ * * The ObjectId, for ID queries that select an object by its ObjectId.
+ * * The class name, for queries whose SchemaClassId has a class name. The package name, if present, gets checked
+ *   when the query is evaluated.
+ * * The package name, for queries whose SchemaClassId has only a package name.
+ * * Unclassified, for predicate queries without a SchemaClassId, which may match objects of any class.
+ * </pre>
+ * The candidates returned for an object are a superset of the Subscriptions that match it, so the caller must
+ * still evaluate each Subscription's query.
+ * <p>
+ * Subscriptions are created and cancelled far less frequently than objects are added and updated, so the index is
+ * copy-on-write: it is rebuilt whenever a Subscription is added or removed and readers use an immutable snapshot
+ * without any locking.
+ */
+final class SubscriptionIndex
+{
+    /**
+     * An immutable snapshot of the index.
+     */
+    private static final class Snapshot
+    {
+        private final Map<ObjectId, List<Subscription>> _byObjectId = new HashMap<ObjectId, List<Subscription>>();
+        private final Map<String, List<Subscription>> _byClass = new HashMap<String, List<Subscription>>();
+        private final Map<String, List<Subscription>> _byPackage = new HashMap<String, List<Subscription>>();
+        private final List<Subscription> _unclassified = new ArrayList<Subscription>();
+    }
+
+    private final List<Subscription> _subscriptions = new ArrayList<Subscription>();
+    private volatile Snapshot _snapshot = new Snapshot();
+
+    /**
+     * Add a Subscription to the bucket with the given key, creating the bucket if necessary.
+     */
+    private static <K> void addToBucket(final Map<K, List<Subscription>> index, final K key,
+                                        final Subscription subscription)
+    {
+        List<Subscription> bucket = index.get(key);
+        if (bucket == null)
+        {
+            bucket = new ArrayList<Subscription>();
+            index.put(key, bucket);
+        }
+        bucket.add(subscription);
+    }
+
+    /**
+     * Add a Subscription to the index, only Subscriptions whose QueryTarget is OBJECT are indexed.
+     *
+     * @param subscription the Subscription to add.
+     */
+    synchronized void add(final Subscription subscription)
+    {
+        if (subscription.getQuery().getTarget() == QmfQueryTarget.OBJECT)
+        {
+            _subscriptions.add(subscription);
+            rebuild();
+        }
+    }
+
+    /**
+     * Remove a Subscription from the index.
+     *
+     * @param subscription the Subscription to remove.
+     */
+    synchronized void remove(final Subscription subscription)
+    {
+        if (_subscriptions.remove(subscription))
+        {
+            rebuild();
+        }
+    }
+
+    /**
+     * Return the Subscriptions that could possibly match an object, the caller must still evaluate their queries.
+     *
+     * @param object the QmfAgentData being added or updated.
+     * @return the candidate Subscriptions.
+     */
+    List<Subscription> getCandidates(final QmfAgentData object)
+    {
+        Snapshot snapshot = _snapshot;
+        List<Subscription> candidates = new ArrayList<Subscription>(snapshot._unclassified);
+
+        ObjectId objectId = object.getObjectId();
+        List<Subscription> bucket = (objectId == null) ? null : snapshot._byObjectId.get(objectId);
+        if (bucket != null)
+        {
+            candidates.addAll(bucket);
+        }
+
+        SchemaClassId classId = object.getSchemaClassId();
+        if (classId != null)
+        {
+            bucket = snapshot._byClass.get(classId.getClassName());
+            if (bucket != null)
+            {
+                candidates.addAll(bucket);
+            }
+
+            bucket = snapshot._byPackage.get(classId.getPackageName());
+            if (bucket != null)
+            {
+                candidates.addAll(bucket);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Rebuild the immutable index snapshot from the current list of Subscriptions. Must be called holding the lock.
+     */
+    private void rebuild()
+    {
+        Snapshot snapshot = new Snapshot();
+        for (Subscription subscription : _subscriptions)
+        {
+            QmfQuery query = subscription.getQuery();
+            SchemaClassId classId = query.getSchemaClassId();
+            String className = (classId == null) ? null : classId.getClassName();
+            String packageName = (classId == null) ? null : classId.getPackageName();
+            if (query.getObjectId() != null)
+            {
+                addToBucket(snapshot._byObjectId, query.getObjectId(), subscription);
+            }
+            else if (className != null && className.length() > 0)
+            {
+                addToBucket(snapshot._byClass, className, subscription);
+            }
+            else if (packageName != null && packageName.length() > 0)
+            {
+                addToBucket(snapshot._byPackage, packageName, subscription);
+            }
+            else if (query.getPredicate() != null)
+            {
+                snapshot._unclassified.add(subscription);
+            }
+        }
+        _snapshot = snapshot;
+    }
+}
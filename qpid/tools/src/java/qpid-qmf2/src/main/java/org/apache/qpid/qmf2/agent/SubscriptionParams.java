@@ -96,6 +96,15 @@ public final class SubscriptionParams extends QmfData
     {
         return getStringValue("_user_id");
     }
+
+    /**
+     * Return true if the Console has asked for delta mode indications, which carry only the changed properties.
+     * @return true if the Console has asked for delta mode indications.
+     */
+    public boolean isDelta()
+    {
+        return hasValue("_delta") ? getBooleanValue("_delta") : false;
+    }
 }
 
 
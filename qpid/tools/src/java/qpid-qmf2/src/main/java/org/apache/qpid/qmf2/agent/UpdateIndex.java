@@ -0,0 +1,134 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.agent;
+
+// Misc Imports
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The UpdateIndex orders the QmfAgentData objects held in the Agent's object store by their update timestamp, so
+ * that a QmfQuery with a "_since" clause can find the objects updated (or deleted) after a given time without
+ * scanning the whole store.
+ * <p>
+ * Objects are bucketed by update timestamp in a ConcurrentSkipListMap, so finding the objects updated since a
+ * given time is a tail map of the skip list. Each object's current position is recorded so that it can be moved
+ * when it is updated again. Deleted objects remain in the index, under their deletion time, until they are reaped.
+ * <p>
+ * As with the SecondaryIndex, mutations are serialised whilst queries read the concurrent buckets without locking.
+ * Updates of an object that is already indexed under its current timestamp return without taking the lock.
+ */
+final class UpdateIndex
+{
+    private final ConcurrentSkipListMap<Long, Set<QmfAgentData>> _byTime =
+        new ConcurrentSkipListMap<Long, Set<QmfAgentData>>();
+
+    /**
+     * The update timestamp that each object is currently indexed under, QmfAgentData doesn't override equals() so
+     * this is keyed by object reference.
+     */
+    private final Map<QmfAgentData, Long> _indexed = new ConcurrentHashMap<QmfAgentData, Long>();
+
+    /**
+     * Add an object to the index or, if it is already indexed, move it to its current update timestamp.
+     * @param object the QmfAgentData that has been added or updated.
+     */
+    void update(final QmfAgentData object)
+    {
+        Long timestamp = object.getUpdateTime();
+        if (timestamp.equals(_indexed.get(object)))
+        { // Already indexed under its current update timestamp, so there's no need to take the lock.
+            return;
+        }
+
+        synchronized(this)
+        {
+            Long previous = _indexed.put(object, timestamp);
+            if (previous != null)
+            {
+                if (previous.equals(timestamp))
+                {
+                    return;
+                }
+                removeFromBucket(previous, object);
+            }
+
+            Set<QmfAgentData> bucket = _byTime.get(timestamp);
+            if (bucket == null)
+            {
+                bucket = Collections.newSetFromMap(new ConcurrentHashMap<QmfAgentData, Boolean>());
+                _byTime.put(timestamp, bucket);
+            }
+            bucket.add(object);
+        }
+    }
+
+    /**
+     * Remove an object from the index.
+     * @param object the QmfAgentData being removed from the Agent's object store.
+     */
+    synchronized void remove(final QmfAgentData object)
+    {
+        Long previous = _indexed.remove(object);
+        if (previous != null)
+        {
+            removeFromBucket(previous, object);
+        }
+    }
+
+    /**
+     * Remove an object from the bucket with the given timestamp, removing the bucket once it is empty. Must be
+     * called holding the lock.
+     */
+    private void removeFromBucket(final Long timestamp, final QmfAgentData object)
+    {
+        Set<QmfAgentData> bucket = _byTime.get(timestamp);
+        if (bucket != null && bucket.remove(object) && bucket.isEmpty())
+        {
+            _byTime.remove(timestamp);
+        }
+    }
+
+    /**
+     * Return the objects whose update timestamp is later than the given time, including deleted objects that have
+     * yet to be reaped. An object updated whilst the index is being read may be seen in both its old and new
+     * buckets, so the results are a Set, and the caller should check the update timestamp of each object returned.
+     *
+     * @param since the time in nanoseconds since the epoch.
+     * @return the objects updated after the given time.
+     */
+    Collection<QmfAgentData> getUpdatedSince(final long since)
+    {
+        NavigableMap<Long, Set<QmfAgentData>> tail = _byTime.tailMap(since, false);
+        Set<QmfAgentData> results = new LinkedHashSet<QmfAgentData>();
+        for (Set<QmfAgentData> bucket : tail.values())
+        {
+            results.addAll(bucket);
+        }
+        return results;
+    }
+}
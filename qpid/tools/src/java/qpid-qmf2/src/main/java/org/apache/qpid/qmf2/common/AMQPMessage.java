@@ -34,6 +34,7 @@ import java.util.Enumeration;
 import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 // Need the following to decode and encode amqp/list messages
 import java.nio.ByteBuffer;
@@ -54,11 +55,53 @@ import org.apache.qpid.qmf2.common.QmfData;
  * Whilst amqp/map messages are encoded as JMS MapMessage this isn't necessarily the most useful format as
  * MapMessage does not conform to the java.util.Map interface. As QMF methods returning lists return lists
  * of java.util.Map there's a bit of an inconsistency of type that getMap() resolves.
+ *<p>
+ * amqp/list messages such as large _query_response messages may be several megabytes, so getList() and setList()
+ * avoid making full copies of the payload where they can. Each thread reuses its own decode buffer and encoder
+ * rather than allocating new ones for every message, encoders are pre-sized from an estimate of the encoded size
+ * of the List rather than growing repeatedly, and the encoded bytes are written to the Message directly from the
+ * encoder's buffer. Buffers larger than MAX_RETAINED_BUFFER are not retained, so a one-off large message doesn't
+ * pin memory for the lifetime of the thread.
  * 
  * @author Fraser Adams
  */
 public final class AMQPMessage
 {
+    /**
+     * The largest decode buffer or encoder that a thread will retain for reuse.
+     */
+    private static final int MAX_RETAINED_BUFFER = 8*1024*1024;
+
+    /**
+     * The initial encoder capacity used when the List is empty or its size can't be estimated.
+     */
+    private static final int MIN_ENCODER_CAPACITY = 1024;
+
+    /**
+     * The number of List elements sampled when estimating the encoded size of a List.
+     */
+    private static final int ESTIMATE_SAMPLE_SIZE = 8;
+
+    /**
+     * The buffers that a thread reuses for encoding and decoding amqp/list messages.
+     */
+    private static final class Buffers
+    {
+        private byte[] _decodeBuffer = new byte[0];
+        private final BBDecoder _decoder = new BBDecoder();
+        private BBEncoder _encoder = null;
+        private int _encoderCapacity = 0;
+    }
+
+    private static final ThreadLocal<Buffers> _buffers = new ThreadLocal<Buffers>()
+    {
+        @Override
+        protected Buffers initialValue()
+        {
+            return new Buffers();
+        }
+    };
+
     /**
      * Make constructor private at this class provides a set of static helper methods and doesn't need instantiated.
      */
@@ -217,11 +260,30 @@ public final class AMQPMessage
             BytesMessage msg = (BytesMessage)message;
 
             //only handles responses up to 2^31-1 bytes long
-            byte[] data = new byte[(int) msg.getBodyLength()];
-            msg.readBytes(data);
-            BBDecoder decoder = new BBDecoder();
-            decoder.init(ByteBuffer.wrap(data));
-            return (List<T>)decoder.readList();
+            int length = (int)msg.getBodyLength();
+            Buffers buffers = _buffers.get();
+            byte[] data = buffers._decodeBuffer;
+            if (data.length < length)
+            {
+                data = new byte[length];
+                if (length <= MAX_RETAINED_BUFFER)
+                {
+                    buffers._decodeBuffer = data;
+                }
+            }
+
+            msg.readBytes(data, length);
+            // The decoder copies everything it returns out of the buffer, so the buffer may be safely reused.
+            BBDecoder decoder = buffers._decoder;
+            decoder.init(ByteBuffer.wrap(data, 0, length));
+            try
+            {
+                return (List<T>)decoder.readList();
+            }
+            finally
+            {
+                decoder.releaseBuffer();
+            }
         }
         else if (message instanceof MapMessage)
         {   /*
@@ -248,6 +310,92 @@ public final class AMQPMessage
         }
     }
 
+    /**
+     * Estimate the encoded size of a List by estimating the size of a sample of its elements and extrapolating,
+     * which is accurate for the typically homogeneous Lists of mapEncoded objects that QMF sends without needing
+     * to walk the whole List.
+     *
+     * @param list the List to be encoded.
+     * @return the estimated encoded size in bytes.
+     */
+    private static int estimateListSize(final List list)
+    {
+        int size = list.size();
+        int sampleSize = Math.min(size, ESTIMATE_SAMPLE_SIZE);
+        if (sampleSize == 0)
+        {
+            return MIN_ENCODER_CAPACITY;
+        }
+
+        long sampled = 0;
+        for (int i = 0; i < sampleSize; i++)
+        {
+            sampled += 1 + estimateSize(list.get(i));
+        }
+
+        // Allow 25% headroom for variation between the sampled and unsampled elements.
+        long estimate = 8 + (sampled*size/sampleSize)*5/4;
+        return (int)Math.max(MIN_ENCODER_CAPACITY, Math.min(estimate, Integer.MAX_VALUE - 8));
+    }
+
+    /**
+     * Estimate the AMQP 0-10 encoded size of a value, excluding its type code. This is used when encoding Lists
+     * and by the Agent to bound the size of the partial responses it sends.
+     *
+     * @param value the value to be encoded.
+     * @return the estimated encoded size in bytes.
+     */
+    public static long estimateSize(final Object value)
+    {
+        if (value == null || value instanceof Boolean || value instanceof Byte)
+        {
+            return 1;
+        }
+        else if (value instanceof String)
+        { // Assume mostly single byte UTF-8 characters.
+            return 2 + ((String)value).length();
+        }
+        else if (value instanceof Long || value instanceof Double)
+        {
+            return 8;
+        }
+        else if (value instanceof Integer || value instanceof Float)
+        {
+            return 4;
+        }
+        else if (value instanceof Short)
+        {
+            return 2;
+        }
+        else if (value instanceof byte[])
+        {
+            return 4 + ((byte[])value).length;
+        }
+        else if (value instanceof UUID)
+        {
+            return 16;
+        }
+        else if (value instanceof Map)
+        {
+            long size = 8;
+            for (Map.Entry entry : ((Map<?, ?>)value).entrySet())
+            {
+                size += 2 + String.valueOf(entry.getKey()).length() + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        else if (value instanceof List)
+        {
+            long size = 8;
+            for (Object item : (List)value)
+            {
+                size += 1 + estimateSize(item);
+            }
+            return size;
+        }
+        return 16;
+    }
+
     /**
      * Creates an amqp/list encoded Message out of a BytesMessage.
      * <p>
@@ -291,12 +439,44 @@ public final class AMQPMessage
         }
         else if (message instanceof BytesMessage)
         {
-            BBEncoder encoder = new BBEncoder(1024);
+            Buffers buffers = _buffers.get();
+            int estimate = estimateListSize(list);
+            BBEncoder encoder = buffers._encoder;
+            if (encoder == null || buffers._encoderCapacity < estimate)
+            { // Create a new encoder big enough for the estimated size to avoid repeated growth whilst encoding.
+                encoder = new BBEncoder(estimate);
+                buffers._encoderCapacity = estimate;
+            }
+            else
+            {
+                encoder.init();
+            }
+            buffers._encoder = null; // In case writeList() or writeBytes() throws part way through.
+
             encoder.writeList(list);
             ByteBuffer buf = encoder.segment();
-            byte[] data = new byte[buf.limit()];
-            buf.get(data);
-            ((BytesMessage)message).writeBytes(data);
+            int length = buf.remaining();
+            if (buf.hasArray())
+            { // Write directly from the encoder's buffer rather than copying the encoded bytes first.
+                ((BytesMessage)message).writeBytes(buf.array(), buf.arrayOffset() + buf.position(), length);
+            }
+            else
+            {
+                byte[] data = new byte[length];
+                buf.get(data);
+                ((BytesMessage)message).writeBytes(data);
+            }
+
+            // The encoder will have grown to at least the encoded size, retain it for reuse if it isn't too big.
+            if (length <= MAX_RETAINED_BUFFER)
+            {
+                buffers._encoder = encoder;
+                buffers._encoderCapacity = Math.max(buffers._encoderCapacity, length);
+            }
+            else
+            {
+                buffers._encoderCapacity = 0;
+            }
         }
         else
         {
@@ -0,0 +1,207 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.common;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An Aggregate describes the aggregation that an Agent should apply to the objects matching a QmfQuery, so that
+ * totals such as the total msgDepth per vhost or the number of connections per authIdentity may be computed by
+ * the Agent in a single pass over its objects rather than every matching object being sent to the Console.
+ * <p>
+ * The matching objects are grouped by the values of the group properties (all matching objects form a single group
+ * if there are no group properties) and one result is returned for each group, containing the group property
+ * values, a "count" of the objects in the group and the value of each metric named "function(property)", for
+ * example "sum(msgDepth)". The supported functions are "sum", "min" and "max", which only consider numeric property
+ * values. All of these may be combined across Agents, so results from many Agents may be merged by an Aggregator.
+ * <p>
+ * An Aggregate is carried by a QmfQuery as the "_aggregate" map, which takes the form:
+ * <pre>
+ * {"group": ["vhostRef"], "metrics": {"sum": ["msgDepth", "byteDepth"], "max": ["msgDepth"]}}
+ * </pre>
+ * A single metric property may also be given as a String, e.g. {"sum": "msgDepth"}.
+ * <p>
+ * "_aggregate" is an extension to the QMF2 protocol, see Console.aggregate() for how Agents that don't support it
+ * are handled.
+ */
+public final class Aggregate extends QmfData
+{
+    /**
+     * The name of the result value holding the number of objects in each group.
+     */
+    public static final String COUNT = "count";
+
+    /**
+     * The supported metric functions.
+     */
+    public static final List<String> FUNCTIONS = Collections.unmodifiableList(Arrays.asList("sum", "min", "max"));
+
+    private List<String> _group = Collections.emptyList();
+    private final Map<String, List<String>> _metrics = new LinkedHashMap<String, List<String>>();
+
+    /**
+     * Construct an Aggregate with no group properties and no metrics, which counts the matching objects.
+     */
+    public Aggregate()
+    {
+        setValue("group", new ArrayList<String>());
+        setValue("metrics", new LinkedHashMap<String, Object>());
+    }
+
+    /**
+     * Construct an Aggregate from a Map encoding.
+     * @param m encoding the Aggregate.
+     */
+    public Aggregate(final Map m) throws QmfException
+    {
+        super(m);
+
+        if (hasValue("group"))
+        {
+            _group = Collections.unmodifiableList(getStringList(getValue("group")));
+        }
+
+        if (hasValue("metrics"))
+        {
+            Object metrics = getValue("metrics");
+            if (!(metrics instanceof Map))
+            {
+                throw new QmfException("Invalid _aggregate metrics format");
+            }
+
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>)metrics).entrySet())
+            {
+                String function = getString(entry.getKey());
+                if (!FUNCTIONS.contains(function))
+                {
+                    throw new QmfException("Unsupported _aggregate function " + function);
+                }
+                _metrics.put(function, Collections.unmodifiableList(getStringList(entry.getValue())));
+            }
+        }
+    }
+
+    /**
+     * Return a List of Strings from a List or from a single String, binary strings are converted to Strings.
+     */
+    private static List<String> getStringList(final Object value)
+    {
+        List<String> list = new ArrayList<String>();
+        if (value instanceof List)
+        {
+            for (Object item : (List)value)
+            {
+                list.add(getString(item));
+            }
+        }
+        else if (value != null)
+        {
+            list.add(getString(value));
+        }
+        return list;
+    }
+
+    /**
+     * Set the properties whose values are used to group the matching objects.
+     * @param group the names of the group properties.
+     */
+    public void setGroup(final String... group)
+    {
+        _group = Collections.unmodifiableList(new ArrayList<String>(Arrays.asList(group)));
+        setValue("group", new ArrayList<String>(_group));
+    }
+
+    /**
+     * Return the names of the properties whose values are used to group the matching objects.
+     * @return the names of the group properties.
+     */
+    public List<String> getGroup()
+    {
+        return _group;
+    }
+
+    /**
+     * Add a metric to the Aggregate.
+     *
+     * @param function the metric function, one of "sum", "min" or "max".
+     * @param property the name of the numeric property the function is applied to.
+     */
+    @SuppressWarnings("unchecked")
+    public void addMetric(final String function, final String property) throws QmfException
+    {
+        if (!FUNCTIONS.contains(function))
+        {
+            throw new QmfException("Unsupported _aggregate function " + function);
+        }
+
+        List<String> properties = new ArrayList<String>();
+        if (_metrics.containsKey(function))
+        {
+            properties.addAll(_metrics.get(function));
+        }
+        properties.add(property);
+        _metrics.put(function, Collections.unmodifiableList(properties));
+        ((Map<String, Object>)getValue("metrics")).put(function, new ArrayList<String>(properties));
+    }
+
+    /**
+     * Return the metrics as a Map of function to the names of the properties the function is applied to.
+     * @return the metrics keyed by function.
+     */
+    public Map<String, List<String>> getMetrics()
+    {
+        return Collections.unmodifiableMap(_metrics);
+    }
+
+    /**
+     * Return the names of all of the properties used by the Aggregate, so that Agents need only encode these.
+     * @return the names of the group and metric properties.
+     */
+    public Set<String> getProperties()
+    {
+        Set<String> properties = new LinkedHashSet<String>(_group);
+        for (List<String> metricProperties : _metrics.values())
+        {
+            properties.addAll(metricProperties);
+        }
+        return properties;
+    }
+
+    /**
+     * Return the name of the result value for a metric.
+     *
+     * @param function the metric function.
+     * @param property the name of the property the function is applied to.
+     * @return the name of the result value, e.g. "sum(msgDepth)".
+     */
+    public static String getMetricName(final String function, final String property)
+    {
+        return function + "(" + property + ")";
+    }
+}
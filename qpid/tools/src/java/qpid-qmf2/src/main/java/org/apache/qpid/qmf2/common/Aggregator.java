@@ -0,0 +1,233 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.common;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An Aggregator computes the results described by an Aggregate in a single pass, it is used by the Agent to
+ * aggregate the objects matching a QmfQuery and by the Console to merge the results returned by many Agents.
+ * <p>
+ * Objects are added via add(), which takes the object's property values, and results produced by another
+ * Aggregator for the same Aggregate are combined via merge(). Each result is a Map of values containing the group
+ * property values, the Aggregate.COUNT of objects in the group and a "function(property)" value for each metric.
+ * <p>
+ * Sums of integral properties are Longs, if any of the values summed is floating point the sum is a Double. Minimum
+ * and maximum values retain the type of the property. Non numeric metric property values are ignored and a metric
+ * with no numeric values is omitted from the result.
+ * <p>
+ * An Aggregator isn't thread safe.
+ */
+public final class Aggregator
+{
+    /**
+     * Accumulates a single metric for a single group.
+     */
+    private static final class Metric
+    {
+        private final String _function;
+        private boolean _integral = true;
+        private long _longSum = 0;
+        private double _doubleSum = 0.0d;
+        private Number _value = null;
+
+        Metric(final String function)
+        {
+            _function = function;
+        }
+
+        /**
+         * Accumulate a property value, or merge a result value produced by another Aggregator, as sum, min and
+         * max combine in the same way in either case.
+         */
+        void accumulate(final Object value)
+        {
+            if (!(value instanceof Number))
+            {
+                return;
+            }
+
+            Number number = (Number)value;
+            boolean integral = !(number instanceof Double || number instanceof Float);
+            if (_function.equals("sum"))
+            {
+                _integral = _integral && integral;
+                _longSum += number.longValue();
+                _doubleSum += number.doubleValue();
+                _value = _integral ? (Number)_longSum : (Number)_doubleSum;
+            }
+            else if (_value == null)
+            {
+                _value = number;
+            }
+            else
+            {
+                int comparison = (integral && !(_value instanceof Double || _value instanceof Float)) ?
+                    Long.compare(number.longValue(), _value.longValue()) :
+                    Double.compare(number.doubleValue(), _value.doubleValue());
+                if ((_function.equals("min") && comparison < 0) || (_function.equals("max") && comparison > 0))
+                {
+                    _value = number;
+                }
+            }
+        }
+
+        Number getValue()
+        {
+            return _value;
+        }
+    }
+
+    /**
+     * The results for a single group.
+     */
+    private static final class Group
+    {
+        private final Map<String, Object> _groupValues = new LinkedHashMap<String, Object>();
+        private final Map<String, Metric> _metrics = new LinkedHashMap<String, Metric>();
+        private long _count = 0;
+    }
+
+    private final List<String> _group;
+    private final List<String[]> _metrics = new ArrayList<String[]>();
+    private final Map<List<Object>, Group> _groups = new LinkedHashMap<List<Object>, Group>();
+
+    /**
+     * Construct an Aggregator for the given Aggregate.
+     * @param aggregate the Aggregate describing the results to compute.
+     */
+    public Aggregator(final Aggregate aggregate)
+    {
+        _group = aggregate.getGroup();
+        for (Map.Entry<String, List<String>> entry : aggregate.getMetrics().entrySet())
+        {
+            for (String property : entry.getValue())
+            {
+                String function = entry.getKey();
+                _metrics.add(new String[] {function, property, Aggregate.getMetricName(function, property)});
+            }
+        }
+    }
+
+    /**
+     * Return the key used to group a value. Binary strings are compared as Strings and references as ObjectIds, as
+     * their Map and byte[] forms don't compare by value.
+     */
+    private static Object getKey(final Object value)
+    {
+        if (value instanceof byte[])
+        {
+            return QmfData.getString(value);
+        }
+        else if (value instanceof Map && ((Map)value).containsKey("_object_name"))
+        {
+            return new ObjectId((Map)value);
+        }
+        return value;
+    }
+
+    /**
+     * Return the Group for the given values, creating it if necessary.
+     */
+    private Group getGroup(final Map<String, Object> values)
+    {
+        Object[] key = new Object[_group.size()];
+        for (int i = 0; i < key.length; i++)
+        {
+            key[i] = getKey(values.get(_group.get(i)));
+        }
+
+        List<Object> groupKey = Arrays.asList(key);
+        Group group = _groups.get(groupKey);
+        if (group == null)
+        {
+            group = new Group();
+            for (String property : _group)
+            {
+                group._groupValues.put(property, values.get(property));
+            }
+            for (String[] metric : _metrics)
+            {
+                group._metrics.put(metric[2], new Metric(metric[0]));
+            }
+            _groups.put(groupKey, group);
+        }
+        return group;
+    }
+
+    /**
+     * Add an object to the aggregation.
+     * @param values the object's property values.
+     */
+    public void add(final Map<String, Object> values)
+    {
+        Group group = getGroup(values);
+        group._count++;
+        for (String[] metric : _metrics)
+        {
+            group._metrics.get(metric[2]).accumulate(values.get(metric[1]));
+        }
+    }
+
+    /**
+     * Merge a result produced by another Aggregator for the same Aggregate.
+     * @param result the result values to merge.
+     */
+    public void merge(final Map<String, Object> result)
+    {
+        Group group = getGroup(result);
+        group._count += QmfData.getLong(result.get(Aggregate.COUNT));
+        for (String[] metric : _metrics)
+        {
+            group._metrics.get(metric[2]).accumulate(result.get(metric[2]));
+        }
+    }
+
+    /**
+     * Return the results, one for each group in the order the groups were first seen.
+     * @return the results as Maps of values.
+     */
+    public List<Map<String, Object>> getResults()
+    {
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>(_groups.size());
+        for (Group group : _groups.values())
+        {
+            Map<String, Object> result = new HashMap<String, Object>(group._groupValues);
+            result.put(Aggregate.COUNT, group._count);
+            for (Map.Entry<String, Metric> entry : group._metrics.entrySet())
+            {
+                Number value = entry.getValue().getValue();
+                if (value != null)
+                {
+                    result.put(entry.getKey(), value);
+                }
+            }
+            results.add(result);
+        }
+        return results;
+    }
+}
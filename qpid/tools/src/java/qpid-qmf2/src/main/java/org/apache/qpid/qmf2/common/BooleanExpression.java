@@ -29,14 +29,61 @@ import java.util.Map;
 
 /**
  * This class represents the base class for all Boolean Expressions created by expanding the Query predicate.
+ * <p>
+ * Constructing a BooleanExpression effectively "compiles" its operands. Literal operands are parsed once, so that
+ * their numeric (long or double) form is known up front, and key operands are recorded so the property can be looked
+ * up directly from the QmfData being evaluated. Evaluation compares the property values in their native types where
+ * possible, so numeric properties aren't round-tripped through Strings, and no state is written during evaluation
+ * so a single BooleanExpression (and hence a single QmfQuery) may safely be evaluated from multiple threads.
+ * <p>
+ * The comparison semantics are unchanged: equality is equality of the String forms of the operands (integral and
+ * double values are compared directly where that is equivalent) and the relational operators compare numerically
+ * if both operands are numeric, otherwise lexicographically.
  *
  * @author Fraser Adams
  */
 public abstract class BooleanExpression extends Expression
 {
+    /**
+     * Returned by matchOperands() if the operands are equal.
+     */
+    protected static final int MATCH = 0;
+
+    /**
+     * Returned by matchOperands() if the operands are not equal.
+     */
+    protected static final int NO_MATCH = 1;
+
+    /**
+     * Returned by compareOperands() and matchOperands() if the operands can't be compared, e.g. one is missing.
+     */
+    protected static final int INCOMPARABLE = Integer.MIN_VALUE;
+
     private static Map<String, BooleanExpression> _factories = new HashMap<String, BooleanExpression>();
-    protected String[] _operands;
-    private String[] _keys;
+
+    /**
+     * The String form of each literal operand, null where the operand is a key.
+     */
+    protected final String[] _operands;
+
+    /**
+     * The key of each key operand, null where the operand is a literal.
+     */
+    private final String[] _keys;
+
+    /**
+     * The value of each literal operand used for equality, a Long or Double where that's exactly equivalent to
+     * the literal's String form, otherwise the String itself.
+     */
+    private final Object[] _values;
+
+    /**
+     * The numeric form of each literal operand used by the relational operators.
+     */
+    private final boolean[] _integral;
+    private final long[] _longs;
+    private final boolean[] _numeric;
+    private final double[] _doubles;
 
     /**
      * Initialise the _factories Map, which contains the prototype instances of each concrete BooleanExpression
@@ -93,6 +140,22 @@ public abstract class BooleanExpression extends Expression
      */
     protected BooleanExpression()
     {
+        this(0);
+    }
+
+    /**
+     * Allocate the operand arrays.
+     * @param operandCount the number of operands in this Expression.
+     */
+    private BooleanExpression(final int operandCount)
+    {
+        _operands = new String[operandCount];
+        _keys = new String[operandCount];
+        _values = new Object[operandCount];
+        _integral = new boolean[operandCount];
+        _longs = new long[operandCount];
+        _numeric = new boolean[operandCount];
+        _doubles = new double[operandCount];
     }
 
     /**
@@ -101,18 +164,19 @@ public abstract class BooleanExpression extends Expression
      * obtain a propery from the QmfData object. If the Object is a sub-List it is checked to see if it's a quoted
      * String, if it is the quoted String is stored as the operand. If it's neither of these the actual object from
      * the expression List is used as the operand.
+     * <p>
+     * The numeric forms of any literal operands are resolved here, once, rather than on every evaluation.
      *
      * @param operandCount the number of operands in this Expression, the value is generally passed by the subclass.
      * @param expr the List of Expressions extracted by parsing the Query predicate
      */
     protected BooleanExpression(final int operandCount, final List expr) throws QmfException
     {
+        this(operandCount);
+
         Iterator iter = expr.listIterator();
         String op = (String)iter.next(); // We've already tested for hasNext() in the factory
 
-        _operands = new String[operandCount];
-        _keys = new String[operandCount];
-
         for (int i = 0; i < operandCount; i++)
         {
             if (!iter.hasNext())
@@ -149,6 +213,11 @@ public abstract class BooleanExpression extends Expression
                     throw new QmfException("Expected '[quote, <token>]'");
                 }
             }
+
+            if (_keys[i] == null)
+            {
+                compileLiteral(i);
+            }
         }
 
         if (iter.hasNext())
@@ -158,57 +227,244 @@ public abstract class BooleanExpression extends Expression
     }
 
     /**
-     * Populates operands that are obtained at evaluation time. In other words operands that are obtained by using
-     * the key obtained from the static operand evaluation to look up an associated property from the QmfData object.
-     * @param data the object to extract the operand(s) from
+     * Resolve the numeric forms of the literal operand at the given index.
+     * @param i the operand index.
+     */
+    private void compileLiteral(final int i)
+    {
+        String literal = _operands[i];
+        _values[i] = literal;
+        if (literal == null)
+        {
+            return;
+        }
+
+        try
+        {
+            _longs[i] = Long.parseLong(literal);
+            _integral[i] = true;
+        }
+        catch (NumberFormatException nfe)
+        {
+            _integral[i] = false;
+        }
+
+        try
+        {
+            _doubles[i] = Double.parseDouble(literal);
+            _numeric[i] = true;
+        }
+        catch (NumberFormatException nfe)
+        {
+            _numeric[i] = false;
+        }
+
+        // Only use the numeric value for equality if it's exactly equivalent to comparing the String forms.
+        if (_integral[i] && Long.toString(_longs[i]).equals(literal))
+        {
+            _values[i] = _longs[i];
+        }
+        else if (_numeric[i] && Double.toString(_doubles[i]).equals(literal))
+        {
+            _values[i] = _doubles[i];
+        }
+    }
+
+    /**
+     * Return true if the operand at the given index is a key that is looked up from the QmfData at evaluation time.
+     * @param i the operand index.
+     * @return true if the operand at the given index is a key.
      */
-    protected void populateOperands(final QmfData data)
+    protected final boolean isKey(final int i)
     {
-        for (int i = 0; i < _operands.length; i++)
+        return _keys[i] != null;
+    }
+
+    /**
+     * Return the value of an operand. For literal operands this is the pre-compiled literal value, for key operands
+     * the key is used to look up the associated property from the QmfData object, in its native type.
+     *
+     * @param i the operand index.
+     * @param data the object to extract the operand from.
+     * @return the operand value or null if the property doesn't exist.
+     */
+    protected final Object getOperand(final int i, final QmfData data)
+    {
+        String key = _keys[i];
+        if (key == null)
+        {
+            return _values[i];
+        }
+
+        if (data.hasValue(key))
+        { // If there's a property of the data object named key use its value
+            Object value = data.getValue(key);
+            return (value == null) ? "" : value;
+        }
+
+        // If there's no property of the data object named key look up its Described/Managed metadata
+        String value = null;
+        if (data instanceof QmfManaged)
         {
-            String key = _keys[i];
-            if (key != null)
+            QmfManaged managedData = (QmfManaged)data;
+            if (key.equals("_schema_id"))
+            {
+                value = managedData.getSchemaClassId().toString();
+            }
+            else if (key.equals("_object_id"))
             {
-                String value = null;
+                value = managedData.getObjectId().toString();
+            }
+            else if (managedData.getSchemaClassId().hasValue(key))
+            { // If it's not _schema_id or _object_id check the SchemaClassId properties e.g. 
+              // _package_name, _class_name, _type or _hash
+                value = managedData.getSchemaClassId().getStringValue(key);
+            }
+        }
 
-                if (data.hasValue(key))
-                { // If there's a property of the data object named key look it up as a String
-                    value = data.getStringValue(key);
-                }
-                else
-                { // If there's no property of the data object named key look up its Described/Managed metadata
-                    if (data instanceof QmfManaged)
-                    {
-                        QmfManaged managedData = (QmfManaged)data;
-                        if (key.equals("_schema_id"))
-                        {
-                            value = managedData.getSchemaClassId().toString();
-                        }
-                        else if (key.equals("_object_id"))
-                        {
-                            value = managedData.getObjectId().toString();
-                        }
-                        else if (managedData.getSchemaClassId().hasValue(key))
-                        { // If it's not _schema_id or _object_id check the SchemaClassId properties e.g. 
-                          // _package_name, _class_name, _type or _hash
-                            value = managedData.getSchemaClassId().getStringValue(key);
-                        }
-                    }
+        if (value == null)
+        { // If a value still can't be found for the key check if it's available in the mapEncoded form
+            Map m = data.mapEncode();
+            if (m.containsKey(key))
+            {
+                value = QmfData.getString(m.get(key));
+            }
+        }
+        return value;
+    }
 
-                    if (value == null)
-                    { // If a value still can't be found for the key check if it's available in the mapEncoded form
-                        Map m = data.mapEncode();
-                        if (m.containsKey(key))
-                        {
-                            value = QmfData.getString(m.get(key));
-                        }
-                    }
-                }
+    /**
+     * Return the String form of an operand value.
+     * @param i the operand index.
+     * @param value the operand value returned by getOperand().
+     * @return the String form of the operand value.
+     */
+    protected final String getStringOperand(final int i, final Object value)
+    {
+        return (_keys[i] == null) ? _operands[i] : QmfData.getString(value);
+    }
+
+    /**
+     * Test the first two operands for equality.
+     * @param data the object to evaluate the expression against.
+     * @return MATCH, NO_MATCH or INCOMPARABLE if either operand is missing.
+     */
+    protected final int matchOperands(final QmfData data)
+    {
+        Object l = getOperand(0, data);
+        Object r = getOperand(1, data);
+        if (l == null || r == null)
+        {
+            return INCOMPARABLE;
+        }
+
+        if (isIntegral(l) && isIntegral(r))
+        {
+            return (((Number)l).longValue() == ((Number)r).longValue()) ? MATCH : NO_MATCH;
+        }
+
+        if (l instanceof Double && r instanceof Double)
+        {
+            return l.equals(r) ? MATCH : NO_MATCH;
+        }
+
+        return getStringOperand(0, l).equals(getStringOperand(1, r)) ? MATCH : NO_MATCH;
+    }
+
+    /**
+     * Compare the first two operands, numerically if both are numeric otherwise lexicographically.
+     * @param data the object to evaluate the expression against.
+     * @return -1, 0 or 1 as the first operand is less than, equal to, or greater than the second operand or
+     *         INCOMPARABLE if either operand is missing (or NaN).
+     */
+    protected final int compareOperands(final QmfData data)
+    {
+        Object l = getOperand(0, data);
+        Object r = getOperand(1, data);
+        if (l == null || r == null)
+        {
+            return INCOMPARABLE;
+        }
+
+        if (isIntegral(0, l) && isIntegral(1, r))
+        {
+            long lv = (_keys[0] == null) ? _longs[0] : ((Number)l).longValue();
+            long rv = (_keys[1] == null) ? _longs[1] : ((Number)r).longValue();
+            return (lv < rv) ? -1 : ((lv == rv) ? 0 : 1);
+        }
 
-                _operands[i] = value;
+        if (isNumeric(0, l) && isNumeric(1, r))
+        {
+            try
+            {
+                double lv = getDoubleOperand(0, l);
+                double rv = getDoubleOperand(1, r);
+                if (lv < rv)
+                {
+                    return -1;
+                }
+                if (lv > rv)
+                {
+                    return 1;
+                }
+                return (lv == rv) ? 0 : INCOMPARABLE;
+            }
+            catch (NumberFormatException nfe)
+            { // If converting to double fails fall through to a lexicographic comparison
             }
-//System.out.println("key: " + key + ", operand = " + _operands[i]);
         }
+
+        int result = getStringOperand(0, l).compareTo(getStringOperand(1, r));
+        return (result < 0) ? -1 : ((result == 0) ? 0 : 1);
+    }
+
+    /**
+     * Return true if the value is one of the integral Number types.
+     * @param value the value to check.
+     * @return true if the value is one of the integral Number types.
+     */
+    private static boolean isIntegral(final Object value)
+    {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * Return true if the operand value has an exact long representation.
+     * @param i the operand index.
+     * @param value the operand value returned by getOperand().
+     * @return true if the operand value has an exact long representation.
+     */
+    private boolean isIntegral(final int i, final Object value)
+    {
+        return (_keys[i] == null) ? _integral[i] : isIntegral(value);
+    }
+
+    /**
+     * Return true if the operand value might be numeric. Property values that are Strings may still fail to parse.
+     * @param i the operand index.
+     * @param value the operand value returned by getOperand().
+     * @return true if the operand value might be numeric.
+     */
+    private boolean isNumeric(final int i, final Object value)
+    {
+        return (_keys[i] == null) ? _numeric[i] :
+               (value instanceof Number || value instanceof String || value instanceof byte[]);
+    }
+
+    /**
+     * Return the double form of an operand value.
+     * @param i the operand index.
+     * @param value the operand value returned by getOperand().
+     * @return the double form of the operand value.
+     * @throws NumberFormatException if a String property value doesn't parse as a double.
+     */
+    private double getDoubleOperand(final int i, final Object value)
+    {
+        if (_keys[i] == null)
+        {
+            return _doubles[i];
+        }
+        return (value instanceof Number) ? ((Number)value).doubleValue() : Double.parseDouble(QmfData.getString(value));
     }
 
     /**
@@ -218,4 +474,3 @@ public abstract class BooleanExpression extends Expression
      */
     public abstract boolean evaluate(final QmfData data);
 }
-
@@ -48,9 +48,10 @@ public final class LogicalAnd extends LogicalExpression
      */
     public boolean evaluate(final QmfData data)
     {
-        for (Expression e : _subExpressions)
+        // Indexed loop rather than for-each to avoid allocating an Iterator on every evaluation
+        for (int i = 0; i < _subExpressions.size(); i++)
         {
-            if (!e.evaluate(data))
+            if (!_subExpressions.get(i).evaluate(data))
             {
                 return false;
             }
@@ -32,7 +32,7 @@ import java.util.List;
  */
 public abstract class LogicalExpression extends Expression
 {
-    protected List<Expression> _subExpressions = new ArrayList<Expression>();
+    protected final List<Expression> _subExpressions = new ArrayList<Expression>();
 
     /**
      * Constructor. This method iterates through collecting the sub-expressions of the Logical Expression
@@ -21,6 +21,7 @@
 package org.apache.qpid.qmf2.common;
 
 // Misc Imports
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -30,15 +31,24 @@ import java.util.Map;
  * as byte[] due to inconsistent binary and UTF-8 encodings being used and byte[].equals() compares the address not a
  * bytewise comparison.
  * <p>
- * This class creates a String from the internal ObjectId state information to enable easier comparison and rendering.
+ * ObjectIds are heavily used as HashMap keys, so the hashCode is computed once from the internal ObjectId state
+ * and equals() compares that state directly rather than rendering and comparing Strings. The Map form is only
+ * created when it is first needed, e.g. by mapEncode(), for ObjectIds that weren't themselves decoded from a Map.
+ * <p>
+ * Consoles that decode the same ObjectIds repeatedly may install an ObjectIdPool via setInternPool(), after which
+ * decoded ObjectIds are replaced by canonical instances.
  *
  * @author Fraser Adams
  */
 public final class ObjectId extends QmfData
 {
+    private static volatile ObjectIdPool _internPool = null;
+
     private final String _agentName;
     private final String _objectName;
     private final long   _agentEpoch;
+    private final int    _hashCode;
+    private String _string = null;
 
     /**
      * Create an ObjectId given the ID created via ObjectId.toString().
@@ -46,15 +56,13 @@ public final class ObjectId extends QmfData
      */
     public ObjectId(String oid)
     {
+        super(null, null);
         String[] split = oid.split("@");
 
         _agentName  = split.length == 3 ? split[0] : "";
         _agentEpoch = split.length == 3 ? Long.parseLong(split[1]) : 0;
         _objectName = split.length == 3 ? split[2] : "";
-
-        setValue("_agent_name", _agentName);
-        setValue("_agent_epoch", _agentEpoch);
-        setValue("_object_name", _objectName);
+        _hashCode = computeHashCode();
     }
 
     /**
@@ -65,12 +73,11 @@ public final class ObjectId extends QmfData
      */
     public ObjectId(String agentName, String objectName, long agentEpoch)
     {
+        super(null, null);
         _agentName = agentName;
         _objectName = objectName;
         _agentEpoch = agentEpoch;
-        setValue("_agent_name", _agentName);
-        setValue("_object_name", _objectName);
-        setValue("_agent_epoch", _agentEpoch);
+        _hashCode = computeHashCode();
     }
 
     /**
@@ -80,9 +87,11 @@ public final class ObjectId extends QmfData
     public ObjectId(Map m)
     {
         super(m);
-        _agentName = getStringValue("_agent_name");
-        _objectName = getStringValue("_object_name");
-        _agentEpoch = getLongValue("_agent_epoch");
+        // Read the decoded Map directly rather than via the synchronized values().
+        _agentName = getString(_values.get("_agent_name"));
+        _objectName = getString(_values.get("_object_name"));
+        _agentEpoch = getLong(_values.get("_agent_epoch"));
+        _hashCode = computeHashCode();
     }
 
     /**
@@ -94,6 +103,66 @@ public final class ObjectId extends QmfData
         this(qmfd.mapEncode());
     }
 
+    /**
+     * Install the ObjectIdPool used to intern decoded ObjectIds, or remove it by passing null (the default).
+     * @param pool the ObjectIdPool used to intern decoded ObjectIds, null disables interning.
+     */
+    public static void setInternPool(final ObjectIdPool pool)
+    {
+        _internPool = pool;
+    }
+
+    /**
+     * Return the ObjectIdPool used to intern decoded ObjectIds.
+     * @return the ObjectIdPool used to intern decoded ObjectIds or null if interning is disabled.
+     */
+    public static ObjectIdPool getInternPool()
+    {
+        return _internPool;
+    }
+
+    /**
+     * Return the canonical instance of the given ObjectId if an ObjectIdPool has been installed, otherwise return
+     * the ObjectId itself.
+     * @param oid the ObjectId to intern.
+     * @return the canonical ObjectId equal to oid.
+     */
+    public static ObjectId intern(final ObjectId oid)
+    {
+        ObjectIdPool pool = _internPool;
+        return (pool == null || oid == null) ? oid : pool.intern(oid);
+    }
+
+    /**
+     * Compute the hashCode from the ObjectId state, the names may be null if constructed from incomplete state.
+     */
+    private int computeHashCode()
+    {
+        int hash = (_agentName == null) ? 0 : _agentName.hashCode();
+        hash = 31*hash + (int)(_agentEpoch ^ (_agentEpoch >>> 32));
+        hash = 31*hash + ((_objectName == null) ? 0 : _objectName.hashCode());
+        return hash;
+    }
+
+    /**
+     * Return the Map holding the ObjectId state, creating it on first use for ObjectIds that weren't decoded from
+     * a Map. Synchronized so that the lazily created Map is safely published to other threads.
+     * @return the Map holding the ObjectId state.
+     */
+    @Override
+    protected synchronized Map<String, Object> values()
+    {
+        if (_values == null)
+        {
+            Map<String, Object> values = new HashMap<String, Object>(4);
+            values.put("_agent_name", _agentName);
+            values.put("_object_name", _objectName);
+            values.put("_agent_epoch", _agentEpoch);
+            _values = values;
+        }
+        return _values;
+    }
+
     /**
      * Returns the name of the Agent managing the object.
      * @return the name of the Agent managing the object.
@@ -129,13 +198,28 @@ public final class ObjectId extends QmfData
     @Override
     public boolean equals(Object rhs)
     {
+        if (rhs == this)
+        {
+            return true;
+        }
+
         if (rhs instanceof ObjectId)
         {
-            return toString().equals(rhs.toString());
+            ObjectId oid = (ObjectId)rhs;
+            return _hashCode == oid._hashCode && _agentEpoch == oid._agentEpoch &&
+                   equal(_objectName, oid._objectName) && equal(_agentName, oid._agentName);
         }
         return false;
     }
 
+    /**
+     * Null safe String comparison.
+     */
+    private static boolean equal(final String lhs, final String rhs)
+    {
+        return (lhs == null) ? rhs == null : lhs.equals(rhs);
+    }
+
     /**
      * Returns the ObjectId hashCode.
      * @return the ObjectId hashCode.
@@ -143,7 +227,7 @@ public final class ObjectId extends QmfData
     @Override
     public int hashCode()
     {
-        return toString().hashCode();
+        return _hashCode;
     }
 
     /**
@@ -153,7 +237,13 @@ public final class ObjectId extends QmfData
     @Override
     public String toString()
     {
-        return _agentName + "@" +  _agentEpoch + "@" + _objectName;
+        // Racy but benign, Strings are immutable so at worst the String gets rendered more than once.
+        String string = _string;
+        if (string == null)
+        {
+            string = _agentName + "@" +  _agentEpoch + "@" + _objectName;
+            _string = string;
+        }
+        return string;
     }
 }
-
@@ -0,0 +1,115 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.common;
+
+// Misc Imports
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An ObjectIdPool holds canonical ObjectId instances, in the same spirit as String.intern().
+ * <p>
+ * A Console that repeatedly polls large numbers of objects decodes the same ObjectIds over and over again, both as
+ * the _object_id of each QmfConsoleData and as reference properties such as queueRef, sessionRef and exchangeRef.
+ * Interning these means that equal ObjectIds are shared rather than retained as many separate copies, and that
+ * HashMaps keyed by ObjectId mostly find their keys by reference.
+ * <p>
+ * The pool is bounded, when it reaches its maximum size it is simply cleared so that ObjectIds belonging to
+ * objects that have since been deleted don't accumulate, the pool then refills with the ObjectIds still in use.
+ * <p>
+ * Interning is disabled by default, it is enabled by installing a pool via ObjectId.setInternPool().
+ */
+public final class ObjectIdPool
+{
+    /**
+     * The default maximum number of ObjectIds held by the pool.
+     */
+    public static final int DEFAULT_MAX_SIZE = 100000;
+
+    private final ConcurrentHashMap<ObjectId, ObjectId> _pool = new ConcurrentHashMap<ObjectId, ObjectId>();
+    private final int _maxSize;
+
+    /**
+     * Construct an ObjectIdPool holding at most DEFAULT_MAX_SIZE ObjectIds.
+     */
+    public ObjectIdPool()
+    {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Construct an ObjectIdPool holding at most the given number of ObjectIds.
+     * @param maxSize the maximum number of ObjectIds held by the pool.
+     */
+    public ObjectIdPool(final int maxSize)
+    {
+        _maxSize = (maxSize < 1) ? 1 : maxSize;
+    }
+
+    /**
+     * Return the canonical instance of the given ObjectId, adding it to the pool if there isn't one already.
+     * @param oid the ObjectId to intern.
+     * @return the canonical ObjectId equal to oid.
+     */
+    public ObjectId intern(final ObjectId oid)
+    {
+        ObjectId canonical = _pool.get(oid);
+        if (canonical != null)
+        {
+            return canonical;
+        }
+
+        if (_pool.size() >= _maxSize)
+        {
+            _pool.clear();
+        }
+
+        canonical = _pool.putIfAbsent(oid, oid);
+        return (canonical == null) ? oid : canonical;
+    }
+
+    /**
+     * Return the canonical ObjectId for the given Map encoded ObjectId.
+     * @param m the Map encoded ObjectId.
+     * @return the canonical ObjectId.
+     */
+    public ObjectId intern(final Map m)
+    {
+        return intern(new ObjectId(m));
+    }
+
+    /**
+     * Return the number of ObjectIds currently held by the pool.
+     * @return the number of ObjectIds currently held by the pool.
+     */
+    public int size()
+    {
+        return _pool.size();
+    }
+
+    /**
+     * Remove all ObjectIds from the pool.
+     */
+    public void clear()
+    {
+        _pool.clear();
+    }
+}
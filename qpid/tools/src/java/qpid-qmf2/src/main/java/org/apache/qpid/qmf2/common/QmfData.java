@@ -83,6 +83,30 @@ public class QmfData
         }   
     }
 
+    /**
+     * Package scope constructor that adopts the supplied Maps as they are. Subclasses that build their Map lazily
+     * (such as ObjectId) pass a null values Map and override values().
+     *
+     * @param values the Map of property values, may be null if values() is overridden.
+     * @param subtypes the Map of property subtypes, may be null.
+     */
+    QmfData(final Map<String, Object> values, final Map<String, String> subtypes)
+    {
+        _values = values;
+        _subtypes = subtypes;
+    }
+
+    /**
+     * Return the Map holding the property values, all of the accessor and mutator methods go via this method so
+     * that subclasses may create the Map on demand.
+     *
+     * @return the Map holding the property values.
+     */
+    protected Map<String, Object> values()
+    {
+        return _values;
+    }
+
     /**
      * Get the state of the _subtypes Map, (generally used when serialising method request/response arguments.
      *
@@ -247,7 +271,7 @@ public class QmfData
      */
     public final boolean hasValue(final String name)
     {
-        return _values.containsKey(name);
+        return values().containsKey(name);
     }
 
     /**
@@ -259,7 +283,7 @@ public class QmfData
     @SuppressWarnings("unchecked")
     public final <T> T getValue(final String name)
     {
-        return (T)_values.get(name);
+        return (T)values().get(name);
     }
 
     /**
@@ -270,7 +294,7 @@ public class QmfData
      */
     public final void setValue(final String name, final Object value)
     {
-        _values.put(name, value);
+        values().put(name, value);
     }
 
     /**
@@ -366,11 +390,14 @@ public class QmfData
      * Many QMF Objects contain reference properties, e.g. references to other QMF Objects.
      * This method allows these to be obtained as ObjectId objects to enable much easier
      * comparison and rendering.
+     * <p>
+     * If an ObjectIdPool has been installed via ObjectId.setInternPool() the canonical instance is returned, so the
+     * many references to the same object (queueRef, sessionRef, exchangeRef etc.) share a single ObjectId.
      * @return the retrieved value as an ObjectId instance.
      */
     public final ObjectId getRefValue(final String name)
     {
-        return new ObjectId((Map)getValue(name));
+        return ObjectId.intern(new ObjectId((Map)getValue(name)));
     }
 
     /**
@@ -409,7 +436,7 @@ public class QmfData
      */
     public Map<String, Object> mapEncode()
     {
-        return _values;
+        return values();
     }
 
     /**
@@ -417,7 +444,7 @@ public class QmfData
      */
     public void listValues()
     {
-        for (Map.Entry<String, Object> entry : _values.entrySet())
+        for (Map.Entry<String, Object> entry : values().entrySet())
         {
             Object key = entry.getKey();
             Object value = entry.getValue();
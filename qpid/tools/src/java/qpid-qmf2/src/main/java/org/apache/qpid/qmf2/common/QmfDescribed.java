@@ -35,6 +35,12 @@ public class QmfDescribed extends QmfData
 {
     private SchemaClassId _schema_id;
 
+    /**
+     * The undecoded _schema_id Map of a lazily decoded object, null once decoded. It's volatile and cleared after
+     * _schema_id is set so that a thread that sees it cleared also sees the decoded SchemaClassId.
+     */
+    private volatile Map _schemaIdMap;
+
     /**
      * The default constructor, initialises the underlying QmfData base class with an empty Map
      */
@@ -48,9 +54,31 @@ public class QmfDescribed extends QmfData
      * @param m the map used to construct the QmfDescribed
      */
     public QmfDescribed(final Map m)
+    {
+        this(m, false);
+    }
+
+    /**
+     * Constructor taking a java.util.Map as a parameter, optionally deferring the decoding of the SchemaClassId
+     * until it is first accessed.
+     *
+     * @param m the map used to construct the QmfDescribed
+     * @param lazy if true the SchemaClassId is decoded on first access rather than during construction.
+     */
+    protected QmfDescribed(final Map m, final boolean lazy)
     {
         super(m);
-        _schema_id = (m == null) ? null : new SchemaClassId((Map)m.get("_schema_id"));
+        if (m != null)
+        {
+            if (lazy)
+            {
+                _schemaIdMap = (Map)m.get("_schema_id");
+            }
+            else
+            {
+                _schema_id = new SchemaClassId((Map)m.get("_schema_id"));
+            }
+        }
     }
 
     /**
@@ -59,6 +87,14 @@ public class QmfDescribed extends QmfData
      */
     public final SchemaClassId getSchemaClassId()
     {
+        Map m = _schemaIdMap;
+        if (m != null)
+        { // Racy but benign, at worst two threads both decode equal SchemaClassIds.
+            SchemaClassId schema_id = new SchemaClassId(m);
+            _schema_id = schema_id;
+            _schemaIdMap = null;
+            return schema_id;
+        }
         return _schema_id;
     }
 
@@ -69,6 +105,7 @@ public class QmfDescribed extends QmfData
     public final void setSchemaClassId(final SchemaClassId schema_id)
     {
         _schema_id = schema_id;
+        _schemaIdMap = null;
     }
 
     /**
@@ -78,7 +115,7 @@ public class QmfDescribed extends QmfData
     public void listValues()
     {
         super.listValues();
-        _schema_id.listValues();
+        getSchemaClassId().listValues();
     }
 }
 
@@ -34,6 +34,12 @@ public class QmfManaged extends QmfDescribed
 {
     private ObjectId _object_id;
 
+    /**
+     * The undecoded _object_id Map of a lazily decoded object, null once decoded. It's volatile and cleared after
+     * _object_id is set so that a thread that sees it cleared also sees the decoded ObjectId.
+     */
+    private volatile Map _objectIdMap;
+
     /**
      * The default constructor, initialises the underlying QmfData base class with an empty Map
      */
@@ -48,8 +54,30 @@ public class QmfManaged extends QmfDescribed
      */
     public QmfManaged(final Map m)
     {
-        super(m);
-        _object_id = (m == null) ? null : new ObjectId((Map)m.get("_object_id"));
+        this(m, false);
+    }
+
+    /**
+     * Constructor taking a java.util.Map as a parameter, optionally deferring the decoding of the ObjectId and
+     * SchemaClassId until they are first accessed.
+     *
+     * @param m the map used to construct the QmfManaged
+     * @param lazy if true the ObjectId and SchemaClassId are decoded on first access rather than during construction.
+     */
+    protected QmfManaged(final Map m, final boolean lazy)
+    {
+        super(m, lazy);
+        if (m != null)
+        {
+            if (lazy)
+            {
+                _objectIdMap = (Map)m.get("_object_id");
+            }
+            else
+            {
+                _object_id = ObjectId.intern(new ObjectId((Map)m.get("_object_id")));
+            }
+        }
     }
 
     /**
@@ -58,6 +86,14 @@ public class QmfManaged extends QmfDescribed
      */
     public final ObjectId getObjectId()
     {
+        Map m = _objectIdMap;
+        if (m != null)
+        { // Racy but benign, at worst two threads both decode equal ObjectIds.
+            ObjectId object_id = ObjectId.intern(new ObjectId(m));
+            _object_id = object_id;
+            _objectIdMap = null;
+            return object_id;
+        }
         return _object_id;
     }
 
@@ -68,6 +104,7 @@ public class QmfManaged extends QmfDescribed
     public final void setObjectId(final ObjectId object_id)
     {
         _object_id = object_id;
+        _objectIdMap = null;
     }
 
     /**
@@ -22,6 +22,9 @@ package org.apache.qpid.qmf2.common;
 
 // Misc Imports
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -84,7 +87,45 @@ import org.apache.qpid.messaging.util.AddressParser;
  * <p>
  * The Expression structure is illustrated below in the context of its relationship with QmfQuery. 
  * <img alt="" src="doc-files/QmfQuery.png">
- *
+ * <p>
+ * <b>Projection</b>
+ * <p>
+ * By default an Agent returns every property of each matching object. A query may instead carry a projection, set
+ * via setSelect() and encoded as the "_select" list, naming the properties that should be returned, for example:
+ * <pre>
+ * QmfQuery query = new QmfQuery(QmfQueryTarget.OBJECT, new SchemaClassId("queue"));
+ * query.setSelect("name", "msgDepth");
+ * List&lt;QmfConsoleData&gt; queues = console.getObjects(query);
+ * </pre>
+ * "_select" is an extension to the QMF2 protocol, Agents that don't support it simply return every property.
+ * <p>
+ * <b>Aggregation</b>
+ * <p>
+ * A query may also carry an Aggregate, set via setAggregate() and encoded as the "_aggregate" map, in which case
+ * the Agent returns aggregated results (counts, sums, minimums and maximums, optionally grouped by property values)
+ * over the matching objects rather than the objects themselves, see Aggregate and Console.aggregate().
+ * <p>
+ * <b>Ordering and Limits</b>
+ * <p>
+ * A query may carry an ordering, set via setOrderBy() and encoded as the "_order_by" property name and the
+ * "_descending" flag, and a limit, set via setLimit() and encoded as "_limit". The Agent keeps only the best
+ * "_limit" matches as it evaluates the query, so only those objects are encoded and sent, for example the ten
+ * deepest queues may be retrieved with:
+ * <pre>
+ * QmfQuery query = new QmfQuery(QmfQueryTarget.OBJECT, new SchemaClassId("queue"));
+ * query.setOrderBy("msgDepth", true);
+ * query.setLimit(10);
+ * List&lt;QmfConsoleData&gt; queues = console.getObjects(query);
+ * </pre>
+ * These are also extensions to the QMF2 protocol, for Agents that don't support them the Console applies the
+ * ordering and limit to the returned objects instead.
+ * <p>
+ * <b>Incremental Queries</b>
+ * <p>
+ * A query may carry a "_since" timestamp, set via setSince(), in which case the Agent only returns the matching
+ * objects whose update timestamp is later than it, including objects that have been deleted since but not yet
+ * reaped, whose delete timestamp will be set. This allows a poller to fetch just the changes since its previous
+ * poll by passing the latest update timestamp that it has seen, see Console.getObjectsSince().
  *
  * @author Fraser Adams
  */
@@ -100,6 +141,12 @@ public final class QmfQuery extends QmfData
     private ObjectId       _objectId;
     private List           _predicate;
     private Expression     _expression;
+    private List<String>   _select;
+    private Aggregate      _aggregate;
+    private String         _orderBy;
+    private boolean        _descending;
+    private int            _limit;
+    private long           _since;
 
     /**
      * This Constructor is only used to construct the ID and PREDICATE objects
@@ -170,6 +217,28 @@ public final class QmfQuery extends QmfData
         setValue("_where", _predicate);
     }
 
+    /**
+     * Construct a PREDICATE QmfQuery from a QmfQueryTarget, SchemaClassId and predicate String, which matches the
+     * objects of the given class that also satisfy the predicate.
+     * <p>
+     * Including the SchemaClassId allows the query to be sent to Agents that don't evaluate predicates, such as the
+     * C++ broker ManagementAgent, which will return all objects of the class. Console.getObjects() then applies the
+     * predicate itself, whereas Agents that do evaluate predicates only return the matching objects.
+     *
+     * @param target the query target
+     * @param classId the SchemaClassId of the objects to evaluate against
+     * @param predicateString the predicate to evaluate against
+     */
+    public QmfQuery(final QmfQueryTarget target, final SchemaClassId classId, final String predicateString)
+        throws QmfException
+    {
+        this(target, predicateString);
+        _classId = classId;
+        _packageName = _classId.getPackageName();
+        _className = _classId.getClassName();
+        setValue("_schema_id", _classId.mapEncode());
+    }
+
     /**
      * Construct a QmfQuery from a Map encoding
      * @param m encoding the query
@@ -197,6 +266,201 @@ public final class QmfQuery extends QmfData
             _predicate = (List)getValue("_where");
             _expression = Expression.createExpression(_predicate);
         }
+
+        if (hasValue("_select"))
+        { // Strings may be encoded as byte[] depending on the Console, so normalise them.
+            List<String> select = new ArrayList<String>();
+            for (Object name : (List)getValue("_select"))
+            {
+                select.add(getString(name));
+            }
+            _select = Collections.unmodifiableList(select);
+        }
+
+        if (hasValue("_aggregate"))
+        {
+            _aggregate = new Aggregate((Map)getValue("_aggregate"));
+        }
+
+        if (hasValue("_order_by"))
+        {
+            _orderBy = getStringValue("_order_by");
+            _descending = hasValue("_descending") && getBooleanValue("_descending");
+        }
+
+        if (hasValue("_limit"))
+        {
+            _limit = (int)getLongValue("_limit");
+        }
+
+        if (hasValue("_since"))
+        {
+            _since = getLongValue("_since");
+        }
+    }
+
+    /**
+     * Set the time after which matching objects must have been updated (or deleted) in order to be returned.
+     *
+     * @param since the time in nanoseconds since the epoch, as used by the object update timestamps, or zero to
+     *        return every matching object.
+     */
+    public void setSince(final long since)
+    {
+        _since = (since < 0) ? 0 : since;
+        if (_since == 0)
+        {
+            values().remove("_since");
+        }
+        else
+        {
+            setValue("_since", _since);
+        }
+    }
+
+    /**
+     * Return the time after which matching objects must have been updated (or deleted) in order to be returned.
+     * @return the time in nanoseconds since the epoch, or zero if every matching object should be returned.
+     */
+    public long getSince()
+    {
+        return _since;
+    }
+
+    /**
+     * Set the property that the matching objects should be ordered by.
+     *
+     * @param orderBy the name of the property to order by, or null to leave the objects unordered.
+     * @param descending true if the objects should be ordered by descending value, false for ascending value.
+     */
+    public void setOrderBy(final String orderBy, final boolean descending)
+    {
+        _orderBy = orderBy;
+        _descending = (orderBy != null) && descending;
+        if (orderBy == null)
+        {
+            values().remove("_order_by");
+            values().remove("_descending");
+        }
+        else
+        {
+            setValue("_order_by", orderBy);
+            setValue("_descending", descending);
+        }
+    }
+
+    /**
+     * Return the name of the property that the matching objects should be ordered by.
+     * @return the name of the property to order by, or null if the objects are unordered.
+     */
+    public String getOrderBy()
+    {
+        return _orderBy;
+    }
+
+    /**
+     * Return true if the matching objects should be ordered by descending value.
+     * @return true if the matching objects should be ordered by descending value.
+     */
+    public boolean isDescending()
+    {
+        return _descending;
+    }
+
+    /**
+     * Set the maximum number of objects that should be returned. If an ordering is set these will be the first
+     * objects in that order, otherwise they will be an arbitrary subset of the matching objects.
+     *
+     * @param limit the maximum number of objects to return, zero or less to return every matching object.
+     */
+    public void setLimit(final int limit)
+    {
+        _limit = (limit < 0) ? 0 : limit;
+        if (_limit == 0)
+        {
+            values().remove("_limit");
+        }
+        else
+        {
+            setValue("_limit", _limit);
+        }
+    }
+
+    /**
+     * Return the maximum number of objects that should be returned.
+     * @return the maximum number of objects to return, or zero if every matching object should be returned.
+     */
+    public int getLimit()
+    {
+        return _limit;
+    }
+
+    /**
+     * Set the Aggregate, which makes the Agent return aggregated results over the matching objects rather than
+     * the objects themselves.
+     *
+     * @param aggregate the Aggregate describing the results to compute, or null to return the objects.
+     */
+    public void setAggregate(final Aggregate aggregate)
+    {
+        _aggregate = aggregate;
+        if (aggregate == null)
+        {
+            values().remove("_aggregate");
+        }
+        else
+        {
+            setValue("_aggregate", aggregate.mapEncode());
+        }
+    }
+
+    /**
+     * Return the Aggregate describing the aggregated results that the Agent should return.
+     * @return the Aggregate or null if the Agent should return the matching objects.
+     */
+    public Aggregate getAggregate()
+    {
+        return _aggregate;
+    }
+
+    /**
+     * Set the projection, in other words the names of the properties that the Agent should return for each
+     * matching object. Properties that the objects don't have are ignored.
+     *
+     * @param select the names of the properties to return, or null to return every property.
+     */
+    public void setSelect(final List<String> select)
+    {
+        if (select == null)
+        {
+            _select = null;
+            values().remove("_select");
+        }
+        else
+        {
+            _select = Collections.unmodifiableList(new ArrayList<String>(select));
+            setValue("_select", new ArrayList<String>(select));
+        }
+    }
+
+    /**
+     * Set the projection, in other words the names of the properties that the Agent should return for each
+     * matching object. Properties that the objects don't have are ignored.
+     *
+     * @param select the names of the properties to return.
+     */
+    public void setSelect(final String... select)
+    {
+        setSelect(Arrays.asList(select));
+    }
+
+    /**
+     * Return the names of the properties that the Agent should return for each matching object.
+     * @return the names of the properties to return, or null if every property should be returned.
+     */
+    public List<String> getSelect()
+    {
+        return _select;
     }
 
     /**
@@ -282,29 +546,19 @@ public final class QmfQuery extends QmfData
                 }
                 else if (_classId != null)
                 {
-                    SchemaClassId dataClassId = managedData.getSchemaClassId();
-                    String dataClassName = dataClassId.getClassName();
-                    String dataPackageName = dataClassId.getPackageName();
-
-                    // Wildcard the package name if it hasn't been specified when checking class name
-                    if (_className.equals(dataClassName) &&
-                        (_packageName.length() == 0 || _packageName.equals(dataPackageName)))
-                    {
-                        return true;
-                    }
-
-                    // Wildcard the class name if it hasn't been specified when checking package name
-                    if (_packageName.equals(dataPackageName) &&
-                        (_className.length() == 0 || _className.equals(dataClassName)))
-                    {
-                        return true;
-                    }
+                    return matchesClass(managedData);
                 }
             }
             return false;
         }
         else
         {
+            // If a PREDICATE query also has a SchemaClassId the data must be of that class too.
+            if (_classId != null && !(data instanceof QmfManaged && matchesClass((QmfManaged)data)))
+            {
+                return false;
+            }
+
             // Evaluate a PREDICATE query by evaluating against the expression created from the predicate
             if (_predicate.size() == 0)
             {
@@ -315,6 +569,38 @@ public final class QmfQuery extends QmfData
         }
     }
 
+    /**
+     * Return true if the class of the Managed Data matches the query's SchemaClassId.
+     * @param managedData the Managed Data being evaluated.
+     * @return true if the class of the Managed Data matches the query's SchemaClassId.
+     */
+    private boolean matchesClass(final QmfManaged managedData)
+    {
+        SchemaClassId dataClassId = managedData.getSchemaClassId();
+        if (dataClassId == null)
+        {
+            return false;
+        }
+
+        String dataClassName = dataClassId.getClassName();
+        String dataPackageName = dataClassId.getPackageName();
+
+        // Wildcard the package name if it hasn't been specified when checking class name
+        if (_className.equals(dataClassName) &&
+            (_packageName.length() == 0 || _packageName.equals(dataPackageName)))
+        {
+            return true;
+        }
+
+        // Wildcard the class name if it hasn't been specified when checking package name
+        if (_packageName.equals(dataPackageName) &&
+            (_className.length() == 0 || _className.equals(dataClassName)))
+        {
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Helper/debug method to list the QMF Object properties and their type.
      */
@@ -327,6 +613,10 @@ public final class QmfQuery extends QmfData
         {
             System.out.println("selector: QmfQuery.PREDICATE");
             System.out.println("predicate: " + _predicate);
+            if (_classId != null)
+            {
+                _classId.listValues();
+            }
         }
         else if (_classId != null)
         {
@@ -338,6 +628,31 @@ public final class QmfQuery extends QmfData
             System.out.println("selector: QmfQuery.ID");
             System.out.println(_objectId);
         }
+
+        if (_select != null)
+        {
+            System.out.println("select: " + _select);
+        }
+
+        if (_aggregate != null)
+        {
+            System.out.println("aggregate: " + _aggregate.mapEncode());
+        }
+
+        if (_orderBy != null)
+        {
+            System.out.println("order by: " + _orderBy + (_descending ? " descending" : " ascending"));
+        }
+
+        if (_limit > 0)
+        {
+            System.out.println("limit: " + _limit);
+        }
+
+        if (_since > 0)
+        {
+            System.out.println("since: " + new Date(_since/1000000l));
+        }
     }
 }
 
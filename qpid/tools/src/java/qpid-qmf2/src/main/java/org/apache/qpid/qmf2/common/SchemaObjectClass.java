@@ -51,6 +51,7 @@ public final class SchemaObjectClass extends SchemaClass
     private List<SchemaMethod>   _methods = new ArrayList<SchemaMethod>();
     private List<SchemaProperty> _properties = new ArrayList<SchemaProperty>();
     private String[]             _idNames = {};
+    private String[]             _indexNames = {};
 
     /**
      * The main constructor, taking a java.util.Map as a parameter.
@@ -136,6 +137,15 @@ public final class SchemaObjectClass extends SchemaClass
         return Arrays.copyOf(_idNames, _idNames.length);
     }
 
+    /**
+     * Return the list of property names that the Agent should maintain secondary indexes on.
+     * @return the list of property names that the Agent should maintain secondary indexes on.
+     */
+    public String[] getIndexNames()
+    {
+        return Arrays.copyOf(_indexNames, _indexNames.length);
+    }
+
     /**
      * Return the count of SchemaProperties in this instance.
      * @return the count of SchemaProperties in this instance.
@@ -296,6 +306,21 @@ public final class SchemaObjectClass extends SchemaClass
         _idNames = idNames;
     }
 
+    /**
+     * Set the list of property names that the Agent should maintain secondary indexes on.
+     * <p>
+     * When a SchemaObjectClass declaring index names is registered with an Agent, the Agent maintains a hash index
+     * of its QmfAgentData objects keyed by the value of each named property, which allows queries with "eq" or
+     * "exists" predicates on those properties to be answered without evaluating the query against every object.
+     * Like idNames the values of indexed properties should not be changed once the object has been added to the
+     * Agent. Index names are local to the Agent and aren't part of the Schema's map encoding.
+     * @param indexNames the list of property names that the Agent should maintain secondary indexes on.
+     */
+    public void setIndexNames(final String... indexNames)
+    {
+        _indexNames = indexNames;
+    }
+
     /**
      * Helper/debug method to list the QMF Object properties and their type.
      */
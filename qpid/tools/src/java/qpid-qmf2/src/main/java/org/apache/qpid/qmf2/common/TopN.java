@@ -0,0 +1,168 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.common;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A TopN retains the first N of a stream of items in the order of a sort value, it is used by the Agent to apply
+ * the ordering and limit of a QmfQuery and by the Console to apply them to the objects returned by Agents that
+ * don't support them.
+ * <p>
+ * Items are held in a bounded heap whose head is the worst of the retained items, so each item added costs
+ * O(log N) and only N items are ever retained however many are added. Items with equal sort values are retained
+ * in the order that they were added.
+ * <p>
+ * Numeric sort values are compared numerically, binary and String values are compared as Strings and Booleans as
+ * false before true. Numbers order before Strings and items with a null sort value always order last.
+ * <p>
+ * A TopN isn't thread safe.
+ *
+ * @param <T> the type of the items.
+ */
+public final class TopN<T>
+{
+    /**
+     * An item with its sort value and the sequence number used to order items with equal sort values.
+     */
+    private static final class Entry<T>
+    {
+        private final Object _value;
+        private final T _item;
+        private final long _sequence;
+
+        Entry(final Object value, final T item, final long sequence)
+        {
+            _value = value;
+            _item = item;
+            _sequence = sequence;
+        }
+    }
+
+    private final int _limit;
+    private final Comparator<Entry<T>> _order;
+    private final PriorityQueue<Entry<T>> _heap;
+    private long _sequence = 0;
+
+    /**
+     * Construct a TopN.
+     *
+     * @param limit the maximum number of items to retain, zero or less to retain every item.
+     * @param descending true if the items should be ordered by descending sort value.
+     */
+    public TopN(final int limit, final boolean descending)
+    {
+        _limit = limit;
+        _order = new Comparator<Entry<T>>()
+        {
+            public int compare(final Entry<T> lhs, final Entry<T> rhs)
+            {
+                int comparison;
+                if (lhs._value == null || rhs._value == null)
+                { // Nulls order last whatever the direction.
+                    comparison = (lhs._value == null ? 1 : 0) - (rhs._value == null ? 1 : 0);
+                }
+                else
+                {
+                    comparison = descending ? compareValues(rhs._value, lhs._value) :
+                                              compareValues(lhs._value, rhs._value);
+                }
+                return (comparison == 0) ? Long.compare(lhs._sequence, rhs._sequence) : comparison;
+            }
+        };
+
+        // The head of the heap is the worst retained item, so it's the one evicted when the heap is full.
+        _heap = new PriorityQueue<Entry<T>>((limit > 0) ? limit + 1 : 11, Collections.reverseOrder(_order));
+    }
+
+    /**
+     * Add an item, which is retained if it is one of the first N items seen so far.
+     *
+     * @param value the item's sort value, which may be null.
+     * @param item the item.
+     */
+    public void add(final Object value, final T item)
+    {
+        Entry<T> entry = new Entry<T>(value, item, _sequence++);
+        if (_limit > 0 && _heap.size() == _limit)
+        {
+            if (_order.compare(entry, _heap.peek()) >= 0)
+            { // Worse than the worst retained item, so don't bother adding then evicting it.
+                return;
+            }
+            _heap.poll();
+        }
+        _heap.offer(entry);
+    }
+
+    /**
+     * Return the retained items in order.
+     * @return the retained items in order.
+     */
+    public List<T> getResults()
+    {
+        List<Entry<T>> entries = new ArrayList<Entry<T>>(_heap);
+        Collections.sort(entries, _order);
+        List<T> results = new ArrayList<T>(entries.size());
+        for (Entry<T> entry : entries)
+        {
+            results.add(entry._item);
+        }
+        return results;
+    }
+
+    /**
+     * Compare two non null sort values.
+     *
+     * @param lhs the first value.
+     * @param rhs the second value.
+     * @return a negative integer, zero, or a positive integer as lhs orders before, with or after rhs.
+     */
+    public static int compareValues(final Object lhs, final Object rhs)
+    {
+        if (lhs instanceof Number && rhs instanceof Number)
+        {
+            Number l = (Number)lhs;
+            Number r = (Number)rhs;
+            boolean integral = !(l instanceof Double || l instanceof Float || r instanceof Double || r instanceof Float);
+            return integral ? Long.compare(l.longValue(), r.longValue()) :
+                              Double.compare(l.doubleValue(), r.doubleValue());
+        }
+        else if (lhs instanceof Boolean && rhs instanceof Boolean)
+        {
+            return ((Boolean)lhs).compareTo((Boolean)rhs);
+        }
+        else if (lhs instanceof Number)
+        {
+            return -1;
+        }
+        else if (rhs instanceof Number)
+        {
+            return 1;
+        }
+        return QmfData.getString(lhs).compareTo(QmfData.getString(rhs));
+    }
+}
@@ -225,7 +225,7 @@ public final class Agent extends QmfData
      * @param inArgs the formal parameters of the remote method name.
      * @return a Map containing a QMF method request.
      */
-    private Map<String, Object> createRequest(final ObjectId objectId, final String name, final QmfData inArgs)
+    Map<String, Object> createRequest(final ObjectId objectId, final String name, final QmfData inArgs)
     {
         // Default sizes for HashMap should be fine for request
         Map<String, Object> request = new HashMap<String, Object>();
@@ -46,11 +46,18 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
+import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 // QMF2 Imports
 import org.apache.qpid.qmf2.common.AMQPMessage;
+import org.apache.qpid.qmf2.common.Aggregate;
+import org.apache.qpid.qmf2.common.Aggregator;
 import org.apache.qpid.qmf2.common.Handle;
 import org.apache.qpid.qmf2.common.Notifier;
 import org.apache.qpid.qmf2.common.NotifierWrapper;
@@ -62,11 +69,11 @@ import org.apache.qpid.qmf2.common.QmfEvent;
 import org.apache.qpid.qmf2.common.QmfEventListener;
 import org.apache.qpid.qmf2.common.QmfException;
 import org.apache.qpid.qmf2.common.QmfQuery;
-import org.apache.qpid.qmf2.common.QmfQueryTarget;
 import org.apache.qpid.qmf2.common.SchemaClass;
 import org.apache.qpid.qmf2.common.SchemaClassId;
 import org.apache.qpid.qmf2.common.SchemaEventClass;
 import org.apache.qpid.qmf2.common.SchemaObjectClass;
+import org.apache.qpid.qmf2.common.TopN;
 import org.apache.qpid.qmf2.common.WorkItem;
 import org.apache.qpid.qmf2.common.WorkQueue;
 
@@ -92,7 +99,9 @@ import org.apache.qpid.messaging.util.AddressParser;
  * <img alt="" src="doc-files/Console.png">
  * <p>
  * All blocking calls are considered thread safe - it is possible to have a multi-threaded implementation
- * have multiple blocking calls in flight simultaneously.
+ * have multiple blocking calls in flight simultaneously. Each blocking request is given a unique correlation ID
+ * and its response(s) are routed back to the calling thread, so a slow Agent only delays the threads that are
+ * actually waiting on it rather than every thread sharing the Console.
  * <p>
  * <h3>Subscriptions</h3>
  * This implementation of the QMF2 API has full support for QMF2 Subscriptions where they are supported by an Agent.
@@ -221,6 +230,11 @@ public final class Console implements MessageListener, AgentProxy
      */
     private Map<String, SubscriptionManager> _subscriptionById = new ConcurrentHashMap<String, SubscriptionManager>();
 
+    /**
+     * OBJECT Subscriptions indexed by Agent name and by selected class name, used for Subscription emulation.
+     */
+    private final SubscriptionIndex _subscriptionIndex = new SubscriptionIndex();
+
     /**
      * Used to implement a thread safe queue of WorkItem objects used to implement the Notifier API
      */
@@ -274,6 +288,36 @@ public final class Console implements MessageListener, AgentProxy
      */
     private boolean _subscriptionEmulationEnabled = !Boolean.getBoolean("disable_subscription_emulation");
 
+    /**
+     * If set the QmfConsoleData returned by getObjects() and delivered in SubscribeIndications defer decoding
+     * their ObjectId and SchemaClassId until first accessed, see setLazyDecoding().
+     */
+    private volatile boolean _lazyDecoding = false;
+
+    /**
+     * The link capacity of the reply address used by each streamObjects() call, which limits the number of
+     * responses that are prefetched whilst the previous ones are being consumed.
+     */
+    private static final int STREAM_CAPACITY = 2;
+
+    /**
+     * Used to give each streamObjects() call a unique reply address.
+     */
+    private final AtomicLong _streamSequence = new AtomicLong();
+
+    /**
+     * The address options passed to addConnection() and the name parameter extracted from them, if any, which are
+     * used to build the reply address of each streamObjects() call in the same way as the Console's other queues.
+     */
+    private String _streamAddressOptions = "";
+    private String _streamQueueName = null;
+
+    /**
+     * Match the link block of an address options String, so that the stream capacity can be added to it.
+     */
+    private static final Pattern LINK = Pattern.compile("link\\s*:\\s*\\{");
+    private static final Pattern EMPTY_LINK = Pattern.compile("link\\s*:\\s*\\{\\s*\\}");
+
     /**
      * Various timeouts used internally.
      * replyTimeout is the default maximum time we wait for synchronous responses
@@ -286,16 +330,30 @@ public final class Console implements MessageListener, AgentProxy
 
     /**
      * This timer is used tidy up Subscription references where a Subscription has expired. Ideally a client should
-     * call cancelSubscription(), but we can't rely on it.
+     * call cancelSubscription(), but we can't rely on it. It is also used to enforce the deadlines of requests made
+     * via the QmfFuture based asynchronous API.
      */
     private Timer _timer;
 
+    /**
+     * Routes responses arriving on the synchronous _replyAddress to the request that is waiting for them using the
+     * correlation ID, this allows multiple synchronous requests to be in flight simultaneously.
+     */
+    private final ResponseDispatcher _dispatcher = new ResponseDispatcher();
+
+    /**
+     * Lock used to serialise sends on the shared _requester MessageProducer. Note that this is only held for
+     * the duration of the send, it is <b>not</b> held whilst waiting for any response.
+     */
+    private final Object _sendLock = new Object();
+
     /**
      * Various JMS related fields
      */
     private Connection      _connection = null;
     private Session         _asyncSession;
     private Session         _syncSession; 
+    private Session         _responseSession;
     private MessageConsumer _eventConsumer;
     private MessageConsumer _responder; 
     private MessageConsumer _asyncResponder;
@@ -331,6 +389,364 @@ public final class Console implements MessageListener, AgentProxy
         }
     }
 
+    /**
+     * Send a request to the QMF direct address. Sends are serialised as the MessageProducer may be shared by
+     * multiple threads, but the lock isn't held whilst any response is awaited.
+     *
+     * @param request the request Message to be sent.
+     */
+    private void sendRequest(final Message request) throws JMSException
+    {
+        synchronized(_sendLock)
+        {
+            _requester.send(request);
+        }
+    }
+
+    /**
+     * Create a _query_request Message for an "OBJECT" target using either a schema ID or object ID, or using a
+     * QmfQuery, which allows the query to carry a "_select" projection.
+     *
+     * @param agentName the name of the Agent being queried.
+     * @param query the ObjectId, SchemaClassId or QmfQuery being queried for.
+     * @param destination the JMSReplyTo address for the response(s).
+     * @return the request Message.
+     */
+    private MapMessage createQueryRequest(final String agentName, final QmfData query, final Destination destination)
+        throws JMSException
+    {
+        MapMessage request = _syncSession.createMapMessage();
+        request.setJMSReplyTo(destination);
+        request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+        request.setStringProperty("method", "request");
+        request.setStringProperty("qmf.opcode", "_query_request");
+        request.setStringProperty("qpid.subject", agentName);
+
+        if (query instanceof QmfQuery)
+        { // A QmfQuery is already encoded in the form of a _query_request, including any _select projection.
+            for (Map.Entry<String, Object> entry : query.mapEncode().entrySet())
+            {
+                request.setObject(entry.getKey(), entry.getValue());
+            }
+
+            // The projection must include the properties that the predicate refers to, see QueryFilter.
+            List<String> select = QueryFilter.getSelect((QmfQuery)query);
+            if (select != null)
+            {
+                request.setObject("_select", select);
+            }
+            return request;
+        }
+
+        // Create a QMF Query for an "OBJECT" target using either a schema ID or object ID
+        String queryType = (query instanceof SchemaClassId) ? "_schema_id" : "_object_id";
+        request.setObject("_what", "OBJECT");
+        request.setObject(queryType, query.mapEncode());
+        return request;
+    }
+
+    /**
+     * Create a _method_request Message.
+     *
+     * @param agentName the name of the Agent to invoke the method on.
+     * @param content an unordered set of key/value pairs comprising the method arguments.
+     * @param destination the JMSReplyTo address for the response.
+     * @return the request Message.
+     */
+    private MapMessage createMethodRequest(final String agentName, final Map<String, Object> content,
+                                           final Destination destination) throws JMSException
+    {
+        MapMessage request = _syncSession.createMapMessage();
+        request.setJMSReplyTo(destination);
+        request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
+        request.setStringProperty("method", "request");
+        request.setStringProperty("qmf.opcode", "_method_request");
+        request.setStringProperty("qpid.subject", agentName);
+
+        for (Map.Entry<String, Object> entry : content.entrySet())
+        {
+            request.setObject(entry.getKey(), entry.getValue());
+        }
+        return request;
+    }
+
+    /**
+     * An AsyncRequest ties a QmfFuture to a request that is in flight. It is the Handler registered with the
+     * ResponseDispatcher, so responses are delivered to handleResponse(), and it is also the TimerTask that enforces
+     * the request's deadline. However the QmfFuture completes (response, deadline, cancellation or failure) the
+     * correlation ID registration and TimerTask are tidied up, so no thread is needed per outstanding request.
+     */
+    private abstract class AsyncRequest<T> extends TimerTask implements ResponseDispatcher.Handler
+    {
+        protected final QmfFuture<T> _future;
+        protected final String _method;
+        private String _correlationId = null;
+
+        /**
+         * Construct an AsyncRequest with a new QmfFuture.
+         * @param method the name of the Console method, used for logging.
+         */
+        AsyncRequest(final String method)
+        {
+            this(method, new QmfFuture<T>());
+        }
+
+        /**
+         * Construct an AsyncRequest that will complete the supplied QmfFuture.
+         * @param method the name of the Console method, used for logging.
+         * @param future the QmfFuture to complete.
+         */
+        AsyncRequest(final String method, final QmfFuture<T> future)
+        {
+            _method = method;
+            _future = future;
+        }
+
+        /**
+         * Schedule the deadline then send the request. If correlate is true the request is registered with the
+         * ResponseDispatcher and its correlation ID set, otherwise the caller is responsible for arranging that
+         * the QmfFuture gets completed.
+         *
+         * @param request the request Message.
+         * @param timeout the deadline in seconds, a value less than 1 means use the default replyTimeout.
+         * @param correlate true if responses should be routed to handleResponse() by correlation ID.
+         * @return the QmfFuture for this request.
+         */
+        QmfFuture<T> send(final Message request, final long timeout, final boolean correlate)
+        {
+            if (correlate)
+            {
+                _correlationId = _dispatcher.register(this);
+            }
+
+            _future.setCompletionHook(new Runnable()
+            {
+                public void run()
+                {
+                    _dispatcher.unregister(_correlationId);
+                    AsyncRequest.this.cancel();
+                    onCompletion();
+                }
+            });
+
+            try
+            {
+                if (correlate)
+                {
+                    request.setJMSCorrelationID(_correlationId);
+                }
+                _timer.schedule(this, ((timeout < 1) ? _replyTimeout : timeout)*1000);
+                sendRequest(request);
+            }
+            catch (IllegalStateException ise)
+            { // Thrown by schedule() if the Timer has been cancelled by removeConnection()
+                _future.fail(new QmfException("Console." + _method + "() called with no active connection"));
+            }
+            catch (JMSException jmse)
+            {
+                _log.info("JMSException {} caught in {}()", jmse.getMessage(), _method);
+                _future.fail(new QmfException(jmse.getMessage()));
+            }
+            return _future;
+        }
+
+        /**
+         * Called on the ResponseDispatcher's MessageListener thread for each response to this request.
+         * @param response the response Message.
+         */
+        public void onResponse(final Message response)
+        {
+            try
+            {
+                handleResponse(response);
+            }
+            catch (JMSException jmse)
+            {
+                _log.info("JMSException {} caught in {}()", jmse.getMessage(), _method);
+                _future.fail(new QmfException(jmse.getMessage()));
+            }
+            catch (QmfException qmfe)
+            {
+                _future.fail(qmfe);
+            }
+        }
+
+        /**
+         * Called by the Timer when the request's deadline expires.
+         */
+        public void run()
+        {
+            onTimeout();
+        }
+
+        /**
+         * Process a response, subclasses are expected to complete the QmfFuture when the final response arrives.
+         * @param response the response Message.
+         */
+        void handleResponse(final Message response) throws JMSException, QmfException
+        {
+        }
+
+        /**
+         * The default deadline behaviour is to fail the QmfFuture in the same way the synchronous calls throw.
+         */
+        void onTimeout()
+        {
+            _log.info("No response received in {}()", _method);
+            _future.fail(new QmfException("No response received for Console." + _method + "()"));
+        }
+
+        /**
+         * Called once, however the QmfFuture completes, after the correlation ID and deadline have been tidied up.
+         */
+        void onCompletion()
+        {
+        }
+    }
+
+    /**
+     * Refresh an object received as a delta on a delta mode Subscription that has no retained state for the object,
+     * so that the application only ever receives complete objects. Once the refresh completes the refreshed object
+     * is delivered via a SubscriptionIndicationWorkItem, and subsequent deltas for the object are merged into it.
+     *
+     * @param subscription the delta mode Subscription that received the delta.
+     * @param agent the Agent that published the delta.
+     * @param objectId the ObjectId of the object to refresh.
+     */
+    private void resync(final SubscriptionManager subscription, final Agent agent, final ObjectId objectId)
+    {
+        if (!subscription.startResync(objectId))
+        { // Already being refreshed.
+            return;
+        }
+
+        _log.debug("Refreshing object {} for delta mode Subscription {}", objectId, subscription.getConsoleHandle());
+        try
+        {
+            refreshAsync(agent, objectId, -1).addCallback(new QmfFuture.Callback<QmfConsoleData>()
+            {
+                public void onSuccess(final QmfConsoleData refreshed)
+                {
+                    QmfConsoleData object = subscription.resync(objectId, refreshed, _lazyDecoding);
+                    if (object != null)
+                    {
+                        List<QmfConsoleData> resultList = new ArrayList<QmfConsoleData>(1);
+                        resultList.add(object);
+                        String consoleHandle = subscription.getConsoleHandle();
+                        _eventListener.onEvent(
+                            new SubscriptionIndicationWorkItem(new SubscribeIndication(consoleHandle, resultList))
+                        );
+                    }
+                }
+
+                public void onFailure(final QmfException cause)
+                {
+                    _log.info("QmfException {} caught refreshing object in resync()", cause.getMessage());
+                    subscription.resync(objectId, null, _lazyDecoding);
+                }
+            });
+        }
+        catch (QmfException qmfe)
+        {
+            _log.info("QmfException {} caught in resync()", qmfe.getMessage());
+            subscription.resync(objectId, null, _lazyDecoding);
+        }
+    }
+
+    /**
+     * Emulate Subscriptions to the broker ManagementAgent by evaluating the Subscription queries against the objects
+     * pushed in a _data indication and delivering any matches via SubscriptionIndicationWorkItems.
+     * <p>
+     * The _data indication is decoded only once and the QmfConsoleData objects are grouped by class name, so each
+     * Subscription is only evaluated against the objects of the class it selects. Note that this means that the
+     * QmfConsoleData instances are shared by all of the matching Subscriptions' SubscribeIndications so they
+     * should be treated as read-only by the application.
+     *
+     * @param agent the Agent that pushed the _data indication.
+     * @param subscriptions the Agent's OBJECT Subscriptions keyed by the class name their query selects.
+     * @param list the decoded _data indication.
+     */
+    private void emulateSubscriptions(final Agent agent, final Map<String, List<SubscriptionManager>> subscriptions,
+                                      final List<Map> list)
+    {
+        List<QmfConsoleData> objects = new ArrayList<QmfConsoleData>(list.size());
+        Map<String, List<QmfConsoleData>> objectsByClass = new HashMap<String, List<QmfConsoleData>>();
+        for (Map m : list)
+        {
+            QmfConsoleData object = new QmfConsoleData(m, agent, _lazyDecoding);
+            objects.add(object);
+            SchemaClassId classId = object.getSchemaClassId();
+            if (classId != null)
+            {
+                String className = classId.getClassName();
+                List<QmfConsoleData> classObjects = objectsByClass.get(className);
+                if (classObjects == null)
+                {
+                    classObjects = new ArrayList<QmfConsoleData>();
+                    objectsByClass.put(className, classObjects);
+                }
+                classObjects.add(object);
+            }
+        }
+
+        for (Map.Entry<String, List<SubscriptionManager>> entry : subscriptions.entrySet())
+        {
+            String classKey = entry.getKey();
+            List<QmfConsoleData> candidates = classKey.equals(SubscriptionIndex.ALL_CLASSES) ? objects :
+                                                                                objectsByClass.get(classKey);
+            if (candidates == null)
+            { // None of the objects in this _data indication are of the class selected by these Subscriptions.
+                continue;
+            }
+
+            for (SubscriptionManager subscription : entry.getValue())
+            {
+                QmfQuery query = subscription.getQuery();
+                long objectEpoch = 0;
+                List<QmfConsoleData> resultList = new ArrayList<QmfConsoleData>();
+                for (QmfConsoleData object : candidates)
+                { // Evaluate the QmfConsoleData object against the query
+                    if (query.evaluate(object))
+                    {
+                        long epoch = object.getObjectId().getAgentEpoch();
+                        objectEpoch = (epoch > objectEpoch && !object.isDeleted()) ? epoch : objectEpoch;
+                        resultList.add(object);
+                    }
+                }
+
+                if (resultList.size() > 0)
+                {   // If there are any results available after evaluating the query we deliver them
+                    // via a SubscribeIndicationWorkItem.
+
+                    // Before we send the WorkItem we take a peek at the Agent Epoch value that forms
+                    // part of the ObjectID and compare it against the current Epoch value. If they
+                    // are different we send an AgentRestartedWorkItem. We *normally* check for Epoch
+                    // changes when we receive heartbeat indications, but unfortunately the broker 
+                    // ManagementAgent pushes data *before* it pushes heartbeats. Its more useful
+                    // however for clients to know that an Agent has been restarted *before* they get
+                    // data from the restarted Agent (in case they need to reset any state).
+                    if (objectEpoch > agent.getEpoch())
+                    {
+                        agent.setEpoch(objectEpoch);
+                        agent.clearSchemaCache(); // Clear cache to force a lookup
+                        List<SchemaClassId> classes = getClasses(agent);
+                        getSchema(classes, agent); // Discover the schema for this Agent and cache it
+                        _log.info("Agent {} has been restarted", agent.getName());
+                        if (_discoverAgents && (_agentQuery == null || _agentQuery.evaluate(agent)))
+                        {
+                            _eventListener.onEvent(new AgentRestartedWorkItem(agent));
+                        }
+                    }
+
+                    _eventListener.onEvent(
+                        new SubscriptionIndicationWorkItem(
+                            new SubscribeIndication(subscription.getConsoleHandle(), resultList))
+                    );
+                }
+            }
+        }
+    }
+
     /**
      * Check whether any of the registered Agents has expired by comparing their timestamp against the 
      * current time. We explicitly use an iterator rather than a foreach loop because if the Agent has
@@ -529,8 +945,17 @@ public final class Console implements MessageListener, AgentProxy
                                 _subscriptionById.put(subscriptionId, subscription);
                                 subscription.setSubscriptionId(subscriptionId);
                                 subscription.setDuration(params.getLifetime());
+                                if (subscription.isDelta() && !params.isDelta())
+                                { // The Agent hasn't granted delta mode so stop retaining object state.
+                                    subscription.setDelta(false);
+                                }
                                 String replyHandle = subscription.getReplyHandle();
-                                if (replyHandle == null)
+                                QmfFuture<SubscribeParams> future = subscription.getFuture();
+                                if (future != null)
+                                {
+                                    future.complete(new SubscribeParams(correlationId, subscription.mapEncode()));
+                                }
+                                else if (replyHandle == null)
                                 {
                                     subscription.signal();
                                 }
@@ -565,67 +990,36 @@ public final class Console implements MessageListener, AgentProxy
                     { // If we have a valid consoleHandle the data has come from a "real" Subscription.
                         List<Map> list = AMQPMessage.getList(message);
                         List<QmfConsoleData> resultList = new ArrayList<QmfConsoleData>(list.size());
+                        SubscriptionManager subscription = _subscriptionByHandle.get(consoleHandle);
+                        boolean delta = subscription != null && subscription.isDelta();
                         for (Map m : list)
                         {
-                            resultList.add(new QmfConsoleData(m, agent));
+                            QmfConsoleData object = delta ? subscription.decode(m, agent, _lazyDecoding) :
+                                                            new QmfConsoleData(m, agent, _lazyDecoding);
+                            if (object == null)
+                            { // A delta for an object we have no state for, so refresh the whole object instead.
+                                resync(subscription, agent, new ObjectId((Map)m.get("_object_id")));
+                            }
+                            else
+                            {
+                                resultList.add(object);
+                            }
+                        }
+
+                        if (resultList.size() > 0)
+                        {
+                            _eventListener.onEvent(
+                                new SubscriptionIndicationWorkItem(new SubscribeIndication(consoleHandle, resultList))
+                            );
                         }
-                        _eventListener.onEvent(
-                            new SubscriptionIndicationWorkItem(new SubscribeIndication(consoleHandle, resultList))
-                        );
                     }
                     else if (_subscriptionEmulationEnabled && agentName.equals(_brokerAgentName))
                     { // If the data has come from is the broker Agent we emulate a Subscription on the Console
-                        for (SubscriptionManager subscription : _subscriptionByHandle.values())
-                        {
-                            QmfQuery query = subscription.getQuery();
-                            if (subscription.getAgent().getName().equals(_brokerAgentName) &&
-                                query.getTarget() == QmfQueryTarget.OBJECT)
-                            { // Only evaluate broker Agent subscriptions with QueryTarget == OBJECT on the Console.
-                                long objectEpoch = 0;
-                                consoleHandle = subscription.getConsoleHandle();
-                                List<Map> list = AMQPMessage.getList(message);
-                                List<QmfConsoleData> resultList = new ArrayList<QmfConsoleData>(list.size());
-                                for (Map m : list)
-                                { // Evaluate the QmfConsoleData object against the query
-                                    QmfConsoleData object = new QmfConsoleData(m, agent);
-                                    if (query.evaluate(object))
-                                    {
-                                        long epoch = object.getObjectId().getAgentEpoch();
-                                        objectEpoch = (epoch > objectEpoch && !object.isDeleted()) ? epoch : objectEpoch;
-                                        resultList.add(object);
-                                    }
-                                }
-
-                                if (resultList.size() > 0)
-                                {   // If there are any results available after evaluating the query we deliver them
-                                    // via a SubscribeIndicationWorkItem.
-
-                                    // Before we send the WorkItem we take a peek at the Agent Epoch value that forms
-                                    // part of the ObjectID and compare it against the current Epoch value. If they
-                                    // are different we send an AgentRestartedWorkItem. We *normally* check for Epoch
-                                    // changes when we receive heartbeat indications, but unfortunately the broker 
-                                    // ManagementAgent pushes data *before* it pushes heartbeats. Its more useful
-                                    // however for clients to know that an Agent has been restarted *before* they get
-                                    // data from the restarted Agent (in case they need to reset any state).
-                                    if (objectEpoch > agent.getEpoch())
-                                    {
-                                        agent.setEpoch(objectEpoch);
-                                        agent.clearSchemaCache(); // Clear cache to force a lookup
-                                        List<SchemaClassId> classes = getClasses(agent);
-                                        getSchema(classes, agent); // Discover the schema for this Agent and cache it
-                                        _log.info("Agent {} has been restarted", agentName);
-                                        if (_discoverAgents && (_agentQuery == null || _agentQuery.evaluate(agent)))
-                                        {
-                                            _eventListener.onEvent(new AgentRestartedWorkItem(agent));
-                                        }
-                                    }
-
-                                    _eventListener.onEvent(
-                                        new SubscriptionIndicationWorkItem(
-                                            new SubscribeIndication(consoleHandle, resultList))
-                                    );
-                                }
-                            }
+                        Map<String, List<SubscriptionManager>> subscriptions = _subscriptionIndex.get(agentName);
+                        if (subscriptions != null)
+                        { // Decode the _data indication once, it's shared by all of the emulated Subscriptions
+                            List<Map> list = AMQPMessage.getList(message);
+                            emulateSubscriptions(agent, subscriptions, list);
                         }
                     }
                 }
@@ -682,6 +1076,53 @@ public final class Console implements MessageListener, AgentProxy
         return results;
     }
 
+    /**
+     * Apply the predicate of a QmfQuery to the objects returned by an Agent, see QueryFilter.
+     *
+     * @param query the SchemaClassId, ObjectId or QmfQuery that was sent to the Agent.
+     * @param objects the objects returned by the Agent.
+     * @return the objects that match the query.
+     */
+    private static List<QmfConsoleData> applyPredicate(final QmfData query, final List<QmfConsoleData> objects)
+    {
+        return new QueryFilter(query).apply(objects);
+    }
+
+    /**
+     * Apply the ordering and limit of a QmfQuery to the objects returned by one or more Agents.
+     * <p>
+     * Agents that support them apply the ordering and limit themselves and only return the first "_limit" objects,
+     * this is cheap for those and transparently gives the same results for Agents that ignore them, such as the
+     * C++ broker ManagementAgent. It is also needed when querying several Agents, as each returns its own first
+     * objects.
+     *
+     * @param query the SchemaClassId, ObjectId or QmfQuery that was sent to the Agent(s).
+     * @param objects the objects returned by the Agent(s).
+     * @return the objects in order, limited to the query's limit.
+     */
+    private static List<QmfConsoleData> applyOrderAndLimit(final QmfData query, final List<QmfConsoleData> objects)
+    {
+        if (!(query instanceof QmfQuery))
+        {
+            return objects;
+        }
+
+        QmfQuery qmfQuery = (QmfQuery)query;
+        String orderBy = qmfQuery.getOrderBy();
+        int limit = qmfQuery.getLimit();
+        if (qmfQuery.getAggregate() != null || (orderBy == null && (limit == 0 || objects.size() <= limit)))
+        {
+            return objects;
+        }
+
+        TopN<QmfConsoleData> top = new TopN<QmfConsoleData>(limit, qmfQuery.isDescending());
+        for (QmfConsoleData object : objects)
+        {
+            top.add((orderBy == null) ? null : object.getValue(orderBy), object);
+        }
+        return top.getResults();
+    }
+
     /**
      * Perform a query for QmfConsoleData objects. Returns a list (possibly empty) of matching objects.
      * If replyHandle is null this method will block until the agent replies, or the timeout expires.
@@ -692,78 +1133,80 @@ public final class Console implements MessageListener, AgentProxy
      * @param query the ObjectId or SchemaClassId being queried for.
      * @param replyHandle the correlation handle used to tie asynchronous method requests with responses
      * @param timeout the time to wait for a reply from the Agent, a value of -1 means use the default timeout
+     * @param lazy if true the returned QmfConsoleData decode their ObjectId and SchemaClassId on first access
      * @return a List of QMF Objects describing that class
      */
     private List<QmfConsoleData> getObjects(final Agent agent, final QmfData query,
-                                            final String replyHandle, int timeout)
+                                            final String replyHandle, int timeout, final boolean lazy)
     {
         String agentName = agent.getName();
         timeout = (timeout < 1) ? _replyTimeout : timeout;
         List<QmfConsoleData> results = Collections.emptyList();
+        ResponseDispatcher.BlockingHandler responses = null;
+        String correlationId = replyHandle;
         try
         {
             Destination destination = (replyHandle == null) ? _replyAddress : _asyncReplyAddress;
-            MapMessage request = _syncSession.createMapMessage();
-            request.setJMSReplyTo(destination);
-            request.setJMSCorrelationID(replyHandle);
-            request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
-            request.setStringProperty("method", "request");
-            request.setStringProperty("qmf.opcode", "_query_request");
-            request.setStringProperty("qpid.subject", agentName);
-
-            // Create a QMF Query for an "OBJECT" target using either a schema ID or object ID
-            String queryType = (query instanceof SchemaClassId) ? "_schema_id" : "_object_id";
-            request.setObject("_what", "OBJECT");
-            request.setObject(queryType, query.mapEncode());
+            if (replyHandle == null)
+            { // If this is a synchronous request register to have the response(s) routed back to this thread
+                responses = new ResponseDispatcher.BlockingHandler();
+                correlationId = _dispatcher.register(responses);
+            }
+            MapMessage request = createQueryRequest(agentName, query, destination);
+            request.setJMSCorrelationID(correlationId);
 
-            // Wrap request & response in synchronized block in case any other threads invoke a request
-            // it would be somewhat unfortunate if their response got interleaved with ours!!
-            synchronized(this)
+            // Responses are routed back to this thread by correlation ID so there's no need to hold a lock whilst
+            // waiting, other threads may have their own requests in flight simultaneously.
+            sendRequest(request);
+            if (replyHandle == null)
             {
-                _requester.send(request);
-                if (replyHandle == null)
-                {
-                    boolean lastResult = true;
-                    ArrayList<QmfConsoleData> partials = new ArrayList<QmfConsoleData>();
-                    do
-                    { // Wrap in a do/while loop to cater for the case where the Agent may send partial results.
-                        Message response = _responder.receive(timeout*1000);
-                        if (response == null)
-                        {
-                            _log.info("No response received in getObjects()");
-                            return partials;
-                        }
+                boolean lastResult = true;
+                ArrayList<QmfConsoleData> partials = new ArrayList<QmfConsoleData>();
+                do
+                { // Wrap in a do/while loop to cater for the case where the Agent may send partial results.
+                    Message response = responses.receive(timeout*1000);
+                    if (response == null)
+                    {
+                        _log.info("No response received in getObjects()");
+                        return applyOrderAndLimit(query, applyPredicate(query, partials));
+                    }
 
-                        lastResult = !response.propertyExists("partial");
+                    lastResult = !response.propertyExists("partial");
 
-                        if (AMQPMessage.isAMQPList(response))
-                        {
-                            List<Map> mapResults = AMQPMessage.getList(response);
-                            partials.ensureCapacity(partials.size() + mapResults.size());
-                            for (Map content : mapResults)
-                            {
-                                partials.add(new QmfConsoleData(content, agent));
-                            }
-                        }
-                        else if (AMQPMessage.isAMQPMap(response))
-                        {
-                            // Error responses are returned as MapMessages, though they are being ignored here.
-                            //QmfData exception = new QmfData(AMQPMessage.getMap(response));
-                            //System.out.println(agentName + " " + exception.getStringValue("error_text"));
-                        }
-                        else
+                    if (AMQPMessage.isAMQPList(response))
+                    {
+                        List<Map> mapResults = AMQPMessage.getList(response);
+                        partials.ensureCapacity(partials.size() + mapResults.size());
+                        for (Map content : mapResults)
                         {
-                            _log.info("getObjects() Received response message in incorrect format");
+                            partials.add(new QmfConsoleData(content, agent, lazy));
                         }
-                    } while (!lastResult);
-                    results = partials;
-                }
+                    }
+                    else if (AMQPMessage.isAMQPMap(response))
+                    {
+                        // Error responses are returned as MapMessages, though they are being ignored here.
+                        //QmfData exception = new QmfData(AMQPMessage.getMap(response));
+                        //System.out.println(agentName + " " + exception.getStringValue("error_text"));
+                    }
+                    else
+                    {
+                        _log.info("getObjects() Received response message in incorrect format");
+                    }
+                } while (!lastResult);
+                results = applyOrderAndLimit(query, applyPredicate(query, partials));
             }
         }
         catch (JMSException jmse)
         {
             _log.info("JMSException {} caught in getObjects()", jmse.getMessage());
         }
+        finally
+        {
+            if (responses != null)
+            {
+                _dispatcher.unregister(correlationId);
+            }
+        }
         return results;
     }
 
@@ -796,7 +1239,7 @@ public final class Console implements MessageListener, AgentProxy
      */
     public QmfConsoleData refresh(final Agent agent, final ObjectId objectId, final String replyHandle, final int timeout)
     {
-        List<QmfConsoleData> objects = getObjects(agent, objectId, replyHandle, timeout);
+        List<QmfConsoleData> objects = getObjects(agent, objectId, replyHandle, timeout, false);
         return (objects.size() == 0) ? null : objects.get(0);
     }
 
@@ -820,43 +1263,34 @@ public final class Console implements MessageListener, AgentProxy
         }
         String agentName = agent.getName();
         timeout = (timeout < 1) ? _replyTimeout : timeout;
+        ResponseDispatcher.BlockingHandler responses = null;
+        String correlationId = replyHandle;
         try
         {
             Destination destination = (replyHandle == null) ? _replyAddress : _asyncReplyAddress;
-            MapMessage request = _syncSession.createMapMessage();
-            request.setJMSReplyTo(destination);
-            request.setJMSCorrelationID(replyHandle);
-            request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
-            request.setStringProperty("method", "request");
-            request.setStringProperty("qmf.opcode", "_method_request");
-            request.setStringProperty("qpid.subject", agentName);
-
-            for (Map.Entry<String, Object> entry : content.entrySet())
-            {
-                request.setObject(entry.getKey(), entry.getValue());
+            if (replyHandle == null)
+            { // If this is a synchronous request register to have the response routed back to this thread
+                responses = new ResponseDispatcher.BlockingHandler();
+                correlationId = _dispatcher.register(responses);
             }
-
-            // Wrap request & response in synchronized block in case any other threads invoke a request
-            // it would be somewhat unfortunate if their response got interleaved with ours!!
-            synchronized(this)
-            {
-                _requester.send(request);
-                if (replyHandle == null)
-                { // If this is a synchronous request get the response
-                    Message response = _responder.receive(timeout*1000);
-                    if (response == null)
-                    {
-                        _log.info("No response received in invokeMethod()");
-                        throw new QmfException("No response received for Console.invokeMethod()");
-                    }
-                    MethodResult result = new MethodResult(AMQPMessage.getMap(response));
-                    QmfException exception = result.getQmfException();
-                    if (exception != null)
-                    {
-                        throw exception;
-                    }
-                    return result;
+            MapMessage request = createMethodRequest(agentName, content, destination);
+            request.setJMSCorrelationID(correlationId);
+            sendRequest(request);
+            if (replyHandle == null)
+            { // If this is a synchronous request get the response
+                Message response = responses.receive(timeout*1000);
+                if (response == null)
+                {
+                    _log.info("No response received in invokeMethod()");
+                    throw new QmfException("No response received for Console.invokeMethod()");
+                }
+                MethodResult result = new MethodResult(AMQPMessage.getMap(response));
+                QmfException exception = result.getQmfException();
+                if (exception != null)
+                {
+                    throw exception;
                 }
+                return result;
             }
             // If this is an asynchronous request return without waiting for a response
             return null;
@@ -866,6 +1300,13 @@ public final class Console implements MessageListener, AgentProxy
             _log.info("JMSException {} caught in invokeMethod()", jmse.getMessage());
             throw new QmfException(jmse.getMessage());
         }
+        finally
+        {
+            if (responses != null)
+            {
+                _dispatcher.unregister(correlationId);
+            }
+        }
     }
 
     /**
@@ -885,6 +1326,7 @@ public final class Console implements MessageListener, AgentProxy
         {
             _subscriptionById.remove(subscriptionId);
         }
+        _subscriptionIndex.remove(subscription);
     }
 
     //                                          QMF API Methods
@@ -1080,8 +1522,10 @@ public final class Console implements MessageListener, AgentProxy
                     // Hopefully at this point nameValue is actually the value of the name parameter.
                     asyncReplyAddressOptions = asyncReplyAddressOptions.replace(nameValue, nameValue + "-async");
                     eventAddressOptions = eventAddressOptions.replace(nameValue, nameValue + "-event");
+                    _streamQueueName = nameValue;
                 }
             }
+            _streamAddressOptions = addressOptions;
 
             String topicBase  = "qmf." + _domain + ".topic";
             _syncSession = _connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
@@ -1119,9 +1563,14 @@ public final class Console implements MessageListener, AgentProxy
                 Destination directAddress = _syncSession.createQueue("qmf." + _domain + ".direct");
                 _requester = _syncSession.createProducer(directAddress);
 
-                // Create the JMSReplyTo _replyAddress and MessageConsumer
-                _replyAddress = _syncSession.createQueue(_address + syncReplyAddressOptions);
-                _responder = _syncSession.createConsumer(_replyAddress);
+                // Create the JMSReplyTo _replyAddress and MessageConsumer. Responses to synchronous requests are
+                // routed to the waiting thread by the ResponseDispatcher using the correlation ID. The consumer
+                // is created on its own Session as the MessageListener would otherwise preclude synchronous use
+                // of _syncSession by the request methods.
+                _responseSession = _connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                _replyAddress = _responseSession.createQueue(_address + syncReplyAddressOptions);
+                _responder = _responseSession.createConsumer(_replyAddress);
+                _responder.setMessageListener(_dispatcher);
 
                 _connection.start();
 
@@ -1339,6 +1788,32 @@ public final class Console implements MessageListener, AgentProxy
         _disableEvents = true;
     }
 
+    /**
+     * Select whether the QmfConsoleData returned by getObjects() and delivered in SubscribeIndications are lazily
+     * decoded. Lazily decoded objects defer decoding their ObjectId and SchemaClassId until they are first
+     * accessed, which saves a significant amount of work and heap for Consoles that retrieve large numbers of
+     * objects but only look at a few properties of each. Lazy decoding is disabled by default, it may also be
+     * selected per call via getObjects(query, timeout, agentList, lazy) or
+     * getObjectsAsync(agent, query, timeout, lazy).
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @param lazy true to enable lazy decoding, false to disable it.
+     */
+    public void setLazyDecoding(final boolean lazy)
+    {
+        _lazyDecoding = lazy;
+    }
+
+    /**
+     * Return true if lazy decoding is enabled, see setLazyDecoding().
+     * @return true if lazy decoding is enabled.
+     */
+    public boolean isLazyDecoding()
+    {
+        return _lazyDecoding;
+    }
+
     /**
      * Return the count of pending WorkItems that can be retrieved.
      * @return the count of pending WorkItems that can be retrieved.
@@ -1529,10 +2004,13 @@ public final class Console implements MessageListener, AgentProxy
 
         String agentName = agent.getName();
         results = new ArrayList<SchemaClassId>();
+        ResponseDispatcher.BlockingHandler responses = new ResponseDispatcher.BlockingHandler();
+        String correlationId = _dispatcher.register(responses);
         try
         {
             MapMessage request = _syncSession.createMapMessage();
             request.setJMSReplyTo(_replyAddress);
+            request.setJMSCorrelationID(correlationId);
             request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
             request.setStringProperty("method", "request");
             request.setStringProperty("qmf.opcode", "_query_request");
@@ -1540,44 +2018,43 @@ public final class Console implements MessageListener, AgentProxy
 
             // Create a QMF Query for an "SCHEMA_ID" target
             request.setObject("_what", "SCHEMA_ID");
-            // Wrap request & response in synchronized block in case any other threads invoke a request
-            // it would be somewhat unfortunate if their response got interleaved with ours!!
-            synchronized(this) 
+            sendRequest(request);
+            Message response = responses.receive(_replyTimeout*1000);
+            if (response == null)
             {
-                _requester.send(request);
-                Message response = _responder.receive(_replyTimeout*1000);
-                if (response == null)
-                {
-                    _log.info("No response received in getClasses()");
-                    return Collections.emptyList();
-                }
+                _log.info("No response received in getClasses()");
+                return Collections.emptyList();
+            }
 
-                if (AMQPMessage.isAMQPList(response))
+            if (AMQPMessage.isAMQPList(response))
+            {
+                List<Map> mapResults = AMQPMessage.getList(response);
+                for (Map content : mapResults)
                 {
-                    List<Map> mapResults = AMQPMessage.getList(response);
-                    for (Map content : mapResults)
-                    {
 //new SchemaClassId(content).listValues();
-                        results.add(new SchemaClassId(content));
-                    }
-                }
-                else if (AMQPMessage.isAMQPMap(response))
-                {
-                    // Error responses are returned as MapMessages, though they are being ignored here.
-                    //System.out.println("Console.getClasses() no results for " + agentName);
-                    //QmfData exception = new QmfData(AMQPMessage.getMap(response));
-                    //System.out.println(agentName + " " + exception.getStringValue("error_text"));
-                }
-                else
-                {
-                    _log.info("getClasses() Received response message in incorrect format");
+                    results.add(new SchemaClassId(content));
                 }
             }
+            else if (AMQPMessage.isAMQPMap(response))
+            {
+                // Error responses are returned as MapMessages, though they are being ignored here.
+                //System.out.println("Console.getClasses() no results for " + agentName);
+                //QmfData exception = new QmfData(AMQPMessage.getMap(response));
+                //System.out.println(agentName + " " + exception.getStringValue("error_text"));
+            }
+            else
+            {
+                _log.info("getClasses() Received response message in incorrect format");
+            }
         }
         catch (JMSException jmse)
         {
             _log.info("JMSException {} caught in getClasses()", jmse.getMessage());
         }
+        finally
+        {
+            _dispatcher.unregister(correlationId);
+        }
         agent.setClasses(results);
         return results;
     }
@@ -1625,10 +2102,13 @@ public final class Console implements MessageListener, AgentProxy
         String agentName = agent.getName();
 //System.out.println("getSchema for agent " + agentName);
         results = new ArrayList<SchemaClass>();
+        ResponseDispatcher.BlockingHandler responses = new ResponseDispatcher.BlockingHandler();
+        String correlationId = _dispatcher.register(responses);
         try
         {
             MapMessage request = _syncSession.createMapMessage();
             request.setJMSReplyTo(_replyAddress);
+            request.setJMSCorrelationID(correlationId);
             request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
             request.setStringProperty("method", "request");
             request.setStringProperty("qmf.opcode", "_query_request");
@@ -1638,49 +2118,48 @@ public final class Console implements MessageListener, AgentProxy
             request.setObject("_what", "SCHEMA");
             request.setObject("_schema_id", schemaClassId.mapEncode());
 
-            // Wrap request & response in synchronized block in case any other threads invoke a request
-            // it would be somewhat unfortunate if their response got interleaved with ours!!
-            synchronized(this)
+            sendRequest(request);
+            Message response = responses.receive(_replyTimeout*1000);
+            if (response == null)
             {
-                _requester.send(request);
-                Message response = _responder.receive(_replyTimeout*1000);
-                if (response == null)
-                {
-                    _log.info("No response received in getSchema()");
-                    return Collections.emptyList();
-                }
+                _log.info("No response received in getSchema()");
+                return Collections.emptyList();
+            }
 
-                if (AMQPMessage.isAMQPList(response))
+            if (AMQPMessage.isAMQPList(response))
+            {
+                List<Map> mapResults = AMQPMessage.getList(response);
+                for (Map content : mapResults)
                 {
-                    List<Map> mapResults = AMQPMessage.getList(response);
-                    for (Map content : mapResults)
+                    SchemaClass schema = new SchemaObjectClass(content);
+                    if (schema.getClassId().getType().equals("_event"))
                     {
-                        SchemaClass schema = new SchemaObjectClass(content);
-                        if (schema.getClassId().getType().equals("_event"))
-                        {
-                            schema = new SchemaEventClass(content);
-                        }
-//schema.listValues();
-                        results.add(schema);
+                        schema = new SchemaEventClass(content);
                     }
+//schema.listValues();
+                    results.add(schema);
                 }
-                else if (AMQPMessage.isAMQPMap(response))
-                {
-                    // Error responses are returned as MapMessages, though they are being ignored here.
-                    //System.out.println("Console.getSchema() no results for " + agentName);
-                    //QmfData exception = new QmfData(AMQPMessage.getMap(response));
-                    //System.out.println(agentName + " " + exception.getStringValue("error_text"));
-                }
-                else
-                {
-                    _log.info("getSchema() Received response message in incorrect format");
-                }
+            }
+            else if (AMQPMessage.isAMQPMap(response))
+            {
+                // Error responses are returned as MapMessages, though they are being ignored here.
+                //System.out.println("Console.getSchema() no results for " + agentName);
+                //QmfData exception = new QmfData(AMQPMessage.getMap(response));
+                //System.out.println(agentName + " " + exception.getStringValue("error_text"));
+            }
+            else
+            {
+                _log.info("getSchema() Received response message in incorrect format");
             }
         }
         catch (JMSException jmse)
         {
             _log.info("JMSException {} caught in getSchema()", jmse.getMessage());
         }
+        finally
+        {
+            _dispatcher.unregister(correlationId);
+        }
         agent.setSchema(schemaClassId, results);
         return results;
     }
@@ -1806,8 +2285,17 @@ public final class Console implements MessageListener, AgentProxy
      * Perform a blocking query for QmfConsoleData objects. Returns a list (possibly empty) of matching objects
      * This method will block until all known Agents reply, or the timeout expires. Once the timeout expires, all
      * data retrieved to date is returned.
+     * <p>
+     * If the query is a PREDICATE QmfQuery its _where predicate is sent to the Agents so that Agents that evaluate
+     * predicates only return the matching objects, rather than every object of the class being transferred and
+     * filtered by the Console. For Agents that ignore predicates, such as the C++ broker, the predicate is applied
+     * by the Console, in which case the QmfQuery should include a SchemaClassId, for example:
+     * <pre>
+     * QmfQuery query = new QmfQuery(QmfQueryTarget.OBJECT, new SchemaClassId("queue"), "['gt', 'msgDepth', 1000]");
+     * List&lt;QmfConsoleData&gt; deepQueues = console.getObjects(query);
+     * </pre>
      * 
-     * @param query the SchemaClassId or ObjectId we're looking up objects for.
+     * @param query the SchemaClassId or ObjectId we're looking up objects for, or a QmfQuery.
      * @return a List of QMF Objects describing that class.
      */
     public List<QmfConsoleData> getObjects(final QmfData query)
@@ -1820,7 +2308,7 @@ public final class Console implements MessageListener, AgentProxy
      * This method will block until all known Agents reply, or the timeout expires. Once the timeout expires, all
      * data retrieved to date is returned.
      * 
-     * @param query the SchemaClassId or ObjectId we're looking up objects for.
+     * @param query the SchemaClassId or ObjectId we're looking up objects for, or a QmfQuery.
      * @param timeout overrides the default replyTimeout.
      * @return a List of QMF Objects describing that class.
      */
@@ -1834,7 +2322,7 @@ public final class Console implements MessageListener, AgentProxy
      * This method will block until all known Agents reply, or the timeout expires. Once the timeout expires, all
      * data retrieved to date is returned.
      * 
-     * @param query the SchemaClassId or ObjectId we're looking up objects for.
+     * @param query the SchemaClassId or ObjectId we're looking up objects for, or a QmfQuery.
      * @param agentList if this parameter is supplied then the query is sent to only those Agents.
      * @return a List of QMF Objects describing that class.
      */
@@ -1847,22 +2335,630 @@ public final class Console implements MessageListener, AgentProxy
      * Perform a blocking query for QmfConsoleData objects. Returns a list (possibly empty) of matching objects
      * This method will block until all known Agents reply, or the timeout expires. Once the timeout expires, all
      * data retrieved to date is returned.
+     * <p>
+     * Where more than one Agent is being queried the query requests are all sent up front and the responses
+     * gathered as they arrive, so the time taken is that of the slowest Agent (bounded by a single timeout) rather
+     * than the sum of every Agent's response time.
      * 
-     * @param query the SchemaClassId or ObjectId we're looking up objects for.
+     * @param query the SchemaClassId or ObjectId we're looking up objects for, or a QmfQuery.
      * @param timeout overrides the default replyTimeout.
      * @param agentList if this parameter is supplied then the query is sent to only those Agents.
      * @return a List of QMF Objects describing that class.
      */
     public List<QmfConsoleData> getObjects(final QmfData query, final int timeout, final List<Agent> agentList)
     {
-        List<QmfConsoleData> results = new ArrayList<QmfConsoleData>();
-        for (Agent agent : agentList)
+        return getObjects(query, timeout, agentList, _lazyDecoding);
+    }
+
+    /**
+     * Perform a blocking query for QmfConsoleData objects, selecting for this call whether the returned objects
+     * are lazily decoded, otherwise it behaves exactly as getObjects(query, timeout, agentList).
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API, see setLazyDecoding().
+     *
+     * @param query the SchemaClassId or ObjectId we're looking up objects for, or a QmfQuery.
+     * @param timeout overrides the default replyTimeout.
+     * @param agentList if this parameter is supplied then the query is sent to only those Agents.
+     * @param lazy if true the returned QmfConsoleData decode their ObjectId and SchemaClassId on first access.
+     * @return a List of QMF Objects describing that class.
+     */
+    public List<QmfConsoleData> getObjects(final QmfData query, final int timeout, final List<Agent> agentList,
+                                           final boolean lazy)
+    {
+        if (agentList.size() == 1)
+        {
+            return getObjects(agentList.get(0), query, null, timeout, lazy);
+        }
+
+        try
+        { // The gathering QmfFuture never fails and always completes by the deadline, so get() won't block forever
+            return getObjectsAsync(query, timeout, agentList, lazy).get();
+        }
+        catch (InterruptedException ie)
         {
-            results.addAll(getObjects(agent, query, null, timeout));
+            Thread.currentThread().interrupt();
+            _log.info("InterruptedException caught in getObjects()");
+        }
+        catch (ExecutionException ee)
+        {
+            _log.info("ExecutionException {} caught in getObjects()", ee.getMessage());
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Perform a blocking incremental query, returning only the matching objects of all known Agents that have been
+     * updated or deleted after the given time, see getObjectsSince(query, since, timeout, agentList).
+     *
+     * @param query the QmfQuery selecting the objects of interest.
+     * @param since the time in nanoseconds since the epoch, normally the latest update time previously seen.
+     * @return a List of the objects updated or deleted since the given time.
+     */
+    public List<QmfConsoleData> getObjectsSince(final QmfQuery query, final long since) throws QmfException
+    {
+        return getObjectsSince(query, since, _replyTimeout, getAgents());
+    }
+
+    /**
+     * Perform a blocking incremental query, returning only the matching objects of the specified Agents that have
+     * been updated or deleted after the given time, see getObjectsSince(query, since, timeout, agentList).
+     *
+     * @param query the QmfQuery selecting the objects of interest.
+     * @param since the time in nanoseconds since the epoch, normally the latest update time previously seen.
+     * @param agentList the Agents to query.
+     * @return a List of the objects updated or deleted since the given time.
+     */
+    public List<QmfConsoleData> getObjectsSince(final QmfQuery query, final long since, final List<Agent> agentList)
+        throws QmfException
+    {
+        return getObjectsSince(query, since, _replyTimeout, agentList);
+    }
+
+    /**
+     * Perform a blocking incremental query, returning only the matching objects of the specified Agents that have
+     * been updated or deleted after the given time. Deleted objects may be recognised via isDeleted().
+     * <p>
+     * This allows a poller to fetch just the changes since its previous poll rather than every object. As the
+     * timestamps are those of the Agent the since time should be the latest getUpdateTime() that the poller has
+     * previously seen rather than a time taken from the Console's own clock, for example:
+     * <pre>
+     * List&lt;QmfConsoleData&gt; changes = console.getObjectsSince(query, lastUpdate);
+     * for (QmfConsoleData object : changes)
+     * {
+     *     lastUpdate = Math.max(lastUpdate, object.getUpdateTime());
+     *     ...
+     * }
+     * </pre>
+     * The "_since" clause is an extension to the QMF2 protocol. Agents that don't support it, such as the C++
+     * broker ManagementAgent, return every matching object, so the Console filters these by update time too,
+     * though such Agents don't report deleted objects.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @param query the QmfQuery selecting the objects of interest, it isn't modified.
+     * @param since the time in nanoseconds since the epoch, normally the latest update time previously seen.
+     * @param timeout overrides the default replyTimeout.
+     * @param agentList the Agents to query.
+     * @return a List of the objects updated or deleted since the given time.
+     */
+    public List<QmfConsoleData> getObjectsSince(final QmfQuery query, final long since, final int timeout,
+                                                final List<Agent> agentList) throws QmfException
+    {
+        QmfQuery incremental = new QmfQuery(new HashMap<String, Object>(query.mapEncode()));
+        incremental.setSince(since);
+
+        List<QmfConsoleData> objects = getObjects(incremental, timeout, agentList);
+        List<QmfConsoleData> results = new ArrayList<QmfConsoleData>(objects.size());
+        for (QmfConsoleData object : objects)
+        {
+            if (object.getUpdateTime() > since)
+            {
+                results.add(object);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Perform a query for QmfConsoleData objects on the specified Agent, returning a QueryResultIterator that
+     * receives and decodes each of the Agent's partial responses only as the objects are consumed, rather than
+     * collecting the whole result in memory as getObjects() does.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API, it's intended for clients such as
+     * exporters that need to process every object on a large broker. For example:
+     * <pre>
+     * QueryResultIterator queues = console.streamObjects(broker, new SchemaClassId("queue"));
+     * try
+     * {
+     *     while (queues.hasNext())
+     *     {
+     *         QmfConsoleData queue = queues.next();
+     *         ...
+     *     }
+     * }
+     * finally
+     * {
+     *     queues.close();
+     * }
+     * </pre>
+     *
+     * @param agent the Agent being queried.
+     * @param query the SchemaClassId or ObjectId we're looking up objects for, or a QmfQuery.
+     * @return a QueryResultIterator over the matching objects.
+     */
+    public QueryResultIterator streamObjects(final Agent agent, final QmfData query) throws QmfException
+    {
+        return streamObjects(agent, query, _replyTimeout);
+    }
+
+    /**
+     * Perform a query for QmfConsoleData objects on the specified Agent, returning a QueryResultIterator that
+     * receives and decodes each of the Agent's partial responses only as the objects are consumed.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API, see streamObjects(agent, query).
+     *
+     * @param agent the Agent being queried.
+     * @param query the SchemaClassId or ObjectId we're looking up objects for, or a QmfQuery.
+     * @param timeout the maximum time in seconds to wait for each response from the Agent.
+     * @return a QueryResultIterator over the matching objects.
+     */
+    public QueryResultIterator streamObjects(final Agent agent, final QmfData query, int timeout)
+        throws QmfException
+    {
+        timeout = (timeout < 1) ? _replyTimeout : timeout;
+        Session session = null;
+        try
+        { // Each stream gets its own Session and reply address so that it can be consumed with a blocking receive.
+            session = _connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Destination replyAddress = session.createQueue(createStreamAddress());
+            MessageConsumer consumer = session.createConsumer(replyAddress);
+            QueryResultIterator results = new QueryResultIterator(session, consumer, agent, query,
+                                                                  timeout*1000L, _lazyDecoding);
+            sendRequest(createQueryRequest(agent.getName(), query, replyAddress));
+            return results;
+        }
+        catch (JMSException jmse)
+        {
+            if (session != null)
+            {
+                try
+                {
+                    session.close();
+                }
+                catch (JMSException e)
+                { // Ignore, the original exception is the one that matters.
+                }
+            }
+            throw new QmfException("JMSException " + jmse.getMessage() + " caught in streamObjects()");
+        }
+    }
+
+    /**
+     * Create the reply address for a streamObjects() call. This applies the address options passed to
+     * addConnection(), as for the Console's other queues, so a named queue gets a "-stream-N" variant of its name,
+     * and adds the STREAM_CAPACITY link capacity unless the options already give a capacity.
+     *
+     * @return the reply address for a streamObjects() call.
+     */
+    private String createStreamAddress()
+    {
+        long sequence = _streamSequence.incrementAndGet();
+        String options = _streamAddressOptions;
+        if (_streamQueueName != null)
+        {
+            options = options.replace(_streamQueueName, _streamQueueName + "-stream-" + sequence);
+        }
+
+        String capacity = "capacity: " + STREAM_CAPACITY;
+        if (options.equals(""))
+        {
+            options = " ; {link: {" + capacity + "}}";
+        }
+        else if (!options.contains("capacity"))
+        {
+            if (EMPTY_LINK.matcher(options).find())
+            {
+                options = EMPTY_LINK.matcher(options).replaceFirst("link: {" + capacity + "}");
+            }
+            else if (LINK.matcher(options).find())
+            {
+                options = LINK.matcher(options).replaceFirst("$0" + capacity + ", ");
+            }
+            else
+            {
+                options = options.replaceFirst("\\{", "{link: {" + capacity + "}, ");
+            }
+        }
+        return _address + ".stream-" + sequence + options;
+    }
+
+    /**
+     * Perform a blocking aggregate query, returning the aggregated results computed over the matching objects of
+     * all known Agents, see aggregate(query, timeout, agentList).
+     *
+     * @param query the QmfQuery carrying the Aggregate.
+     * @return a List of the aggregated results.
+     */
+    public List<QmfData> aggregate(final QmfQuery query) throws QmfException
+    {
+        return aggregate(query, _replyTimeout, getAgents());
+    }
+
+    /**
+     * Perform a blocking aggregate query, returning the aggregated results computed over the matching objects of
+     * all known Agents, see aggregate(query, timeout, agentList).
+     *
+     * @param query the QmfQuery carrying the Aggregate.
+     * @param timeout overrides the default replyTimeout.
+     * @return a List of the aggregated results.
+     */
+    public List<QmfData> aggregate(final QmfQuery query, final int timeout) throws QmfException
+    {
+        return aggregate(query, timeout, getAgents());
+    }
+
+    /**
+     * Perform a blocking aggregate query, returning the aggregated results computed over the matching objects. This
+     * method will block until all Agents reply, or the timeout expires.
+     * <p>
+     * Each result holds the group property values, the Aggregate.COUNT of matching objects in the group and the
+     * value of each metric, e.g. getLongValue("sum(msgDepth)"), see Aggregate. For example, to get the total
+     * msgDepth of the queues on each vhost:
+     * <pre>
+     * Aggregate aggregate = new Aggregate();
+     * aggregate.setGroup("vhostRef");
+     * aggregate.addMetric("sum", "msgDepth");
+     * QmfQuery query = new QmfQuery(QmfQueryTarget.OBJECT, new SchemaClassId("queue"));
+     * query.setAggregate(aggregate);
+     * List&lt;QmfData&gt; totals = console.aggregate(query);
+     * </pre>
+     * Agents that support "_aggregate" return only the aggregated results, which are merged across Agents. Agents
+     * that don't, such as the C++ broker, return the matching objects, which are then aggregated by the Console so
+     * the results are the same either way, though the QmfQuery should then include a SchemaClassId.
+     * <p>
+     * This method is <b>not</b> an official method specified in the QMF2 API.
+     *
+     * @param query the QmfQuery carrying the Aggregate.
+     * @param timeout overrides the default replyTimeout.
+     * @param agentList the Agents to send the query to.
+     * @return a List of the aggregated results.
+     */
+    public List<QmfData> aggregate(final QmfQuery query, final int timeout, final List<Agent> agentList)
+        throws QmfException
+    {
+        Aggregate aggregate = query.getAggregate();
+        if (aggregate == null)
+        {
+            throw new QmfException("Called aggregate() with a QmfQuery that has no Aggregate");
+        }
+
+        Aggregator aggregator = new Aggregator(aggregate);
+        for (QmfConsoleData object : getObjects(query, timeout, agentList, true))
+        {
+            if (object.isAggregateResult())
+            { // An aggregated result computed by the Agent.
+                aggregator.merge(object.mapEncode());
+            }
+            else
+            { // An object returned by an Agent that doesn't support _aggregate, so aggregate it here.
+                aggregator.add(object.mapEncode());
+            }
+        }
+
+        List<Map<String, Object>> groups = aggregator.getResults();
+        List<QmfData> results = new ArrayList<QmfData>(groups.size());
+        for (Map<String, Object> group : groups)
+        {
+            results.add(new QmfData(group));
         }
         return results;
     }
 
+    //                                     QmfFuture based asynchronous API
+    // ********************************************************************************************************
+
+    /**
+     * Perform an asynchronous query for QmfConsoleData objects, returning a QmfFuture that completes with a list
+     * (possibly empty) of matching objects once the Agent has sent its final response.
+     * <p>
+     * This is an alternative to supplying a replyHandle and matching WorkItems on the WorkQueue. As with the
+     * blocking getObjects(), if the timeout expires before the final response arrives the QmfFuture completes with
+     * all data retrieved to date.
+     *
+     * @param agent the Agent being queried.
+     * @param query the SchemaClassId or ObjectId we're looking up objects for, or a QmfQuery.
+     * @param timeout the request deadline in seconds, a value of -1 means use the default replyTimeout.
+     * @return a QmfFuture that will complete with the List of QMF Objects.
+     */
+    public QmfFuture<List<QmfConsoleData>> getObjectsAsync(final Agent agent, final QmfData query, final int timeout)
+        throws QmfException
+    {
+        return getObjectsAsync(agent, query, timeout, _lazyDecoding);
+    }
+
+    /**
+     * Perform an asynchronous query for QmfConsoleData objects, selecting for this call whether the returned
+     * objects are lazily decoded, otherwise it behaves exactly as getObjectsAsync(agent, query, timeout).
+     *
+     * @param agent the Agent being queried.
+     * @param query the SchemaClassId or ObjectId we're looking up objects for, or a QmfQuery.
+     * @param timeout the request deadline in seconds, a value of -1 means use the default replyTimeout.
+     * @param lazy if true the returned QmfConsoleData decode their ObjectId and SchemaClassId on first access.
+     * @return a QmfFuture that will complete with the List of QMF Objects.
+     */
+    public QmfFuture<List<QmfConsoleData>> getObjectsAsync(final Agent agent, final QmfData query, final int timeout,
+                                                           final boolean lazy) throws QmfException
+    {
+        if (agent == null)
+        {
+            throw new QmfException("Called getObjectsAsync() with null agent");
+        }
+
+        AsyncRequest<List<QmfConsoleData>> request = new AsyncRequest<List<QmfConsoleData>>("getObjectsAsync")
+        {
+            private final List<QmfConsoleData> _partials = new ArrayList<QmfConsoleData>();
+
+            @Override
+            void handleResponse(final Message response) throws JMSException
+            {
+                boolean lastResult = !response.propertyExists("partial");
+                if (AMQPMessage.isAMQPList(response))
+                {
+                    List<Map> mapResults = AMQPMessage.getList(response);
+                    synchronized(_partials)
+                    {
+                        for (Map content : mapResults)
+                        {
+                            _partials.add(new QmfConsoleData(content, agent, lazy));
+                        }
+                    }
+                }
+                else if (!AMQPMessage.isAMQPMap(response))
+                { // Error responses are returned as MapMessages, though they are being ignored here.
+                    _log.info("getObjectsAsync() Received response message in incorrect format");
+                }
+
+                if (lastResult)
+                {
+                    onTimeout();
+                }
+            }
+
+            @Override
+            void onTimeout()
+            {
+                synchronized(_partials)
+                {
+                    List<QmfConsoleData> objects = applyPredicate(query, new ArrayList<QmfConsoleData>(_partials));
+                    _future.complete(applyOrderAndLimit(query, objects));
+                }
+            }
+        };
+
+        try
+        {
+            return request.send(createQueryRequest(agent.getName(), query, _replyAddress), timeout, true);
+        }
+        catch (JMSException jmse)
+        {
+            _log.info("JMSException {} caught in getObjectsAsync()", jmse.getMessage());
+            throw new QmfException(jmse.getMessage());
+        }
+    }
+
+    /**
+     * Perform an asynchronous query for QmfConsoleData objects across a number of Agents, returning a QmfFuture
+     * that completes with the combined list (possibly empty) of matching objects.
+     * <p>
+     * The query requests are sent to every Agent up front and the responses (including partial responses) are
+     * gathered as they arrive. The QmfFuture completes when all of the Agents have sent their final response or
+     * the timeout expires, in which case all data retrieved to date is returned. An Agent that fails to respond
+     * simply contributes no objects, it doesn't fail the whole query. Cancelling the returned QmfFuture cancels
+     * all of the outstanding Agent queries.
+     *
+     * @param query the SchemaClassId or ObjectId we're looking up objects for, or a QmfQuery.
+     * @param timeout the overall deadline in seconds, a value of -1 means use the default replyTimeout.
+     * @param agentList the Agents to send the query to.
+     * @return a QmfFuture that will complete with the List of QMF Objects.
+     */
+    public QmfFuture<List<QmfConsoleData>> getObjectsAsync(final QmfData query, final int timeout,
+                                                           final List<Agent> agentList)
+    {
+        return getObjectsAsync(query, timeout, agentList, _lazyDecoding);
+    }
+
+    /**
+     * Perform an asynchronous query across a number of Agents as described in getObjectsAsync(query, timeout,
+     * agentList), selecting whether the returned objects are lazily decoded.
+     *
+     * @param query the SchemaClassId or ObjectId we're looking up objects for, or a QmfQuery.
+     * @param timeout the overall deadline in seconds, a value of -1 means use the default replyTimeout.
+     * @param agentList the Agents to send the query to.
+     * @param lazy if true the returned QmfConsoleData decode their ObjectId and SchemaClassId on first access.
+     * @return a QmfFuture that will complete with the List of QMF Objects.
+     */
+    private QmfFuture<List<QmfConsoleData>> getObjectsAsync(final QmfData query, final int timeout,
+                                                            final List<Agent> agentList, final boolean lazy)
+    {
+        final QmfFuture<List<QmfConsoleData>> future = new QmfFuture<List<QmfConsoleData>>();
+        final List<QmfConsoleData> results = new ArrayList<QmfConsoleData>();
+        final List<QmfFuture<List<QmfConsoleData>>> queries =
+            new ArrayList<QmfFuture<List<QmfConsoleData>>>(agentList.size());
+        final AtomicInteger outstanding = new AtomicInteger(agentList.size());
+
+        if (agentList.size() == 0)
+        {
+            future.complete(results);
+            return future;
+        }
+
+        future.setCompletionHook(new Runnable()
+        {
+            public void run()
+            { // Only has any effect if the gathering QmfFuture was cancelled before all Agents responded.
+                synchronized(queries)
+                {
+                    for (QmfFuture<List<QmfConsoleData>> agentQuery : queries)
+                    {
+                        agentQuery.cancel(false);
+                    }
+                }
+            }
+        });
+
+        QmfFuture.Callback<List<QmfConsoleData>> gather = new QmfFuture.Callback<List<QmfConsoleData>>()
+        {
+            public void onSuccess(final List<QmfConsoleData> objects)
+            {
+                synchronized(results)
+                {
+                    results.addAll(objects);
+                }
+                agentDone();
+            }
+
+            public void onFailure(final QmfException cause)
+            {
+                _log.info("Agent query failed in getObjectsAsync(): {}", cause.getMessage());
+                agentDone();
+            }
+
+            private void agentDone()
+            {
+                if (outstanding.decrementAndGet() == 0)
+                {
+                    synchronized(results)
+                    {
+                        // Each Agent returns its own first objects, so order and limit them across the Agents.
+                        future.complete(applyOrderAndLimit(query, new ArrayList<QmfConsoleData>(results)));
+                    }
+                }
+            }
+        };
+
+        for (Agent agent : agentList)
+        {
+            try
+            {
+                QmfFuture<List<QmfConsoleData>> agentQuery = getObjectsAsync(agent, query, timeout, lazy);
+                synchronized(queries)
+                {
+                    queries.add(agentQuery);
+                }
+                if (future.isCancelled())
+                { // Cancelled part way through sending, so the completion hook may have missed this query.
+                    agentQuery.cancel(false);
+                }
+                agentQuery.addCallback(gather);
+            }
+            catch (QmfException qmfe)
+            {
+                gather.onFailure(qmfe);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Request that the Agent update the value of an object's contents, returning a QmfFuture that completes with
+     * the refreshed object, or null if the Agent no longer has the object.
+     *
+     * @param agent the Agent to get the refresh from.
+     * @param objectId the ObjectId being queried for.
+     * @param timeout the request deadline in seconds, a value of -1 means use the default replyTimeout.
+     * @return a QmfFuture that will complete with the refreshed object.
+     */
+    public QmfFuture<QmfConsoleData> refreshAsync(final Agent agent, final ObjectId objectId, final int timeout)
+        throws QmfException
+    {
+        final QmfFuture<List<QmfConsoleData>> query = getObjectsAsync(agent, objectId, timeout);
+        final QmfFuture<QmfConsoleData> future = new QmfFuture<QmfConsoleData>();
+        future.setCompletionHook(new Runnable()
+        {
+            public void run()
+            { // If the refresh gets cancelled stop waiting for the underlying query too.
+                query.cancel(false);
+            }
+        });
+        query.addCallback(new QmfFuture.Callback<List<QmfConsoleData>>()
+        {
+            public void onSuccess(final List<QmfConsoleData> objects)
+            {
+                future.complete((objects.size() == 0) ? null : objects.get(0));
+            }
+
+            public void onFailure(final QmfException cause)
+            {
+                future.fail(cause);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Invoke the named method on an object managed by the given Agent, returning a QmfFuture that completes with
+     * the MethodResult. If the Agent returns an exception the QmfFuture fails with the corresponding QmfException.
+     *
+     * @param agent the Agent to invoke the method on.
+     * @param objectId the ObjectId of the object to invoke the method on, null for an Agent level method.
+     * @param name the remote method name.
+     * @param inArgs the formal parameters of the remote method, may be null.
+     * @param timeout the request deadline in seconds, a value of -1 means use the default replyTimeout.
+     * @return a QmfFuture that will complete with the MethodResult.
+     */
+    public QmfFuture<MethodResult> invokeMethodAsync(final Agent agent, final ObjectId objectId, final String name,
+                                                     final QmfData inArgs, final int timeout) throws QmfException
+    {
+        if (agent == null)
+        {
+            throw new QmfException("Called invokeMethodAsync() with null agent");
+        }
+        return invokeMethodAsync(agent, agent.createRequest(objectId, name, inArgs), timeout);
+    }
+
+    /**
+     * Invoke a method on the given Agent, returning a QmfFuture that completes with the MethodResult. If the Agent
+     * returns an exception the QmfFuture fails with the corresponding QmfException.
+     *
+     * @param agent the Agent to invoke the method on.
+     * @param content an unordered set of key/value pairs comprising the method arguments.
+     * @param timeout the request deadline in seconds, a value of -1 means use the default replyTimeout.
+     * @return a QmfFuture that will complete with the MethodResult.
+     */
+    public QmfFuture<MethodResult> invokeMethodAsync(final Agent agent, final Map<String, Object> content,
+                                                     final int timeout) throws QmfException
+    {
+        if (!agent.isActive())
+        {
+            throw new QmfException("Called invokeMethodAsync() with inactive agent");
+        }
+
+        AsyncRequest<MethodResult> request = new AsyncRequest<MethodResult>("invokeMethodAsync")
+        {
+            @Override
+            void handleResponse(final Message response) throws JMSException, QmfException
+            {
+                MethodResult result = new MethodResult(AMQPMessage.getMap(response));
+                QmfException exception = result.getQmfException();
+                if (exception != null)
+                {
+                    throw exception;
+                }
+                _future.complete(result);
+            }
+        };
+
+        try
+        {
+            return request.send(createMethodRequest(agent.getName(), content, _replyAddress), timeout, true);
+        }
+        catch (JMSException jmse)
+        {
+            _log.info("JMSException {} caught in invokeMethodAsync()", jmse.getMessage());
+            throw new QmfException(jmse.getMessage());
+        }
+    }
+
     /**
      * Creates a subscription to the agent using the given Query.
      * <p>
@@ -1913,10 +3009,53 @@ public final class Console implements MessageListener, AgentProxy
      *        <b>publishInterval</b> the requested time interval in seconds on which the Agent should publish updates
      *        <b>replyHandle</b> the correlation handle used to tie asynchronous method requests with responses.
      *        <b>timeout</b> the time to wait for a reply from the Agent.
+     *        <b>delta</b> if true ask the Agent to publish only the properties that have changed, the Console
+     *                     merges them so SubscriptionIndications still carry complete objects.
      * </pre>
      */
     public synchronized SubscribeParams createSubscription(final Agent agent, final QmfQuery query,
                                                 final String consoleHandle, final String options) throws QmfException
+    {
+        return createSubscription(agent, query, consoleHandle, options, null);
+    }
+
+    /**
+     * Creates a subscription to the agent using the given Query, returning a QmfFuture that completes with the
+     * SubscribeParams once the Agent has responded to the subscription request.
+     * <p>
+     * This behaves exactly like createSubscription() except that the replyHandle option is ignored. The timeout
+     * option is used as the request deadline, if the deadline expires or the QmfFuture is cancelled before the
+     * Agent responds the Console side Subscription is cancelled.
+     *
+     * @param agent the Agent on which to create the subscription.
+     * @param query the Query to perform on the Agent
+     * @param consoleHandle an application-provided handle that will accompany each subscription update sent
+     *        from the Agent.
+     * @param options a String representation of a Map containing the options as described in createSubscription().
+     * @return a QmfFuture that will complete with the SubscribeParams.
+     */
+    public synchronized QmfFuture<SubscribeParams> createSubscriptionAsync(final Agent agent, final QmfQuery query,
+                                                final String consoleHandle, final String options) throws QmfException
+    {
+        QmfFuture<SubscribeParams> future = new QmfFuture<SubscribeParams>();
+        createSubscription(agent, query, consoleHandle, options, future);
+        return future;
+    }
+
+    /**
+     * Creates a subscription to the agent using the given Query. If future is non-null the subscription request
+     * completes the QmfFuture, otherwise it behaves as described in the public createSubscription().
+     *
+     * @param agent the Agent on which to create the subscription.
+     * @param query the Query to perform on the Agent
+     * @param consoleHandle an application-provided handle that will accompany each subscription update sent
+     *        from the Agent.
+     * @param options a String representation of a Map containing the options.
+     * @param future the QmfFuture to complete with the result of the subscription request, may be null.
+     */
+    private SubscribeParams createSubscription(final Agent agent, final QmfQuery query, final String consoleHandle,
+                                               final String options, final QmfFuture<SubscribeParams> future)
+        throws QmfException
     {
         if (consoleHandle == null)
         {
@@ -1941,6 +3080,7 @@ public final class Console implements MessageListener, AgentProxy
         long publishInterval = 10000;
         long timeout = _replyTimeout;
         String replyHandle = null;
+        boolean delta = false;
 
         if (options != null)
         { // We wrap the Map in a QmfData object to avoid potential class cast issues with the parsed options
@@ -1961,10 +3101,15 @@ public final class Console implements MessageListener, AgentProxy
                 timeout = optMap.getLongValue("timeout");
             }
 
-            if (optMap.hasValue("replyHandle"))
+            if (optMap.hasValue("replyHandle") && future == null)
             {
                 replyHandle = optMap.getStringValue("replyHandle");
             }
+
+            if (optMap.hasValue("delta"))
+            {
+                delta = optMap.getBooleanValue("delta");
+            }
         }
 
         try
@@ -1980,10 +3125,16 @@ public final class Console implements MessageListener, AgentProxy
             request.setObject("_query", query.mapEncode());
             request.setObject("_interval", publishInterval);
             request.setObject("_duration", lifetime);
+            if (delta)
+            {
+                request.setObject("_delta", Boolean.TRUE);
+            }
 
-            SubscriptionManager subscription =
+            final SubscriptionManager subscription =
                 new SubscriptionManager(agent, query, consoleHandle, replyHandle, publishInterval, lifetime);
+            subscription.setFuture(future);
             _subscriptionByHandle.put(consoleHandle, subscription);
+            _subscriptionIndex.add(subscription);
             _timer.schedule(subscription, 0, publishInterval);
 
             if (_subscriptionEmulationEnabled && agentName.equals(_brokerAgentName))
@@ -1992,7 +3143,11 @@ public final class Console implements MessageListener, AgentProxy
                 _subscriptionById.put(subscriptionId, subscription);
                 subscription.setSubscriptionId(subscriptionId);
                 final SubscribeParams params = new SubscribeParams(consoleHandle, subscription.mapEncode());
-                if (replyHandle == null)
+                if (future != null)
+                {
+                    future.complete(params);
+                }
+                else if (replyHandle == null)
                 {
                     return params;
                 }
@@ -2011,7 +3166,26 @@ public final class Console implements MessageListener, AgentProxy
                 return null;
             }
 
-            _requester.send(request);
+            // Set before sending the request, as the first indication may arrive before the _subscribe_response.
+            subscription.setDelta(delta);
+
+            if (future != null)
+            { // The QmfFuture is completed by onMessage() when the _subscribe_response arrives
+                new AsyncRequest<SubscribeParams>("createSubscriptionAsync", future)
+                {
+                    @Override
+                    void onCompletion()
+                    {
+                        if (subscription.getSubscriptionId() == null)
+                        { // Timed out or cancelled before the Agent responded, so tidy up the Subscription
+                            subscription.cancel();
+                        }
+                    }
+                }.send(request, timeout, false);
+                return null;
+            }
+
+            sendRequest(request);
             if (replyHandle == null)
             { // If this is an synchronous request get the response
                 subscription.await(timeout*1000);
@@ -2109,12 +3283,13 @@ public final class Console implements MessageListener, AgentProxy
             }
         }
 
+        ResponseDispatcher.BlockingHandler responses = null;
+        String correlationId = replyHandle;
         try
         {
             Destination destination = (replyHandle == null) ? _replyAddress : _asyncReplyAddress;
             MapMessage request = _syncSession.createMapMessage();
             request.setJMSReplyTo(destination);
-            request.setJMSCorrelationID(replyHandle);
             request.setStringProperty("x-amqp-0-10.app-id", "qmf2");
             request.setStringProperty("method", "request");
             request.setStringProperty("qmf.opcode", "_subscribe_refresh_indication");
@@ -2126,56 +3301,58 @@ public final class Console implements MessageListener, AgentProxy
                 request.setObject("_duration", lifetime);
             }
 
-            // Wrap request & response in synchronized block in case any other threads invoke a request
-            // it would be somewhat unfortunate if their response got interleaved with ours!!
-            synchronized(this)
-            {
-                if (_subscriptionEmulationEnabled && agentName.equals(_brokerAgentName))
-                { // If the Agent is the broker Agent we emulate the Subscription on the Console
-                    subscription.refresh();
-                    final SubscribeParams params = new SubscribeParams(consoleHandle, subscription.mapEncode());
-                    if (replyHandle == null)
-                    {
-                        return params;
-                    }
-                    else
+            if (_subscriptionEmulationEnabled && agentName.equals(_brokerAgentName))
+            { // If the Agent is the broker Agent we emulate the Subscription on the Console
+                subscription.refresh();
+                final SubscribeParams params = new SubscribeParams(consoleHandle, subscription.mapEncode());
+                if (replyHandle == null)
+                {
+                    return params;
+                }
+                else
+                {
+                    final String handle = replyHandle;
+                    Thread thread = new Thread()
                     {
-                        final String handle = replyHandle;
-                        Thread thread = new Thread()
+                        public void run()
                         {
-                            public void run()
-                            {
-                                _eventListener.onEvent(new SubscribeResponseWorkItem(new Handle(handle), params));
-                            }
-                        };
-                        thread.start();
-                    }
-                    return null;
+                            _eventListener.onEvent(new SubscribeResponseWorkItem(new Handle(handle), params));
+                        }
+                    };
+                    thread.start();
                 }
+                return null;
+            }
 
-                _requester.send(request);
-                if (replyHandle == null)
-                { // If this is an synchronous request get the response
-                    Message response = _responder.receive(timeout*1000);
-                    if (response == null)
-                    {
-                        subscription.cancel();
-                        _log.info("No response received in refreshSubscription()");
-                        throw new QmfException("No response received for Console.refreshSubscription()");
-                    }
-                    SubscribeParams result = new SubscribeParams(consoleHandle, AMQPMessage.getMap(response));
-                    subscriptionId = result.getSubscriptionId();
-                    if (subscriptionId == null)
-                    {
-                        subscription.cancel();
-                    }
-                    else
-                    {
-                        subscription.setDuration(result.getLifetime());
-                        subscription.refresh();
-                    }
-                    return result;
+            if (replyHandle == null)
+            { // If this is a synchronous request register to have the response routed back to this thread
+                responses = new ResponseDispatcher.BlockingHandler();
+                correlationId = _dispatcher.register(responses);
+            }
+            request.setJMSCorrelationID(correlationId);
+
+            sendRequest(request);
+            if (replyHandle == null)
+            { // If this is an synchronous request get the response
+                Message response = responses.receive(timeout*1000);
+                if (response == null)
+                {
+                    subscription.cancel();
+                    _log.info("No response received in refreshSubscription()");
+                    throw new QmfException("No response received for Console.refreshSubscription()");
+                }
+                SubscribeParams result = new SubscribeParams(consoleHandle, AMQPMessage.getMap(response));
+                subscriptionId = result.getSubscriptionId();
+                if (subscriptionId == null)
+                {
+                    subscription.cancel();
+                }
+                else
+                {
+                    subscription.setDuration(result.getLifetime());
+                    subscription.refresh();
                 }
+                return result;
             }
             // If this is an asynchronous request return without waiting for a response
             return null;
@@ -2185,6 +3362,13 @@ public final class Console implements MessageListener, AgentProxy
             _log.info("JMSException {} caught in refreshSubscription()", jmse.getMessage());
             throw new QmfException(jmse.getMessage());
         }
+        finally
+        {
+            if (responses != null)
+            {
+                _dispatcher.unregister(correlationId);
+            }
+        }
     } // end of refreshSubscription()
 
     /**
@@ -2220,12 +3404,9 @@ public final class Console implements MessageListener, AgentProxy
             request.setStringProperty("qpid.subject", agentName);
             request.setObject("_subscription_id", subscriptionId);
 
-            synchronized(this)
+            if (!_subscriptionEmulationEnabled || !agentName.equals(_brokerAgentName))
             {
-                if (!_subscriptionEmulationEnabled || !agentName.equals(_brokerAgentName))
-                {
-                    _requester.send(request);
-                }
+                sendRequest(request);
             }
             subscription.cancel();
         }
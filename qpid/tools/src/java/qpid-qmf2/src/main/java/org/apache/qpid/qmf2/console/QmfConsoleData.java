@@ -21,6 +21,7 @@
 package org.apache.qpid.qmf2.console;
 
 // Misc Imports
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -54,6 +55,7 @@ public class QmfConsoleData extends QmfManaged
     private long _updateTimestamp;
     private long _createTimestamp;
     private long _deleteTimestamp;
+    private boolean _aggregateResult;
 
     /**
      * The main constructor, taking a java.util.Map as a parameter. In essence it "deserialises" its state from the Map.
@@ -63,11 +65,29 @@ public class QmfConsoleData extends QmfManaged
      */
     public QmfConsoleData(final Map m, final Agent a)
     {
-        super(m);
+        this(m, a, false);
+    }
+
+    /**
+     * Constructor taking a java.util.Map as a parameter, optionally deferring the decoding of the ObjectId and
+     * SchemaClassId until they are first accessed.
+     * <p>
+     * The property values are always read directly from the decoded Map as they are accessed, so a lazily decoded
+     * QmfConsoleData does almost no work up front. This suits Consoles that retrieve large numbers of objects but
+     * only look at a few properties of each, see Console.setLazyDecoding().
+     *
+     * @param m the map used to construct the SchemaClass.
+     * @param a the Agent that manages this object.
+     * @param lazy if true the ObjectId and SchemaClassId are decoded on first access rather than during construction.
+     */
+    public QmfConsoleData(final Map m, final Agent a, final boolean lazy)
+    {
+        super(m, lazy);
         long currentTime = System.currentTimeMillis()*1000000l;
         _updateTimestamp = m.containsKey("_update_ts") ? getLong(m.get("_update_ts")) : currentTime;
         _createTimestamp = m.containsKey("_create_ts") ? getLong(m.get("_create_ts")) : currentTime;
         _deleteTimestamp = m.containsKey("_delete_ts") ? getLong(m.get("_delete_ts")) : currentTime;
+        _aggregateResult = isAggregateResult(m);
         _agent = a;
     }
 
@@ -86,12 +106,13 @@ public class QmfConsoleData extends QmfManaged
         _subtypes = subtypes;
 
         setSchemaClassId(new SchemaClassId((Map)m.get("_schema_id")));
-        setObjectId(new ObjectId((Map)m.get("_object_id")));
+        setObjectId(ObjectId.intern(new ObjectId((Map)m.get("_object_id"))));
 
         long currentTime = System.currentTimeMillis()*1000000l;
         _updateTimestamp = m.containsKey("_update_ts") ? getLong(m.get("_update_ts")) : currentTime;
         _createTimestamp = m.containsKey("_create_ts") ? getLong(m.get("_create_ts")) : currentTime;
         _deleteTimestamp = m.containsKey("_delete_ts") ? getLong(m.get("_delete_ts")) : currentTime;
+        _aggregateResult = isAggregateResult(m);
     }
 
     /**
@@ -105,6 +126,7 @@ public class QmfConsoleData extends QmfManaged
         _subtypes = rhs._subtypes;
         setSchemaClassId(rhs.getSchemaClassId());
         setObjectId(rhs.getObjectId());
+        _aggregateResult = rhs._aggregateResult;
         _updateTimestamp = rhs._updateTimestamp;
         _createTimestamp = rhs._createTimestamp;
         _deleteTimestamp = rhs._deleteTimestamp;
@@ -262,6 +284,58 @@ public class QmfConsoleData extends QmfManaged
         _agent.invokeMethod(getObjectId(), name, inArgs, replyHandle);
     }
 
+    /**
+     * Return true if a Map encoded result has neither an ObjectId nor a SchemaClassId, which is the case for the
+     * results of an "_aggregate" query computed by an Agent.
+     */
+    private static boolean isAggregateResult(final Map m)
+    {
+        return !m.containsKey("_object_id") && !m.containsKey("_schema_id");
+    }
+
+    /**
+     * Return true if this is an aggregated result computed by the Agent rather than a managed object. This is
+     * decided from the encoded result, as an eagerly decoded QmfConsoleData always has a SchemaClassId.
+     * @return true if this is an aggregated result computed by the Agent rather than a managed object.
+     */
+    final boolean isAggregateResult()
+    {
+        return _aggregateResult;
+    }
+
+    /**
+     * Remove the named properties, used by the Console to strip the properties that it added to a query's "_select"
+     * projection in order to evaluate the query's predicate.
+     *
+     * @param names the names of the properties to remove.
+     */
+    final void removeValues(final Collection<String> names)
+    {
+        values().keySet().removeAll(names);
+    }
+
+    /**
+     * Return the Map encoded form of this object in the form that an Agent publishes it, used by a delta mode
+     * SubscriptionManager to retain an object that it has obtained by refreshing it.
+     *
+     * @return the Map encoded form of this object.
+     */
+    final Map<String, Object> encode()
+    {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("_values", values());
+        if (_subtypes != null)
+        {
+            map.put("_subtypes", _subtypes);
+        }
+        map.put("_schema_id", getSchemaClassId().mapEncode());
+        map.put("_object_id", getObjectId().mapEncode());
+        map.put("_update_ts", _updateTimestamp);
+        map.put("_create_ts", _createTimestamp);
+        map.put("_delete_ts", _deleteTimestamp);
+        return map;
+    }
+
     /**
      * Helper/debug method to list the QMF Object properties and their type.
      */
@@ -0,0 +1,328 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.console;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.QmfException;
+
+/**
+ * A QmfFuture represents the pending result of an asynchronous Console request such as getObjectsAsync(),
+ * invokeMethodAsync(), refreshAsync() or createSubscriptionAsync().
+ * <p>
+ * It's a java.util.concurrent.Future so it may be used in the usual blocking way via get(), but it's mainly
+ * intended to be used by registering a Callback via addCallback(), which allows large numbers of management
+ * calls to be in flight simultaneously without needing a thread per outstanding request and without needing to
+ * poll the Console's WorkQueue and match WorkItems up with replyHandles by hand.
+ * <p>
+ * Callbacks are fired on the thread that completes the QmfFuture, which will generally be the JMS MessageListener
+ * thread that received the response or the Console's Timer thread if the request's deadline expired. Like the
+ * QmfEventListener, Callbacks should therefore avoid doing anything time consuming. A Callback added after the
+ * QmfFuture has completed is fired immediately on the calling thread.
+ * <p>
+ * Note that this is a lightweight equivalent of the Java 8 CompletableFuture, as the QMF2 API needs to continue to
+ * run on Java 7.
+ *
+ * @param <T> the type of the result.
+ */
+public final class QmfFuture<T> implements Future<T>
+{
+    private static final Logger _log = LoggerFactory.getLogger(QmfFuture.class);
+
+    /**
+     * Callback interface used to receive notification of the completion of a QmfFuture.
+     *
+     * @param <T> the type of the result.
+     */
+    public interface Callback<T>
+    {
+        /**
+         * Called when the request completes successfully.
+         * @param result the result of the request.
+         */
+        public void onSuccess(T result);
+
+        /**
+         * Called when the request fails, times out or is cancelled.
+         * @param cause a QmfException describing the reason for the failure.
+         */
+        public void onFailure(QmfException cause);
+    }
+
+    private enum State {PENDING, SUCCEEDED, FAILED, CANCELLED}
+
+    private State _state = State.PENDING;
+    private T _result;
+    private QmfException _cause;
+    private Runnable _completionHook;
+    private List<Callback<T>> _callbacks = new ArrayList<Callback<T>>();
+
+    /**
+     * Package scope Constructor, QmfFutures are only created by the Console.
+     */
+    QmfFuture()
+    {
+    }
+
+    /**
+     * Set a Runnable that will be run exactly once when this QmfFuture completes however it completes. The Console
+     * uses this to release any resources associated with the request, such as its correlation ID registration and
+     * its deadline TimerTask.
+     *
+     * @param hook the Runnable to run on completion.
+     */
+    synchronized void setCompletionHook(final Runnable hook)
+    {
+        _completionHook = hook;
+    }
+
+    /**
+     * Complete this QmfFuture successfully.
+     *
+     * @param result the result of the request.
+     * @return true if this call caused the QmfFuture to complete, false if it had already completed.
+     */
+    boolean complete(final T result)
+    {
+        synchronized(this)
+        {
+            if (_state != State.PENDING)
+            {
+                return false;
+            }
+            _result = result;
+            _state = State.SUCCEEDED;
+            notifyAll();
+        }
+        fireCompletion();
+        return true;
+    }
+
+    /**
+     * Complete this QmfFuture with a failure.
+     *
+     * @param cause a QmfException describing the reason for the failure.
+     * @return true if this call caused the QmfFuture to complete, false if it had already completed.
+     */
+    boolean fail(final QmfException cause)
+    {
+        synchronized(this)
+        {
+            if (_state != State.PENDING)
+            {
+                return false;
+            }
+            _cause = cause;
+            _state = State.FAILED;
+            notifyAll();
+        }
+        fireCompletion();
+        return true;
+    }
+
+    /**
+     * Run the completion hook then fire the registered Callbacks. Only ever called once, by the thread that
+     * changed the state from PENDING, and never whilst holding the lock.
+     */
+    private void fireCompletion()
+    {
+        Runnable hook;
+        List<Callback<T>> callbacks;
+        synchronized(this)
+        {
+            hook = _completionHook;
+            callbacks = _callbacks;
+            _completionHook = null;
+            _callbacks = null;
+        }
+
+        if (hook != null)
+        {
+            hook.run();
+        }
+
+        for (Callback<T> callback : callbacks)
+        {
+            fireCallback(callback);
+        }
+    }
+
+    /**
+     * Fire an individual Callback, guarding against the Callback throwing so that one badly behaved Callback can't
+     * prevent others from being notified.
+     *
+     * @param callback the Callback to fire.
+     */
+    private void fireCallback(final Callback<T> callback)
+    {
+        try
+        {
+            if (_state == State.SUCCEEDED)
+            {
+                callback.onSuccess(_result);
+            }
+            else
+            {
+                callback.onFailure(_cause);
+            }
+        }
+        catch (RuntimeException re)
+        {
+            _log.info("RuntimeException {} caught in QmfFuture Callback", re.getMessage());
+        }
+    }
+
+    /**
+     * Register a Callback to be notified when this QmfFuture completes. If it has already completed the Callback
+     * is fired immediately on the calling thread.
+     *
+     * @param callback the Callback to be notified of completion.
+     * @return this QmfFuture, to allow calls to be chained.
+     */
+    public QmfFuture<T> addCallback(final Callback<T> callback)
+    {
+        synchronized(this)
+        {
+            if (_callbacks != null)
+            {
+                _callbacks.add(callback);
+                return this;
+            }
+        }
+        fireCallback(callback);
+        return this;
+    }
+
+    /**
+     * Attempt to cancel the request. A cancelled request stops waiting for any response from the Agent and any
+     * response that does subsequently arrive is discarded. Note that cancellation is local to the Console, it
+     * doesn't "undo" a request that the Agent has already acted upon.
+     *
+     * @param mayInterruptIfRunning ignored, there is no thread associated with an outstanding request.
+     * @return false if the QmfFuture had already completed, true otherwise.
+     */
+    public boolean cancel(final boolean mayInterruptIfRunning)
+    {
+        synchronized(this)
+        {
+            if (_state != State.PENDING)
+            {
+                return false;
+            }
+            _cause = new QmfException("Request cancelled");
+            _state = State.CANCELLED;
+            notifyAll();
+        }
+        fireCompletion();
+        return true;
+    }
+
+    /**
+     * Return true if this QmfFuture was cancelled before it completed normally.
+     * @return true if this QmfFuture was cancelled before it completed normally.
+     */
+    public synchronized boolean isCancelled()
+    {
+        return _state == State.CANCELLED;
+    }
+
+    /**
+     * Return true if this QmfFuture has completed, whether successfully, by failure or by cancellation.
+     * @return true if this QmfFuture has completed.
+     */
+    public synchronized boolean isDone()
+    {
+        return _state != State.PENDING;
+    }
+
+    /**
+     * Wait if necessary for the request to complete then return its result.
+     *
+     * @return the result of the request.
+     * @throws CancellationException if the request was cancelled.
+     * @throws ExecutionException if the request failed, the cause will be a QmfException.
+     * @throws InterruptedException if the current thread was interrupted while waiting.
+     */
+    public synchronized T get() throws InterruptedException, ExecutionException
+    {
+        while (_state == State.PENDING)
+        {
+            wait();
+        }
+        return report();
+    }
+
+    /**
+     * Wait if necessary for at most the given time for the request to complete then return its result.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit the time unit of the timeout argument.
+     * @return the result of the request.
+     * @throws CancellationException if the request was cancelled.
+     * @throws ExecutionException if the request failed, the cause will be a QmfException.
+     * @throws InterruptedException if the current thread was interrupted while waiting.
+     * @throws TimeoutException if the wait timed out.
+     */
+    public synchronized T get(final long timeout, final TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (_state == State.PENDING)
+        {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+            {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return report();
+    }
+
+    /**
+     * Return the result or throw the appropriate exception for a completed QmfFuture. Must be called holding the lock.
+     * @return the result of the request.
+     */
+    private T report() throws ExecutionException
+    {
+        if (_state == State.CANCELLED)
+        {
+            throw new CancellationException(_cause.getMessage());
+        }
+        if (_state == State.FAILED)
+        {
+            throw new ExecutionException(_cause);
+        }
+        return _result;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.console;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.QmfData;
+import org.apache.qpid.qmf2.common.QmfQuery;
+
+/**
+ * A QueryFilter applies the predicate of a QmfQuery to the objects returned by an Agent, it is used by the Console
+ * for getObjects() and by QueryResultIterator for streamObjects().
+ * <p>
+ * The "_where" predicate is sent to the Agent, and Agents that evaluate predicates only return the matching objects.
+ * Some Agents, notably the C++ broker ManagementAgent, ignore the predicate and return every object of the query's
+ * class, so the predicate is applied on the Console as well. This is cheap for Agents that have already filtered
+ * the objects and transparently gives the same results for those that haven't.
+ * <p>
+ * The objects returned for a query with a "_select" projection only have the selected properties, so they can't be
+ * evaluated against a predicate that refers to other properties. The projection sent to the Agent is therefore
+ * extended with the properties that the predicate refers to, and once each object has been evaluated those extra
+ * properties are removed again, leaving the properties that were actually selected.
+ */
+final class QueryFilter
+{
+    private final QmfQuery _query;
+    private final boolean _aggregate;
+    private final Set<String> _added;
+
+    /**
+     * Construct a QueryFilter.
+     *
+     * @param query the SchemaClassId, ObjectId or QmfQuery that was sent to the Agent.
+     */
+    QueryFilter(final QmfData query)
+    {
+        _query = (query instanceof QmfQuery && ((QmfQuery)query).getPredicate() != null) ? (QmfQuery)query : null;
+        _aggregate = _query != null && _query.getAggregate() != null;
+        _added = getAddedProperties(_query);
+    }
+
+    /**
+     * Return the properties that the predicate of a QmfQuery refers to that aren't in its "_select" projection.
+     *
+     * @param query the QmfQuery, may be null.
+     * @return the properties that need to be added to the projection, empty if the query has no projection.
+     */
+    private static Set<String> getAddedProperties(final QmfQuery query)
+    {
+        if (query == null || query.getPredicate() == null || query.getSelect() == null)
+        {
+            return Collections.emptySet();
+        }
+
+        Set<String> keys = new LinkedHashSet<String>();
+        addKeys(query.getPredicate(), keys);
+        keys.removeAll(query.getSelect());
+        return keys;
+    }
+
+    /**
+     * Add the keys (property names) that a predicate expression refers to. The first element of each expression
+     * is its operator, String operands are keys, ["quote", literal] operands are literals and any other List
+     * operands are the sub-expressions of a logical expression.
+     */
+    private static void addKeys(final List expr, final Set<String> keys)
+    {
+        Iterator iter = expr.iterator();
+        if (iter.hasNext())
+        {
+            iter.next(); // Skip the operator.
+        }
+
+        while (iter.hasNext())
+        {
+            Object operand = iter.next();
+            if (operand instanceof String)
+            {
+                keys.add((String)operand);
+            }
+            else if (operand instanceof List)
+            {
+                List sublist = (List)operand;
+                if (sublist.isEmpty() || !"quote".equals(sublist.get(0)))
+                {
+                    addKeys(sublist, keys);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the "_select" projection to send to the Agent for a query, which includes the properties that the
+     * query's predicate refers to.
+     *
+     * @param query the QmfQuery being sent.
+     * @return the projection to send, or null if the query has no projection.
+     */
+    static List<String> getSelect(final QmfQuery query)
+    {
+        List<String> select = query.getSelect();
+        Set<String> added = getAddedProperties(query);
+        if (select == null || added.isEmpty())
+        {
+            return select;
+        }
+
+        List<String> extended = new ArrayList<String>(select.size() + added.size());
+        extended.addAll(select);
+        extended.addAll(added);
+        return extended;
+    }
+
+    /**
+     * Evaluate an object against the query's predicate, removing any properties that were added to the projection.
+     * Aggregated results aren't objects so the predicate doesn't apply to them.
+     *
+     * @param object an object returned by the Agent.
+     * @return true if the object matches the query.
+     */
+    boolean accept(final QmfConsoleData object)
+    {
+        if (_query == null)
+        {
+            return true;
+        }
+
+        boolean matches = (_aggregate && object.isAggregateResult()) || _query.evaluate(object);
+        if (matches && !_added.isEmpty())
+        {
+            object.removeValues(_added);
+        }
+        return matches;
+    }
+
+    /**
+     * Return the objects that match the query.
+     *
+     * @param objects the objects returned by the Agent.
+     * @return the objects that match the query.
+     */
+    List<QmfConsoleData> apply(final List<QmfConsoleData> objects)
+    {
+        if (_query == null)
+        {
+            return objects;
+        }
+
+        List<QmfConsoleData> results = new ArrayList<QmfConsoleData>(objects.size());
+        for (QmfConsoleData object : objects)
+        {
+            if (accept(object))
+            {
+                results.add(object);
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.console;
+
+// JMS Imports
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.AMQPMessage;
+import org.apache.qpid.qmf2.common.QmfData;
+import org.apache.qpid.qmf2.common.QmfQuery;
+
+/**
+ * A QueryResultIterator streams the results of a query for QmfConsoleData objects, it is returned by
+ * Console.streamObjects().
+ * <p>
+ * Unlike getObjects(), which collects every partial response into a single List before returning, each partial
+ * response is only received and decoded when the objects from the previous one have been consumed, so memory use
+ * is bounded by the size of the Agent's partial responses rather than by the size of the whole result. This
+ * makes it suitable for exporting the state of a large broker.
+ * <p>
+ * Each QueryResultIterator has its own JMS Session and reply address, whose link capacity limits the number of
+ * responses that the client will prefetch, so an Agent streaming a large result is held back by the consumer
+ * rather than the responses being buffered on the client.
+ * <p>
+ * The Console applies the query's predicate (see QueryFilter) and limit to the streamed objects, as for
+ * getObjects(), however any ordering relies upon the Agent as the objects can't be sorted without first collecting
+ * them all.
+ * <p>
+ * The QueryResultIterator is closed automatically once the last response has been consumed or if a response
+ * isn't received within the timeout, but close() should be called (e.g. in a finally block) if iteration is
+ * abandoned part way through in order to release the Session. A QueryResultIterator isn't thread safe.
+ * <p>
+ * As the Iterator interface can't report failures, hasNext() returns false both when every result has been
+ * consumed and when the results have been cut short, e.g. by a timeout or an error response from the Agent, so
+ * isComplete() should be checked once iteration has finished to tell the two apart.
+ */
+public final class QueryResultIterator implements Iterator<QmfConsoleData>, Closeable
+{
+    private static final Logger _log = LoggerFactory.getLogger(QueryResultIterator.class);
+
+    private final Session _session;
+    private final MessageConsumer _consumer;
+    private final Agent _agent;
+    private final QmfQuery _query;
+    private final QueryFilter _filter;
+    private final long _timeout;
+    private final boolean _lazy;
+
+    private List<Map> _batch = Collections.emptyList();
+    private int _index = 0;
+    private int _count = 0;
+    private boolean _lastResult = false;
+    private boolean _closed = false;
+    private boolean _complete = false;
+    private QmfConsoleData _next = null;
+
+    /**
+     * Package scope Constructor, QueryResultIterators are only created by the Console after it has sent the query.
+     *
+     * @param session the Session owned by this QueryResultIterator.
+     * @param consumer the MessageConsumer for the reply address the query was sent with.
+     * @param agent the Agent being queried.
+     * @param query the SchemaClassId, ObjectId or QmfQuery sent to the Agent.
+     * @param timeout the time in milliseconds to wait for each response.
+     * @param lazy if true the QmfConsoleData decode their ObjectId and SchemaClassId on first access.
+     */
+    QueryResultIterator(final Session session, final MessageConsumer consumer, final Agent agent,
+                        final QmfData query, final long timeout, final boolean lazy)
+    {
+        _session = session;
+        _consumer = consumer;
+        _agent = agent;
+        _query = (query instanceof QmfQuery) ? (QmfQuery)query : null;
+        _filter = new QueryFilter(query);
+        _timeout = timeout;
+        _lazy = lazy;
+    }
+
+    /**
+     * Return true if there are more objects, receiving the next response from the Agent if necessary. If this
+     * returns false isComplete() tells whether every result was received or the results were cut short.
+     * @return true if there are more objects.
+     */
+    public boolean hasNext()
+    {
+        while (_next == null && !_closed)
+        {
+            if (_query != null && _query.getLimit() > 0 && _count >= _query.getLimit())
+            {
+                _complete = true;
+                close();
+            }
+            else if (_index < _batch.size())
+            {
+                QmfConsoleData object = new QmfConsoleData(_batch.get(_index), _agent, _lazy);
+                _batch.set(_index++, null); // Allow the encoded object to be collected once it has been consumed.
+                if (_filter.accept(object))
+                {
+                    _next = object;
+                    _count++;
+                }
+            }
+            else if (_lastResult)
+            {
+                _complete = true;
+                close();
+            }
+            else
+            {
+                receive();
+            }
+        }
+        return _next != null;
+    }
+
+    /**
+     * Return the next object.
+     * @return the next object.
+     * @throws NoSuchElementException if there are no more objects.
+     */
+    public QmfConsoleData next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        QmfConsoleData next = _next;
+        _next = null;
+        return next;
+    }
+
+    /**
+     * Not supported, the objects are the results of a query.
+     * @throws UnsupportedOperationException always.
+     */
+    public void remove()
+    {
+        throw new UnsupportedOperationException("remove() is not supported by QueryResultIterator");
+    }
+
+    /**
+     * Receive and decode the next response from the Agent, closing this QueryResultIterator without completing it
+     * if none arrives within the timeout or the Agent returns an error response.
+     */
+    private void receive()
+    {
+        try
+        {
+            Message response = _consumer.receive(_timeout);
+            if (response == null)
+            {
+                _log.info("No response received in QueryResultIterator");
+                close();
+                return;
+            }
+
+            if (!AMQPMessage.isAMQPList(response))
+            { // Error responses are returned as MapMessages.
+                _log.info("Error response received in QueryResultIterator");
+                close();
+                return;
+            }
+
+            _lastResult = !response.propertyExists("partial");
+            _index = 0;
+            _batch = AMQPMessage.getList(response);
+        }
+        catch (JMSException jmse)
+        {
+            _log.info("JMSException {} caught in QueryResultIterator.receive()", jmse.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Return true if every result of the query has been received, false if there may be more results because the
+     * results were cut short by a timeout, an error response from the Agent or a call to close(), or because the
+     * results haven't all been consumed yet.
+     * @return true if every result of the query has been received.
+     */
+    public boolean isComplete()
+    {
+        return _complete;
+    }
+
+    /**
+     * Close this QueryResultIterator, releasing its Session. Any responses still to arrive are discarded.
+     */
+    public void close()
+    {
+        if (!_closed)
+        {
+            _closed = true;
+            _batch = Collections.emptyList();
+            try
+            {
+                _session.close();
+            }
+            catch (JMSException jmse)
+            {
+                _log.info("JMSException {} caught in QueryResultIterator.close()", jmse.getMessage());
+            }
+        }
+    }
+}
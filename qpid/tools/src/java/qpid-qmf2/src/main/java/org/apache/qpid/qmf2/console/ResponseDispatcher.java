@@ -0,0 +1,174 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.console;
+
+// JMS Imports
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+// Simple Logging Facade 4 Java
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Misc Imports
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ResponseDispatcher demultiplexes the responses to synchronous Console requests.
+ * <p>
+ * Each request registers a Handler with the ResponseDispatcher, which allocates a unique correlation ID that gets
+ * set on the request. The ResponseDispatcher is the MessageListener for the synchronous reply address and routes
+ * each response to the Handler registered against its correlation ID, so many requests may be in flight at once
+ * over the same connection and a single slow Agent doesn't stall other threads sharing the Console. Responses that
+ * arrive for an unknown correlation ID (for example a late reply to a request that has already timed out) are
+ * discarded rather than being mistaken for the reply to a later request.
+ */
+final class ResponseDispatcher implements MessageListener
+{
+    private static final Logger _log = LoggerFactory.getLogger(ResponseDispatcher.class);
+
+    /**
+     * A Handler is notified of each response Message that arrives with its correlation ID.
+     * <p>
+     * Note that the Handler is called on the JMS MessageListener thread of the synchronous reply session, so it
+     * should hand the response off rather than doing anything expensive or blocking.
+     */
+    interface Handler
+    {
+        /**
+         * Called for every response Message whose correlation ID matches the one this Handler was registered with.
+         * @param response the response Message.
+         */
+        void onResponse(Message response);
+    }
+
+    /**
+     * A Handler that queues responses so that a blocking caller may retrieve them with receive().
+     */
+    static final class BlockingHandler implements Handler
+    {
+        private final BlockingQueue<Message> _responses = new LinkedBlockingQueue<Message>();
+
+        /**
+         * Queue the response for retrieval via receive().
+         * @param response the response Message.
+         */
+        public void onResponse(final Message response)
+        {
+            _responses.offer(response);
+        }
+
+        /**
+         * Block until a response is received or the timeout expires.
+         * @param timeout the maximum time in milliseconds to wait for a response.
+         * @return the response Message or null if the timeout expired.
+         */
+        public Message receive(final long timeout)
+        {
+            try
+            {
+                return _responses.poll(timeout, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The prefix makes correlation IDs unique to this ResponseDispatcher, the sequence makes them unique per request.
+     */
+    private final String _prefix = UUID.randomUUID().toString() + ":";
+    private final AtomicLong _sequence = new AtomicLong();
+
+    /**
+     * Handlers for the outstanding requests keyed by correlation ID.
+     */
+    private final Map<String, Handler> _handlers = new ConcurrentHashMap<String, Handler>();
+
+    /**
+     * Register a Handler for a new request.
+     * @param handler the Handler that should receive responses to the request.
+     * @return the correlation ID that must be set on the request Message.
+     */
+    String register(final Handler handler)
+    {
+        String correlationId = _prefix + _sequence.incrementAndGet();
+        _handlers.put(correlationId, handler);
+        return correlationId;
+    }
+
+    /**
+     * Remove the Handler registered against the given correlation ID, any subsequent responses will be discarded.
+     * @param correlationId the correlation ID returned by register().
+     */
+    void unregister(final String correlationId)
+    {
+        if (correlationId != null)
+        {
+            _handlers.remove(correlationId);
+        }
+    }
+
+    /**
+     * Return the number of requests that are currently awaiting responses.
+     * @return the number of requests that are currently awaiting responses.
+     */
+    int getPendingCount()
+    {
+        return _handlers.size();
+    }
+
+    /**
+     * MessageListener for responses arriving on the synchronous reply address.
+     *
+     * @param message the JMS Message passed to the listener.
+     */
+    public void onMessage(final Message message)
+    {
+        try
+        {
+            String correlationId = message.getJMSCorrelationID();
+            Handler handler = (correlationId == null) ? null : _handlers.get(correlationId);
+            if (handler == null)
+            {
+                _log.debug("Discarding response with unknown correlation ID {}", correlationId);
+            }
+            else
+            {
+                handler.onResponse(message);
+            }
+        }
+        catch (JMSException jmse)
+        {
+            _log.info("JMSException {} caught in ResponseDispatcher.onMessage()", jmse.getMessage());
+        }
+    }
+}
@@ -94,6 +94,15 @@ public final class SubscribeParams extends QmfData
         return getLongValue("_duration");
     }
 
+    /**
+     * Return true if the Agent has granted delta mode, publishing only the changed properties of each object.
+     * @return true if the Agent has granted delta mode.
+     */
+    public boolean isDelta()
+    {
+        return hasValue("_delta") ? getBooleanValue("_delta") : false;
+    }
+
     /**
      * Return the QmfData error object if method fails, else null.
      * @return the QmfData error object if method fails, else null.
@@ -0,0 +1,150 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.qmf2.console;
+
+// Misc Imports
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// QMF2 Imports
+import org.apache.qpid.qmf2.common.QmfQuery;
+import org.apache.qpid.qmf2.common.QmfQueryTarget;
+import org.apache.qpid.qmf2.common.SchemaClassId;
+
+/**
+ * The SubscriptionIndex groups the Console's OBJECT Subscriptions by Agent name and by the schema class name that
+ * their query selects, it is used when emulating Subscriptions to the broker ManagementAgent.
+ * <p>
+ * Each _data indication pushed by the broker is decoded once and the resulting QmfConsoleData grouped by class
+ * name, so each Subscription's query need only be evaluated against the objects of the class it selects rather than
+ * every Subscription being evaluated against every object. Subscriptions whose query doesn't select a specific
+ * class (predicate queries, or ID queries with a wildcarded class name) are held against ALL_CLASSES.
+ * <p>
+ * Subscriptions are created and cancelled far less frequently than _data indications arrive, so the index is
+ * copy-on-write: it is rebuilt whenever a Subscription is added or removed and the MessageListener thread reads
+ * an immutable snapshot without any locking.
+ */
+final class SubscriptionIndex
+{
+    /**
+     * The key used for Subscriptions that need to be evaluated against objects of every class.
+     */
+    static final String ALL_CLASSES = "";
+
+    private final List<SubscriptionManager> _subscriptions = new ArrayList<SubscriptionManager>();
+    private volatile Map<String, Map<String, List<SubscriptionManager>>> _index = Collections.emptyMap();
+
+    /**
+     * Return the index key for the class selected by a query.
+     *
+     * @param query the Subscription's QmfQuery.
+     * @return the class name selected by the query or ALL_CLASSES if it may select objects of any class.
+     */
+    static String getClassKey(final QmfQuery query)
+    {
+        SchemaClassId classId = query.getSchemaClassId();
+        if (query.getPredicate() != null || classId == null || classId.getClassName() == null)
+        {
+            return ALL_CLASSES;
+        }
+        return classId.getClassName();
+    }
+
+    /**
+     * Add a Subscription to the index, only Subscriptions whose QueryTarget is OBJECT are indexed.
+     *
+     * @param subscription the SubscriptionManager to add.
+     */
+    synchronized void add(final SubscriptionManager subscription)
+    {
+        if (subscription.getQuery().getTarget() == QmfQueryTarget.OBJECT)
+        {
+            _subscriptions.add(subscription);
+            rebuild();
+        }
+    }
+
+    /**
+     * Remove a Subscription from the index.
+     *
+     * @param subscription the SubscriptionManager to remove.
+     */
+    synchronized void remove(final SubscriptionManager subscription)
+    {
+        if (_subscriptions.remove(subscription))
+        {
+            rebuild();
+        }
+    }
+
+    /**
+     * Return the Subscriptions on the named Agent keyed by the class name that their query selects.
+     *
+     * @param agentName the name of the Agent.
+     * @return an immutable Map of class name to Subscriptions, or null if there are no Subscriptions on the Agent.
+     */
+    Map<String, List<SubscriptionManager>> get(final String agentName)
+    {
+        return _index.get(agentName);
+    }
+
+    /**
+     * Rebuild the immutable index snapshot from the current list of Subscriptions. Must be called holding the lock.
+     */
+    private void rebuild()
+    {
+        Map<String, Map<String, List<SubscriptionManager>>> index =
+            new HashMap<String, Map<String, List<SubscriptionManager>>>();
+        for (SubscriptionManager subscription : _subscriptions)
+        {
+            String agentName = subscription.getAgent().getName();
+            Map<String, List<SubscriptionManager>> byClass = index.get(agentName);
+            if (byClass == null)
+            {
+                byClass = new HashMap<String, List<SubscriptionManager>>();
+                index.put(agentName, byClass);
+            }
+
+            String classKey = getClassKey(subscription.getQuery());
+            List<SubscriptionManager> list = byClass.get(classKey);
+            if (list == null)
+            {
+                list = new ArrayList<SubscriptionManager>();
+                byClass.put(classKey, list);
+            }
+            list.add(subscription);
+        }
+
+        for (Map.Entry<String, Map<String, List<SubscriptionManager>>> entry : index.entrySet())
+        {
+            Map<String, List<SubscriptionManager>> byClass = entry.getValue();
+            for (Map.Entry<String, List<SubscriptionManager>> classEntry : byClass.entrySet())
+            {
+                classEntry.setValue(Collections.unmodifiableList(classEntry.getValue()));
+            }
+            entry.setValue(Collections.unmodifiableMap(byClass));
+        }
+        _index = Collections.unmodifiableMap(index);
+    }
+}
@@ -25,11 +25,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 // Misc Imports
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TimerTask;
 
 // QMF2 Imports
+import org.apache.qpid.qmf2.common.ObjectId;
 import org.apache.qpid.qmf2.common.QmfQuery;
 
 /** 
@@ -53,6 +56,13 @@ import org.apache.qpid.qmf2.common.QmfQuery;
  * The following diagram illustrates the Subscription relationships with the Console and local Agent proxy.
  * <p>
  * <img alt="" src="doc-files/Subscriptions.png">
+ * <p>
+ * If a Subscription is created with the delta option the Agent may publish only the properties of each object that
+ * have changed since it was last published. The SubscriptionManager then keeps the most recent Map encoded state of
+ * each object received on the Subscription and decode() merges each delta into it, so the client application still
+ * receives complete QmfConsoleData objects. A delta for an object that the Console has no state for, for example
+ * because the object's full state was published before the Console was ready for it, can't be turned into a complete
+ * object, so it is dropped and the Console refreshes the object from the Agent instead, see resync().
  *
  * @author Fraser Adams
  */
@@ -69,6 +79,19 @@ public final class SubscriptionManager extends TimerTask
     private long     _duration = 0;
     private long     _interval = 0;
     private boolean  _waiting = true;
+    private QmfFuture<SubscribeParams> _future = null;
+
+    /**
+     * The most recent Map encoded state of each object received on a delta mode Subscription.
+     */
+    private volatile boolean _delta = false;
+    private final Map<ObjectId, Map<String, Object>> _objects = new HashMap<ObjectId, Map<String, Object>>();
+
+    /**
+     * The deltas received for each object that is being refreshed because a delta arrived with no retained state.
+     */
+    private final Map<ObjectId, List<Map<String, Object>>> _resyncing =
+        new HashMap<ObjectId, List<Map<String, Object>>>();
 
     /**
      * Construct a Console side proxy of a Subscription. Primarily to manage references to the Subscription.
@@ -168,10 +191,180 @@ public final class SubscriptionManager extends TimerTask
     {
         _log.debug("Cancelling Subscription {}, {}", _consoleHandle, _subscriptionId);
         _agent.removeSubscription(this);
+        setDelta(false);
         signal(); // Just in case anything is blocking on this Subscription.
         return super.cancel(); // Cancel the TimerTask
     }
 
+    /**
+     * Set the QmfFuture to be completed when the Agent responds to a createSubscriptionAsync() request.
+     * @param future the QmfFuture to be completed, null for createSubscription() requests.
+     */
+    void setFuture(final QmfFuture<SubscribeParams> future)
+    {
+        _future = future;
+    }
+
+    /**
+     * Return the QmfFuture to be completed when the Agent responds to a createSubscriptionAsync() request.
+     * @return the QmfFuture to be completed, or null if this Subscription was created by createSubscription().
+     */
+    QmfFuture<SubscribeParams> getFuture()
+    {
+        return _future;
+    }
+
+    /**
+     * Set whether this Subscription is in delta mode. Delta mode is set when the delta option is requested, so that
+     * no indication can arrive before the Console is ready to merge it, and cleared if the Agent doesn't grant it.
+     *
+     * @param delta true if the Agent may publish only the changed properties of each object.
+     */
+    synchronized void setDelta(final boolean delta)
+    {
+        _delta = delta;
+        if (!delta)
+        {
+            _objects.clear();
+            _resyncing.clear();
+        }
+    }
+
+    /**
+     * Return true if this Subscription is in delta mode.
+     * @return true if this Subscription is in delta mode.
+     */
+    public boolean isDelta()
+    {
+        return _delta;
+    }
+
+    /**
+     * Decode a Map encoded object received on a delta mode Subscription. A full object replaces the retained state
+     * of the object, whereas a delta (which has "_delta" set) has its changed properties and update timestamp merged
+     * into a copy of the retained state. Deleted objects are forgotten once they have been decoded.
+     * <p>
+     * A delta for an object with no retained state is dropped, and null is returned. The Console should then call
+     * startResync() and refresh the object from the Agent.
+     *
+     * @param m the Map encoded object or delta from the _data indication.
+     * @param agent the Agent that published the object.
+     * @param lazy true if the QmfConsoleData should be lazily decoded.
+     * @return the complete QmfConsoleData, or null if m is a delta for an object with no retained state.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized QmfConsoleData decode(final Map m, final Agent agent, final boolean lazy)
+    {
+        Object oid = m.get("_object_id");
+        if (!(oid instanceof Map))
+        {
+            return new QmfConsoleData(m, agent, lazy);
+        }
+
+        ObjectId objectId = new ObjectId((Map)oid);
+        Map<String, Object> object = (Map<String, Object>)m;
+        Map<String, Object> previous = _objects.get(objectId);
+        if (Boolean.TRUE.equals(m.get("_delta")))
+        {
+            if (previous == null)
+            {
+                List<Map<String, Object>> deltas = _resyncing.get(objectId);
+                if (deltas != null)
+                { // Already being refreshed, so keep the delta to be merged into the refreshed object.
+                    deltas.add(object);
+                }
+                return null;
+            }
+            object = merge(previous, object);
+        }
+        else
+        { // The full object supersedes any refresh in progress.
+            _resyncing.remove(objectId);
+        }
+        return retain(objectId, object, agent, lazy);
+    }
+
+    /**
+     * Merge a delta into a copy of the retained state of an object, the copy is needed because the previous
+     * QmfConsoleData for the object still references the retained Map.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> merge(final Map<String, Object> previous, final Map<String, Object> delta)
+    {
+        Map<String, Object> values = new HashMap<String, Object>((Map<String, Object>)previous.get("_values"));
+        values.putAll((Map<String, Object>)delta.get("_values"));
+        Map<String, Object> object = new HashMap<String, Object>(previous);
+        object.put("_values", values);
+        object.put("_update_ts", delta.get("_update_ts"));
+        return object;
+    }
+
+    /**
+     * Retain the complete state of an object, or forget it if it has been deleted, and return it as a QmfConsoleData.
+     */
+    private QmfConsoleData retain(final ObjectId objectId, final Map<String, Object> object, final Agent agent,
+                                  final boolean lazy)
+    {
+        Object deleted = object.get("_delete_ts");
+        if (deleted instanceof Number && ((Number)deleted).longValue() != 0)
+        {
+            _objects.remove(objectId);
+        }
+        else
+        {
+            _objects.put(objectId, object);
+        }
+        return new QmfConsoleData(object, agent, lazy);
+    }
+
+    /**
+     * Record that an object is being refreshed because decode() dropped a delta for it, deltas for the object that
+     * arrive whilst the refresh is in progress are kept to be merged into the refreshed object by resync().
+     *
+     * @param objectId the ObjectId of the object whose delta was dropped.
+     * @return true if the object should be refreshed, false if it is already being refreshed or if this Subscription
+     *         is no longer in delta mode.
+     */
+    synchronized boolean startResync(final ObjectId objectId)
+    {
+        if (!_delta || _resyncing.containsKey(objectId))
+        {
+            return false;
+        }
+        _resyncing.put(objectId, new ArrayList<Map<String, Object>>());
+        return true;
+    }
+
+    /**
+     * Complete the refresh of an object started by startResync(). The refreshed object becomes the retained state
+     * of the object and any deltas received since the refresh started that are newer than it are merged into it.
+     *
+     * @param objectId the ObjectId of the object being refreshed.
+     * @param refreshed the refreshed object, or null if the refresh failed or the Agent no longer has the object.
+     * @param lazy true if the QmfConsoleData should be lazily decoded.
+     * @return the complete QmfConsoleData to pass to the client application, or null if there's nothing to pass on
+     *         because the refresh failed or a full object was received on the Subscription in the meantime.
+     */
+    synchronized QmfConsoleData resync(final ObjectId objectId, final QmfConsoleData refreshed, final boolean lazy)
+    {
+        List<Map<String, Object>> deltas = _resyncing.remove(objectId);
+        if (deltas == null || refreshed == null)
+        {
+            return null;
+        }
+
+        Map<String, Object> object = refreshed.encode();
+        for (Map<String, Object> delta : deltas)
+        {
+            Object timestamp = delta.get("_update_ts");
+            if (timestamp instanceof Number && ((Number)timestamp).longValue() > refreshed.getUpdateTime())
+            {
+                object = merge(object, delta);
+            }
+        }
+        return retain(objectId, object, _agent, lazy);
+    }
+
     /**
      * Set the SubscriptionId.
      * @param subscriptionId the new SubscriptionId of this Subscription.